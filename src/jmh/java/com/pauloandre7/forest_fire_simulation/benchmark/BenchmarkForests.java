@@ -0,0 +1,44 @@
+package com.pauloandre7.forest_fire_simulation.benchmark;
+
+import java.util.Random;
+
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ * 
+ * Builds the forests used by the benchmarks. The grid is written straight into the ForestGrid,
+ * the 8000x8000 forest cannot be built through the List<List<Cell>> of the JSON contract.
+ */
+final class BenchmarkForests {
+
+    // Long burning time, so the burning density doesn't drop during a measurement iteration.
+    static final int BURNING_TIME = 10_000;
+
+    private BenchmarkForests(){
+    }
+
+    /**
+     * Forest with 10% of empty cells and the given fraction of burning cells, the rest is vegetation.
+     * The seed is fixed so every fork measures the same forest.
+     */
+    static Forest create(int size, double burningDensity){
+        Random random = new Random(42);
+        ForestGrid grid = new ForestGrid(size, size);
+
+        for(int index = 0; index < grid.size(); index++){
+            double draw = random.nextDouble();
+            grid.setState(index, draw < 0.1 ? CellState.EMPTY : CellState.VEGETATION);
+            grid.setTerrain(index, random.nextDouble(), random.nextDouble());
+
+            if(random.nextDouble() < burningDensity){
+                grid.startBurning(index, BURNING_TIME);
+            }
+        }
+
+        return new Forest(grid, Direction.NORTH, 30.0, BURNING_TIME, 0.125);
+    }
+}
@@ -0,0 +1,74 @@
+package com.pauloandre7.forest_fire_simulation.benchmark;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pauloandre7.forest_fire_simulation.dto.EnsembleRequest;
+import com.pauloandre7.forest_fire_simulation.dto.RandomForestRequest;
+import com.pauloandre7.forest_fire_simulation.service.EnsembleService;
+
+/**
+ * @author pauloandre7
+ * 
+ * A whole ensemble of a random forest. The "replicaGenerations" counter reports replica-generations/second,
+ * the gc profiler shows that the allocation depends on the threads and not on the replicas.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EnsembleBenchmark {
+
+    @Param({"200", "1000"})
+    private int size;
+
+    @Param({"16", "256"})
+    private int replicas;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private ForkJoinPool pool;
+    private EnsembleService ensembleService;
+    private EnsembleRequest request;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ReplicaGenerations {
+        public long replicaGenerations;
+    }
+
+    @Setup(Level.Trial)
+    public void setup(){
+        pool = new ForkJoinPool(threads);
+        ensembleService = new EnsembleService(pool);
+        request = new EnsembleRequest(null, new RandomForestRequest(size, size, 5, 42L), replicas, 7L, 200);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public void ensemble(ReplicaGenerations counter){
+        counter.replicaGenerations += ensembleService.runEnsemble(request).getReplicaGenerations();
+    }
+}
@@ -0,0 +1,79 @@
+package com.pauloandre7.forest_fire_simulation.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pauloandre7.forest_fire_simulation.config.SimulationExecutorConfig;
+import com.pauloandre7.forest_fire_simulation.config.SimulationProperties;
+import com.pauloandre7.forest_fire_simulation.metrics.SimulationMetrics;
+import com.pauloandre7.forest_fire_simulation.parallel.ExecutionBackends;
+import com.pauloandre7.forest_fire_simulation.service.SimulationService;
+
+/**
+ * @author pauloandre7
+ * 
+ * SimulationService.calculateNextGeneration() with each execution backend, from the tiny forests where the
+ * handoff to the threads dominates to the big ones where the pool wins. The burning density is high, so
+ * every generation is a full sweep. Used to choose simulation.backend.serial-max-cells.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionBackendBenchmark {
+
+    @Param({"SERIAL", "FORK_JOIN", "FIXED", "VIRTUAL"})
+    private ExecutionBackends.Mode backend;
+
+    @Param({"20", "64", "128", "256", "1000"})
+    private int size;
+
+    private ExecutionBackends backends;
+    private SimulationService service;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Cells {
+        public long cells;
+    }
+
+    @Setup(Level.Trial)
+    public void createService(){
+        SimulationProperties properties = new SimulationProperties();
+        properties.getBackend().setMode(backend);
+        backends = SimulationExecutorConfig.createBackends(properties, SimulationExecutorConfig.createPool(properties));
+        service = new SimulationService(properties, backends, SimulationMetrics.noop());
+    }
+
+    @Setup(Level.Iteration)
+    public void loadForest(){
+        service.loadForest(BenchmarkForests.create(size, 0.3));
+    }
+
+    @TearDown(Level.Trial)
+    public void closeBackends(){
+        backends.close();
+    }
+
+    @Benchmark
+    public void calculateNextGeneration(Cells counter){
+        service.calculateNextGeneration();
+        counter.cells += (long) size * size;
+    }
+}
@@ -0,0 +1,57 @@
+package com.pauloandre7.forest_fire_simulation.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.parallel.SimulationTask;
+
+/**
+ * @author pauloandre7
+ * 
+ * Cost of SimulationTask.calculateIgnitionProbability() for the cells of one row.
+ * Each operation is one cell, so the score is cells/second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IgnitionProbabilityBenchmark {
+
+    private static final int SIZE = 1024;
+
+    @Param({"0.01", "0.1", "0.5"})
+    private double burningDensity;
+
+    private SimulationTask task;
+
+    @Setup
+    public void setup(){
+        Forest forest = BenchmarkForests.create(SIZE, burningDensity);
+        task = new SimulationTask(forest, 0, SIZE, 0, SIZE, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void calculateIgnitionProbability(Blackhole blackhole){
+        int row = SIZE / 2;
+        for(int col = 0; col < SIZE; col++){
+            blackhole.consume(task.calculateIgnitionProbability(row, col));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.pauloandre7.forest_fire_simulation.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pauloandre7.forest_fire_simulation.config.SimulationProperties;
+import com.pauloandre7.forest_fire_simulation.dto.CellCoordinatesRequest;
+import com.pauloandre7.forest_fire_simulation.parallel.ExecutionBackends;
+import com.pauloandre7.forest_fire_simulation.service.SimulationService;
+
+/**
+ * @author pauloandre7
+ * 
+ * Many threads calling SimulationService.igniteCell() (the HTTP threads of the ignite endpoint) while one
+ * thread calculates the generations (the scheduler). The ignitions only go to the command queue, so their
+ * throughput should not depend on the size of the step, and the step applies them in batches.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IgnitionQueueBenchmark {
+
+    @Param({"64", "512"})
+    private int size;
+
+    private SimulationService service;
+    private CellCoordinatesRequest[] coordinates;
+
+    @Setup(Level.Trial)
+    public void createService(){
+        SimulationProperties properties = new SimulationProperties();
+        properties.getBackend().setMode(ExecutionBackends.Mode.SERIAL);
+        service = new SimulationService(properties);
+
+        coordinates = new CellCoordinatesRequest[4096];
+        for(int i = 0; i < coordinates.length; i++){
+            coordinates[i] = new CellCoordinatesRequest(ThreadLocalRandom.current().nextInt(size),
+                                                        ThreadLocalRandom.current().nextInt(size));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startSimulation(){
+        service.stopSimulation();
+        service.loadForest(BenchmarkForests.create(size, 0.01));
+        // 0 has no limit, the simulation runs during the whole iteration.
+        service.startSimulation(0, 1L);
+    }
+
+    @Benchmark
+    @Group("concurrentIgnitions")
+    @GroupThreads(7)
+    public void ignite(){
+        service.igniteCell(coordinates[ThreadLocalRandom.current().nextInt(coordinates.length)]);
+    }
+
+    @Benchmark
+    @Group("concurrentIgnitions")
+    @GroupThreads(1)
+    public void step(){
+        service.calculateNextGeneration();
+    }
+}
@@ -0,0 +1,76 @@
+package com.pauloandre7.forest_fire_simulation.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pauloandre7.forest_fire_simulation.config.SimulationProperties;
+import com.pauloandre7.forest_fire_simulation.parallel.ExecutionBackends;
+import com.pauloandre7.forest_fire_simulation.service.SimulationService;
+
+/**
+ * @author pauloandre7
+ * 
+ * SimulationService.calculateNextGeneration() for different grid sizes, burning densities and threads.
+ * The forest is rebuilt at each iteration, so the fire doesn't change the density during the measure.
+ * The "cells" counter reports cells/second and the gc profiler reports the allocation of each generation,
+ * divide gc.alloc.rate.norm by the amount of cells to get the bytes per cell.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class NextGenerationBenchmark {
+
+    @Param({"100", "1000", "4000", "8000"})
+    private int size;
+
+    @Param({"0.001", "0.01", "0.1"})
+    private double burningDensity;
+
+    @Param({"1", "4", "0"})
+    private int threads;
+
+    private SimulationService service;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Cells {
+        public long cells;
+    }
+
+    @Setup(Level.Trial)
+    public void createService(){
+        SimulationProperties properties = new SimulationProperties();
+        // 0 uses all the processors
+        properties.setParallelism(threads);
+        // the pool is measured at every size, see ExecutionBackendBenchmark for the serial backend.
+        properties.getBackend().setMode(ExecutionBackends.Mode.FORK_JOIN);
+        service = new SimulationService(properties);
+    }
+
+    @Setup(Level.Iteration)
+    public void loadForest(){
+        service.loadForest(BenchmarkForests.create(size, burningDensity));
+    }
+
+    @Benchmark
+    public void calculateNextGeneration(Cells counter){
+        service.calculateNextGeneration();
+        counter.cells += (long) size * size;
+    }
+}
@@ -0,0 +1,65 @@
+package com.pauloandre7.forest_fire_simulation.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.parallel.SimulationTask;
+
+/**
+ * @author pauloandre7
+ * 
+ * One SimulationTask over a full row, running at the benchmark thread (without the pool).
+ * The "cells" counter reports cells/second, the gc profiler reports the bytes allocated per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationTaskBenchmark {
+
+    @Param({"1000", "8000"})
+    private int width;
+
+    @Param({"0.01", "0.1"})
+    private double burningDensity;
+
+    private Forest forest;
+    private SimulationTask rowTask;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Cells {
+        public long cells;
+    }
+
+    @Setup(Level.Iteration)
+    public void setup(){
+        // a square forest, so the row has neighbors above and below
+        forest = BenchmarkForests.create(width, burningDensity);
+        int row = width / 2;
+        rowTask = new SimulationTask(forest, row, row + 1, 0, width, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public void rowTask(Cells counter){
+        rowTask.reinitialize();
+        rowTask.invoke();
+        counter.cells += width;
+    }
+}
@@ -0,0 +1,73 @@
+package com.pauloandre7.forest_fire_simulation.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.parallel.SimulationTask;
+import com.pauloandre7.forest_fire_simulation.parallel.SweepKernel;
+
+/**
+ * @author pauloandre7
+ * 
+ * Full sweep of a large grid with the scalar and the vector kernels, in a single tile at the benchmark
+ * thread, so only the kernel is measured. The grids are not swapped, every invocation calculates the
+ * same generation. The "cells" counter reports cells/second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SweepKernelBenchmark {
+
+    @Param({"scalar", "vector"})
+    private String kernel;
+
+    @Param({"2000", "8000"})
+    private int size;
+
+    @Param({"0.001", "0.01", "0.1"})
+    private double burningDensity;
+
+    private Forest forest;
+    private SimulationTask sweepTask;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Cells {
+        public long cells;
+    }
+
+    @Setup(Level.Trial)
+    public void setup(){
+        SweepKernel sweepKernel = SweepKernel.select(kernel.equals("vector"));
+        if(kernel.equals("vector") && !sweepKernel.getClass().getSimpleName().startsWith("Vector")){
+            throw new IllegalStateException("The vector kernel is not available at this JVM.");
+        }
+
+        forest = BenchmarkForests.create(size, burningDensity);
+        sweepTask = new SimulationTask(forest, 0, size, 0, size, Integer.MAX_VALUE, sweepKernel);
+    }
+
+    @Benchmark
+    public void sweep(Cells counter){
+        sweepTask.reinitialize();
+        sweepTask.invoke();
+        counter.cells += (long) size * size;
+    }
+}
@@ -2,9 +2,11 @@ package com.pauloandre7.forest_fire_simulation;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
-@EnableScheduling
+import com.pauloandre7.forest_fire_simulation.config.SimulationProperties;
+
+@EnableConfigurationProperties(SimulationProperties.class)
 @SpringBootApplication
 public class ForestFireSimulationApplication {
 
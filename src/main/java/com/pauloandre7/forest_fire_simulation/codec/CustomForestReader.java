@@ -0,0 +1,317 @@
+package com.pauloandre7.forest_fire_simulation.codec;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.LongPredicate;
+
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.json.JsonFactory;
+
+/**
+ * @author pauloandre7
+ *
+ * Reads the body of a custom forest (the same JSON of CustomForestRequest) with the streaming parser of
+ * Jackson. The cells are written straight into the grid while they are parsed, so there is never a list
+ * of Cell objects: the memory used is the grid of the forest and the small buffer of the parser.
+ *
+ * When {@code height} and {@code width} come before {@code forestCells} the grid is allocated when the cells
+ * start. The fields can come in any order though (serializers that sort the keys write forestCells first):
+ * then the cells are kept in compact columns (see PendingCells) until the dimensions are known, and copied
+ * into the grid at the end. Unknown fields are ignored, as in the binding of the request.
+ */
+public class CustomForestReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final CellState[] CELL_STATES = CellState.values();
+
+    private final double baseBurningProbability;
+    private final LongPredicate offHeap;
+
+    // Fields of the body, the cells are written into the grid.
+    private int height = -1;
+    private int width = -1;
+    private Direction windDirection;
+    private double windSpeed;
+    private int burningTime;
+    private ForestGrid grid;
+    // The cells of a forestCells that came before the dimensions.
+    private PendingCells pending;
+
+    // The last cell read by readCell().
+    private CellState cellState;
+    private int cellBurningTime;
+    private double cellMoisture;
+    private double cellRelief;
+
+    private CustomForestReader(double baseBurningProbability, LongPredicate offHeap){
+        this.baseBurningProbability = baseBurningProbability;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Reads the forest of the body. The dimensions are given to checkDimensions before the grid is
+     * allocated, so a caller with limits (the sessions) can refuse the forest by throwing.
+     *
+     * @throws IllegalArgumentException if the body is not a valid forest or the grid doesn't match
+     * height and width.
+     */
+    public static Forest read(InputStream body, double baseBurningProbability,
+                                BiConsumer<Integer, Integer> checkDimensions){
+        return read(body, baseBurningProbability, checkDimensions, cells -> false);
+    }
+
+    /**
+     * Same as read(), offHeap tells by the amount of cells if the grid is allocated off the heap
+     * (see ForestGrid). The grid of a body that fails is released before the exception.
+     */
+    public static Forest read(InputStream body, double baseBurningProbability,
+                                BiConsumer<Integer, Integer> checkDimensions, LongPredicate offHeap){
+        CustomForestReader reader = new CustomForestReader(baseBurningProbability, offHeap);
+
+        try(JsonParser parser = JSON_FACTORY.createParser(ObjectReadContext.empty(), body)){
+            return reader.readForest(parser, checkDimensions);
+
+        } catch(JacksonException e){
+            reader.releaseGrid();
+            throw new IllegalArgumentException("The body is not a valid forest: " + e.getOriginalMessage(), e);
+        } catch(RuntimeException e){
+            reader.releaseGrid();
+            throw e;
+        }
+    }
+
+    private void releaseGrid(){
+        if(grid != null) grid.close();
+    }
+
+    private Forest readForest(JsonParser parser, BiConsumer<Integer, Integer> checkDimensions){
+        expect(parser.nextToken(), JsonToken.START_OBJECT, "The body must be a JSON object.");
+
+        while(parser.nextToken() == JsonToken.PROPERTY_NAME){
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            switch(field){
+                case "height" -> height = readDimension(parser.getValueAsInt(), grid == null ? -1 : grid.getHeight());
+                case "width" -> width = readDimension(parser.getValueAsInt(), grid == null ? -1 : grid.getWidth());
+                case "windDirection" -> windDirection = readDirection(parser, value);
+                case "windSpeed" -> windSpeed = parser.getValueAsDouble();
+                case "burningTime" -> burningTime = parser.getValueAsInt();
+                case "forestCells" -> readCells(parser, value, checkDimensions);
+                default -> parser.skipChildren();
+            }
+        }
+
+        if(pending != null){
+            fillPendingCells(checkDimensions);
+        }
+        if(grid == null){
+            throw new IllegalArgumentException("The body has no forestCells.");
+        }
+
+        return new Forest(grid, windDirection, windSpeed, burningTime, baseBurningProbability);
+    }
+
+    // The dimensions of the body can't be negative, and can't change after the cells were read into the grid.
+    private static int readDimension(int value, int gridDimension){
+        if(value < 0){
+            throw new IllegalArgumentException("The height and width cannot be negative.");
+        }
+        if(gridDimension >= 0 && value != gridDimension){
+            throw new IllegalArgumentException("The height and width don't match the forestCells.");
+        }
+        return value;
+    }
+
+    private void readCells(JsonParser parser, JsonToken value, BiConsumer<Integer, Integer> checkDimensions){
+        if(grid != null || pending != null){
+            throw new IllegalArgumentException("The body has more than one forestCells.");
+        }
+        expect(value, JsonToken.START_ARRAY, "The forestCells must be an array of rows.");
+
+        if(height < 0 || width < 0){
+            readPendingCells(parser, checkDimensions);
+            return;
+        }
+
+        checkDimensions.accept(height, width);
+        grid = new ForestGrid(height, width, offHeap.test((long) height * width));
+
+        int row = 0;
+        while(parser.nextToken() != JsonToken.END_ARRAY){
+            if(row >= height){
+                throw new IllegalArgumentException("The amount of rows doesn't match the forest height.");
+            }
+            expect(parser.currentToken(), JsonToken.START_ARRAY, "Each row of forestCells must be an array.");
+
+            int col = 0;
+            while(parser.nextToken() != JsonToken.END_ARRAY){
+                if(col >= width){
+                    throw new IllegalArgumentException("The amount of columns doesn't match the forest width.");
+                }
+                readCell(parser);
+                writeCell(grid.index(row, col));
+                col++;
+            }
+
+            if(col != width){
+                throw new IllegalArgumentException("The amount of columns doesn't match the forest width.");
+            }
+            row++;
+        }
+
+        if(row != height){
+            throw new IllegalArgumentException("The amount of rows doesn't match the forest height.");
+        }
+    }
+
+    /**
+     * The cells before the dimensions. All the rows must have the width of the first one, and the limits of
+     * checkDimensions are checked at the end of each row with the rows read so far, so a body too big is
+     * refused before it's buffered.
+     */
+    private void readPendingCells(JsonParser parser, BiConsumer<Integer, Integer> checkDimensions){
+        pending = new PendingCells();
+
+        while(parser.nextToken() != JsonToken.END_ARRAY){
+            expect(parser.currentToken(), JsonToken.START_ARRAY, "Each row of forestCells must be an array.");
+
+            int col = 0;
+            while(parser.nextToken() != JsonToken.END_ARRAY){
+                if(pending.rows > 0 && col >= pending.width){
+                    throw new IllegalArgumentException("The amount of columns doesn't match the forest width.");
+                }
+                readCell(parser);
+                pending.add(cellState, cellBurningTime, cellMoisture, cellRelief);
+                col++;
+            }
+
+            if(pending.rows > 0 && col != pending.width){
+                throw new IllegalArgumentException("The amount of columns doesn't match the forest width.");
+            }
+            pending.width = col;
+            pending.rows++;
+            checkDimensions.accept(pending.rows, pending.width);
+        }
+    }
+
+    private void fillPendingCells(BiConsumer<Integer, Integer> checkDimensions){
+        if(height < 0 || width < 0){
+            throw new IllegalArgumentException("The body has no height and width.");
+        }
+        if(pending.rows != height){
+            throw new IllegalArgumentException("The amount of rows doesn't match the forest height.");
+        }
+        if(height > 0 && pending.width != width){
+            throw new IllegalArgumentException("The amount of columns doesn't match the forest width.");
+        }
+
+        checkDimensions.accept(height, width);
+        grid = new ForestGrid(height, width, offHeap.test((long) height * width));
+        for(int index = 0; index < pending.size; index++){
+            grid.setState(index, CELL_STATES[pending.states[index]]);
+            grid.setBurningTime(index, pending.burningTimes[index]);
+            grid.setTerrain(index, pending.moisture[index], pending.relief[index]);
+        }
+        pending = null;
+    }
+
+    // Same fields of the Cell JSON, the row and col are given by the position in the array.
+    private void readCell(JsonParser parser){
+        expect(parser.currentToken(), JsonToken.START_OBJECT, "Each cell must be a JSON object.");
+
+        cellState = null;
+        cellBurningTime = 0;
+        cellMoisture = 0;
+        cellRelief = 0;
+
+        while(parser.nextToken() == JsonToken.PROPERTY_NAME){
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            switch(field){
+                case "state" -> cellState = value == JsonToken.VALUE_NULL ? null : readState(parser.getString());
+                case "burningTime" -> cellBurningTime = parser.getValueAsInt();
+                case "moisture" -> cellMoisture = parser.getValueAsDouble();
+                case "relief" -> cellRelief = parser.getValueAsDouble();
+                default -> parser.skipChildren();
+            }
+        }
+
+        if(cellState == null){
+            throw new IllegalArgumentException("Each cell must have a state.");
+        }
+        if(cellBurningTime < 0 || cellBurningTime > Short.MAX_VALUE){
+            throw new IllegalArgumentException("The burning time must be between 0 and " + Short.MAX_VALUE + ".");
+        }
+    }
+
+    private void writeCell(long index){
+        grid.setState(index, cellState);
+        grid.setBurningTime(index, cellBurningTime);
+        grid.setTerrain(index, cellMoisture, cellRelief);
+    }
+
+    private static Direction readDirection(JsonParser parser, JsonToken value){
+        if(value == JsonToken.VALUE_NULL) return null;
+
+        try{
+            return Direction.valueOf(parser.getString());
+        } catch(IllegalArgumentException e){
+            throw new IllegalArgumentException("Unknown wind direction: " + parser.getString());
+        }
+    }
+
+    private static CellState readState(String name){
+        try{
+            return CellState.valueOf(name);
+        } catch(IllegalArgumentException e){
+            throw new IllegalArgumentException("Unknown cell state: " + name);
+        }
+    }
+
+    private static void expect(JsonToken token, JsonToken expected, String message){
+        if(token != expected){
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    /**
+     * Cells read before the dimensions, in the types of the grid columns (see CellStorage): 11 bytes for
+     * each cell instead of a Cell object. The arrays grow by half of their size.
+     */
+    private static final class PendingCells {
+
+        private byte[] states = new byte[1024];
+        private short[] burningTimes = new short[1024];
+        private float[] moisture = new float[1024];
+        private float[] relief = new float[1024];
+        private int size;
+        private int rows;
+        private int width;
+
+        void add(CellState state, int burningTime, double cellMoisture, double cellRelief){
+            if(size == states.length){
+                int capacity = Math.addExact(size, Math.max(size >> 1, 1));
+                states = Arrays.copyOf(states, capacity);
+                burningTimes = Arrays.copyOf(burningTimes, capacity);
+                moisture = Arrays.copyOf(moisture, capacity);
+                relief = Arrays.copyOf(relief, capacity);
+            }
+            states[size] = (byte) state.ordinal();
+            burningTimes[size] = (short) burningTime;
+            moisture[size] = (float) cellMoisture;
+            relief[size] = (float) cellRelief;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.pauloandre7.forest_fire_simulation.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongPredicate;
+
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ *
+ * Binary checkpoint of a simulation: the grid, the terrain, the parameters of the forest and the counters
+ * of the generations. The columns of the grid are copied in bulk, so there is no parsing besides the
+ * header. The terrain of a big forest is not even copied: its off-heap grid maps the file, see
+ * CellStorage.map().
+ *
+ * Layout (little-endian, the order of the usual processors, so the bulk copies don't swap bytes):
+ * <ul>
+ * <li>header of {@value #HEADER_BYTES} bytes: int magic, int version, int height, int width,
+ * byte wind direction ordinal (-1 without wind), double wind speed, int burning time,
+ * double base burning probability, long random seed, long step count, int current generation,
+ * int max generation and padding.</li>
+ * <li>the columns of the grid, see {@link ForestGrid#writeTo(FileChannel, long)}.</li>
+ * </ul>
+ */
+public record ForestCheckpoint(ForestGrid grid, Direction windDirection, double windSpeed, int burningTime,
+                                double baseBurningProbability, long randomSeed, long stepCount,
+                                int currentGeneration, int maxGeneration) {
+
+    public static final int MAGIC = 0x4646434B; // "FFCK"
+    public static final int VERSION = 1;
+    // Aligned, so the columns start at a multiple of 8.
+    public static final int HEADER_BYTES = 64;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Takes the parameters of the forest with a grid that must not change while it's written
+     * (a copy of the states, see CheckpointService).
+     */
+    public static ForestCheckpoint of(Forest forest, ForestGrid grid, int currentGeneration, int maxGeneration){
+        return new ForestCheckpoint(grid, forest.getWindDirection(), forest.getWindSpeed(), forest.getBurningTime(),
+                                    forest.getBaseBurningProbability(), forest.getRandomSeed(), forest.getStepCount(),
+                                    currentGeneration, maxGeneration);
+    }
+
+    // Builds the forest of the checkpoint, it continues the random stream of the saved simulation.
+    public Forest toForest(){
+        Forest forest = new Forest(grid, windDirection, windSpeed, burningTime, baseBurningProbability);
+        forest.restoreRandomState(randomSeed, stepCount);
+        return forest;
+    }
+
+    /**
+     * Writes the checkpoint at a temporary file and moves it to the path, so a crash during the write
+     * never leaves a broken checkpoint in place of the last good one.
+     */
+    public void write(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporaryFile = parent.resolve(path.getFileName() + ".tmp");
+
+        try(FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(grid.getHeight());
+            header.putInt(grid.getWidth());
+            header.put((byte) (windDirection == null ? -1 : windDirection.ordinal()));
+            header.putDouble(windSpeed);
+            header.putInt(burningTime);
+            header.putDouble(baseBurningProbability);
+            header.putLong(randomSeed);
+            header.putLong(stepCount);
+            header.putInt(currentGeneration);
+            header.putInt(maxGeneration);
+            header.clear();
+
+            while(header.hasRemaining()){
+                channel.write(header, header.position());
+            }
+            grid.writeTo(channel, HEADER_BYTES);
+            channel.force(true);
+        }
+
+        Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static ForestCheckpoint read(Path path) throws IOException {
+        return read(path, cells -> false);
+    }
+
+    /**
+     * Reads the checkpoint. offHeap tells by the amount of cells if the grid is mapped off the heap,
+     * otherwise the columns are read into the heap.
+     */
+    public static ForestCheckpoint read(Path path, LongPredicate offHeap) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if(channel.size() < HEADER_BYTES){
+                throw new IllegalArgumentException("The file is not a forest checkpoint.");
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while(buffer.hasRemaining()){
+                if(channel.read(buffer, buffer.position()) < 0) throw new EOFException("The checkpoint has no header.");
+            }
+            buffer.flip();
+
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+                throw new IllegalArgumentException("The file is not a forest checkpoint of this version.");
+            }
+
+            int height = buffer.getInt();
+            int width = buffer.getInt();
+            if(height < 0 || width < 0
+                || channel.size() != HEADER_BYTES + ForestGrid.serializedBytes(height, width)){
+                throw new IllegalArgumentException("The size of the checkpoint doesn't match its grid.");
+            }
+
+            int windOrdinal = buffer.get();
+            if(windOrdinal < -1 || windOrdinal >= DIRECTIONS.length){
+                throw new IllegalArgumentException("The wind direction of the checkpoint is not valid.");
+            }
+            Direction windDirection = windOrdinal < 0 ? null : DIRECTIONS[windOrdinal];
+            double windSpeed = buffer.getDouble();
+            int burningTime = buffer.getInt();
+            double baseBurningProbability = buffer.getDouble();
+            long randomSeed = buffer.getLong();
+            long stepCount = buffer.getLong();
+            int currentGeneration = buffer.getInt();
+            int maxGeneration = buffer.getInt();
+
+            // the mapping of an off-heap grid stays valid after the channel is closed.
+            ForestGrid grid = ForestGrid.readFrom(channel, HEADER_BYTES, height, width,
+                                                offHeap.test((long) height * width));
+
+            return new ForestCheckpoint(grid, windDirection, windSpeed, burningTime, baseBurningProbability,
+                                        randomSeed, stepCount, currentGeneration, maxGeneration);
+        }
+    }
+}
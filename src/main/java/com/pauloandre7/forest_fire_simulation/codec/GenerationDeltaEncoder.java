@@ -0,0 +1,91 @@
+package com.pauloandre7.forest_fire_simulation.codec;
+
+import java.nio.ByteBuffer;
+
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ *
+ * Binary frames of the forest stream. A keyframe has the whole grid and a delta has only the cells
+ * whose state changed since the previous generation.
+ *
+ * Keyframe: byte 0, followed by the PackedGridEncoder layout.
+ *
+ * Delta (big-endian):
+ * <ul>
+ * <li>byte 1</li>
+ * <li>int generation</li>
+ * <li>byte running (1 when the simulation is running)</li>
+ * <li>int amount of runs</li>
+ * <li>for each run of consecutive indexes: long first index, int length and the states of the run
+ * packed with 2 bits per cell, like the keyframe.</li>
+ * </ul>
+ */
+public final class GenerationDeltaEncoder {
+
+    public static final byte KEYFRAME = 0;
+    public static final byte DELTA = 1;
+
+    private GenerationDeltaEncoder(){
+    }
+
+    public static byte[] encodeKeyframe(ForestGrid grid, int generation, boolean running){
+        byte[] packedGrid = PackedGridEncoder.encode(grid, generation, running);
+
+        byte[] frame = new byte[packedGrid.length + 1];
+        frame[0] = KEYFRAME;
+        System.arraycopy(packedGrid, 0, frame, 1, packedGrid.length);
+        return frame;
+    }
+
+    /**
+     * Encodes the changed cells. The indexes must be sorted, and the states are read from the grid.
+     */
+    public static byte[] encodeDelta(ForestGrid grid, long[] changedCells, int changedCount, 
+                                    int generation, boolean running){
+        // first pass counts the runs to know the size of the frame
+        int runs = 0;
+        int packedBytes = 0;
+        int position = 0;
+        while(position < changedCount){
+            int runLength = runLength(changedCells, changedCount, position);
+            runs++;
+            packedBytes += PackedGridEncoder.packedStatesBytes(runLength);
+            position += runLength;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 1 + 4 + runs * 12 + packedBytes);
+        buffer.put(DELTA);
+        buffer.putInt(generation);
+        buffer.put((byte) (running ? 1 : 0));
+        buffer.putInt(runs);
+
+        position = 0;
+        while(position < changedCount){
+            int runLength = runLength(changedCells, changedCount, position);
+            long firstIndex = changedCells[position];
+            buffer.putLong(firstIndex);
+            buffer.putInt(runLength);
+
+            for(int i = 0; i < runLength; i += PackedGridEncoder.CELLS_PER_BYTE){
+                int packedByte = 0;
+                for(int j = i; j < Math.min(runLength, i + PackedGridEncoder.CELLS_PER_BYTE); j++){
+                    packedByte |= grid.getStateOrdinal(firstIndex + j) << ((j - i) * 2);
+                }
+                buffer.put((byte) packedByte);
+            }
+            position += runLength;
+        }
+
+        return buffer.array();
+    }
+
+    private static int runLength(long[] changedCells, int changedCount, int start){
+        int end = start + 1;
+        while(end < changedCount && changedCells[end] == changedCells[end - 1] + 1){
+            end++;
+        }
+        return end - start;
+    }
+}
@@ -0,0 +1,79 @@
+package com.pauloandre7.forest_fire_simulation.codec;
+
+import java.nio.charset.StandardCharsets;
+
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ *
+ * Writes the JSON of CurrentForestDTO straight from the grid:
+ * {@code {"grid":[[{"state":"VEGETATION"},...],...],"currentGeneration":0,"running":false}}.
+ *
+ * The object of each state is encoded once, so writing a cell is copying a few bytes, there is no DTO
+ * nor the reflection of the mapper for each cell. The size of the JSON is counted before it's written,
+ * so the bytes are allocated only once.
+ */
+public final class JsonGridEncoder {
+
+    private static final byte[] GRID_START = ascii("{\"grid\":[");
+    private static final byte[][] CELLS = new byte[CellState.values().length][];
+
+    static {
+        for(CellState state : CellState.values()){
+            CELLS[state.ordinal()] = ascii("{\"state\":\"" + state.name() + "\"}");
+        }
+    }
+
+    private JsonGridEncoder(){
+    }
+
+    public static byte[] encode(ForestGrid grid, int generation, boolean running){
+        byte[] suffix = ascii("],\"currentGeneration\":" + generation + ",\"running\":" + running + "}");
+        byte[] json = new byte[checkedSize(grid, suffix.length)];
+
+        int position = put(json, 0, GRID_START);
+        for(int row = 0; row < grid.getHeight(); row++){
+            if(row > 0) json[position++] = ',';
+            json[position++] = '[';
+
+            long rowStart = grid.index(row, 0);
+            for(int col = 0; col < grid.getWidth(); col++){
+                if(col > 0) json[position++] = ',';
+                position = put(json, position, CELLS[grid.getStateOrdinal(rowStart + col)]);
+            }
+            json[position++] = ']';
+        }
+        put(json, position, suffix);
+
+        return json;
+    }
+
+    // Bytes of the whole JSON, the cells are counted by state because each state has its own length.
+    private static int checkedSize(ForestGrid grid, int suffixBytes){
+        long size = GRID_START.length + suffixBytes;
+
+        // a grid of more cells than the limit never fits, each cell has more than one byte.
+        for(long index = 0; index < grid.size() && size <= Integer.MAX_VALUE; index++){
+            size += CELLS[grid.getStateOrdinal(index)].length;
+        }
+        // the commas between the cells and the brackets and commas of the rows.
+        size += (long) grid.getHeight() * Math.max(grid.getWidth() - 1, 0);
+        size += 3L * grid.getHeight() - (grid.getHeight() > 0 ? 1 : 0);
+
+        if(size > Integer.MAX_VALUE - 8){
+            throw new IllegalArgumentException("The forest is too large for the JSON display, use the packed format.");
+        }
+        return (int) size;
+    }
+
+    private static int put(byte[] target, int position, byte[] bytes){
+        System.arraycopy(bytes, 0, target, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    private static byte[] ascii(String text){
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
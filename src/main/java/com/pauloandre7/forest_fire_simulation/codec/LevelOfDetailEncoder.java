@@ -0,0 +1,91 @@
+package com.pauloandre7.forest_fire_simulation.codec;
+
+import java.nio.charset.StandardCharsets;
+
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.ForestPyramid;
+
+/**
+ * @author pauloandre7
+ *
+ * Writes the JSON of the level of detail view: the cells of a region aggregated in square blocks.
+ * {@code {"currentGeneration":0,"running":false,"blockSize":16,"row":0,"col":0,"rows":2,"cols":3,
+ * "states":["VEGETATION","BURNING","ASH","EMPTY"],"dominant":[0,0,1,0,3,0],"burningFraction":[0.0,...]}}
+ *
+ * The blocks are in row-major order, flat: block (r, c) is at r * cols + c. The block (0, 0) starts at the
+ * cell (row, col). dominant is the ordinal of the state with most cells of the block (the first one of
+ * states in a tie) and burningFraction is the fraction of the cells of the block that are burning. With the
+ * counts, the JSON also has "counts", the amount of cells of each state for each block, in the order of
+ * states: block (r, c) is at (r * cols + c) * 4.
+ */
+public final class LevelOfDetailEncoder {
+
+    private static final String STATES;
+
+    static {
+        StringBuilder states = new StringBuilder("[");
+        for(CellState state : CellState.values()){
+            if(state.ordinal() > 0) states.append(',');
+            states.append('"').append(state.name()).append('"');
+        }
+        STATES = states.append(']').toString();
+    }
+
+    private LevelOfDetailEncoder(){
+    }
+
+    /**
+     * Encodes the blocks of counts, ForestPyramid.STATES counts for each block.
+     */
+    public static byte[] encode(long[] counts, int rows, int cols, int blockSize, int row, int col,
+                                int generation, boolean running, boolean withCounts){
+        int blocks = rows * cols;
+        StringBuilder json = new StringBuilder(64 + blocks * (withCounts ? 24 : 12));
+
+        json.append("{\"currentGeneration\":").append(generation)
+            .append(",\"running\":").append(running)
+            .append(",\"blockSize\":").append(blockSize)
+            .append(",\"row\":").append(row)
+            .append(",\"col\":").append(col)
+            .append(",\"rows\":").append(rows)
+            .append(",\"cols\":").append(cols)
+            .append(",\"states\":").append(STATES);
+
+        json.append(",\"dominant\":[");
+        for(int block = 0; block < blocks; block++){
+            if(block > 0) json.append(',');
+            json.append(dominant(counts, block * ForestPyramid.STATES));
+        }
+
+        json.append("],\"burningFraction\":[");
+        for(int block = 0; block < blocks; block++){
+            if(block > 0) json.append(',');
+            int offset = block * ForestPyramid.STATES;
+            long cells = 0;
+            for(int state = 0; state < ForestPyramid.STATES; state++) cells += counts[offset + state];
+
+            long burning = counts[offset + CellState.BURNING.ordinal()];
+            json.append(burning == 0 ? "0.0" : Float.toString((float) burning / cells));
+        }
+        json.append(']');
+
+        if(withCounts){
+            json.append(",\"counts\":[");
+            for(int i = 0; i < blocks * ForestPyramid.STATES; i++){
+                if(i > 0) json.append(',');
+                json.append(counts[i]);
+            }
+            json.append(']');
+        }
+
+        return json.append('}').toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static int dominant(long[] counts, int offset){
+        int dominant = 0;
+        for(int state = 1; state < ForestPyramid.STATES; state++){
+            if(counts[offset + state] > counts[offset + dominant]) dominant = state;
+        }
+        return dominant;
+    }
+}
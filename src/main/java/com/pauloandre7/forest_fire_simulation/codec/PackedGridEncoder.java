@@ -0,0 +1,85 @@
+package com.pauloandre7.forest_fire_simulation.codec;
+
+import java.nio.ByteBuffer;
+
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ *
+ * Compact binary representation of the forest for the display. CellState has only four values,
+ * so each cell uses 2 bits and a byte holds 4 cells.
+ *
+ * Layout (big-endian):
+ * <ul>
+ * <li>int height</li>
+ * <li>int width</li>
+ * <li>int generation</li>
+ * <li>byte running (1 when the simulation is running)</li>
+ * <li>ceil(height * width / 4) bytes with the states in row-major order. The cell {@code i} is at the
+ * byte {@code i / 4}, bits {@code (i % 4) * 2} and {@code (i % 4) * 2 + 1}, and the value is the
+ * ordinal of CellState (0 VEGETATION, 1 BURNING, 2 ASH, 3 EMPTY).</li>
+ * </ul>
+ */
+public final class PackedGridEncoder {
+
+    public static final int HEADER_BYTES = 4 + 4 + 4 + 1;
+    public static final int CELLS_PER_BYTE = 4;
+    private static final int BITS_PER_CELL = 2;
+
+    private PackedGridEncoder(){
+    }
+
+    public static int packedStatesBytes(int cells){
+        return (int) packedStatesBytes((long) cells);
+    }
+
+    public static long packedStatesBytes(long cells){
+        return (cells + CELLS_PER_BYTE - 1) / CELLS_PER_BYTE;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the packed grid doesn't fit in an array, more than about
+     * 8.5 billion cells (the regions and the level of detail have no limit).
+     */
+    public static byte[] encode(ForestGrid grid, int generation, boolean running){
+        long packedBytes = HEADER_BYTES + packedStatesBytes(grid.size());
+        if(packedBytes > Integer.MAX_VALUE - 8){
+            throw new IllegalArgumentException("The forest is too large for the packed display, use the regions.");
+        }
+        byte[] packed = new byte[(int) packedBytes];
+
+        ByteBuffer buffer = ByteBuffer.wrap(packed);
+        buffer.putInt(grid.getHeight());
+        buffer.putInt(grid.getWidth());
+        buffer.putInt(generation);
+        buffer.put((byte) (running ? 1 : 0));
+
+        packStates(grid, packed, HEADER_BYTES);
+
+        return packed;
+    }
+
+    // Writes the 2-bit states straight from the grid, 4 cells for each byte.
+    static void packStates(ForestGrid grid, byte[] target, int offset){
+        long cells = grid.size();
+        int fullBytes = (int) (cells / CELLS_PER_BYTE);
+
+        for(int i = 0; i < fullBytes; i++){
+            long index = (long) i * CELLS_PER_BYTE;
+            target[offset + i] = (byte) (grid.getStateOrdinal(index)
+                                    | grid.getStateOrdinal(index + 1) << 2
+                                    | grid.getStateOrdinal(index + 2) << 4
+                                    | grid.getStateOrdinal(index + 3) << 6);
+        }
+
+        // the last byte can have less than 4 cells
+        int packedByte = 0;
+        for(long index = (long) fullBytes * CELLS_PER_BYTE; index < cells; index++){
+            packedByte |= grid.getStateOrdinal(index) << ((int) (index % CELLS_PER_BYTE) * BITS_PER_CELL);
+        }
+        if(cells % CELLS_PER_BYTE != 0){
+            target[offset + fullBytes] = (byte) packedByte;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.pauloandre7.forest_fire_simulation.codec;
+
+import java.nio.charset.StandardCharsets;
+
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ *
+ * Writes the JSON of a region of the forest, read straight from the grid:
+ * {@code {"currentGeneration":0,"running":false,"row":10,"col":20,"height":2,"width":3,"states":[0,0,1,0,3,0]}}.
+ *
+ * The cells are in row-major order, flat: cell (r, c) of the region is at r * width + c, and the value is
+ * the CellState ordinal. With the terrain, the JSON also has "moisture" and "relief" in the same order.
+ *
+ * Also writes the bounding box of the burning cells:
+ * {@code {"currentGeneration":0,"running":true,"burningCells":12,"row":40,"col":31,"height":5,"width":4}},
+ * the region is null when nothing is burning.
+ */
+public final class RegionEncoder {
+
+    private RegionEncoder(){
+    }
+
+    public static byte[] encode(ForestGrid grid, int row, int col, int height, int width,
+                                int generation, boolean running, boolean withTerrain){
+        StringBuilder json = new StringBuilder(96 + height * width * (withTerrain ? 24 : 2));
+
+        json.append("{\"currentGeneration\":").append(generation)
+            .append(",\"running\":").append(running)
+            .append(",\"row\":").append(row)
+            .append(",\"col\":").append(col)
+            .append(",\"height\":").append(height)
+            .append(",\"width\":").append(width);
+
+        // the ordinals have one digit, so the states are appended as chars.
+        json.append(",\"states\":[");
+        for(int r = row; r < row + height; r++){
+            long rowStart = grid.index(r, col);
+            for(long index = rowStart; index < rowStart + width; index++){
+                if(index > rowStart || r > row) json.append(',');
+                json.append((char) ('0' + grid.getStateOrdinal(index)));
+            }
+        }
+        json.append(']');
+
+        if(withTerrain){
+            json.append(",\"moisture\":[");
+            for(int r = row; r < row + height; r++){
+                long rowStart = grid.index(r, col);
+                for(long index = rowStart; index < rowStart + width; index++){
+                    if(index > rowStart || r > row) json.append(',');
+                    json.append((float) grid.getMoisture(index));
+                }
+            }
+
+            json.append("],\"relief\":[");
+            for(int r = row; r < row + height; r++){
+                long rowStart = grid.index(r, col);
+                for(long index = rowStart; index < rowStart + width; index++){
+                    if(index > rowStart || r > row) json.append(',');
+                    json.append((float) grid.getRelief(index));
+                }
+            }
+            json.append(']');
+        }
+
+        return json.append('}').toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Bounding box of the fire, the region is written only when there are burning cells.
+    public static byte[] encodeFireBounds(long burningCells, int row, int col, int height, int width,
+                                        int generation, boolean running){
+        StringBuilder json = new StringBuilder(128);
+
+        json.append("{\"currentGeneration\":").append(generation)
+            .append(",\"running\":").append(running)
+            .append(",\"burningCells\":").append(burningCells);
+
+        if(burningCells > 0){
+            json.append(",\"row\":").append(row)
+                .append(",\"col\":").append(col)
+                .append(",\"height\":").append(height)
+                .append(",\"width\":").append(width);
+        } else {
+            json.append(",\"row\":null,\"col\":null,\"height\":null,\"width\":null");
+        }
+
+        return json.append('}').toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,50 @@
+package com.pauloandre7.forest_fire_simulation.config;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.pauloandre7.forest_fire_simulation.metrics.SimulationMetrics;
+import com.pauloandre7.forest_fire_simulation.service.SimulationService;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+/**
+ * @author pauloandre7
+ *
+ * Meters of the simulation, exported by the actuator at /actuator/prometheus.
+ * The generations are measured by SimulationMetrics, here are the gauges read at each scrape.
+ */
+@Configuration
+public class MetricsConfig {
+
+    // Meters of the default simulation, the sessions create their own (see SimulationSessionManager).
+    @Bean
+    public SimulationMetrics simulationMetrics(MeterRegistry registry){
+        return new SimulationMetrics(registry, "default");
+    }
+
+    // executor_active_threads, executor_queued_tasks, executor_steals and the others of the ForkJoinPool.
+    @Bean
+    public MeterBinder simulationExecutorMetrics(ForkJoinPool simulationExecutor){
+        return new ExecutorServiceMetrics(simulationExecutor, "simulation", List.of());
+    }
+
+    @Bean
+    public MeterBinder simulationStateMetrics(SimulationService simulationService){
+        return registry -> {
+            Gauge.builder("simulation.fire.burning", simulationService, SimulationService::getBurningCount)
+                .description("Burning cells of the default simulation after the last generation")
+                .baseUnit("cells")
+                .register(registry);
+            Gauge.builder("simulation.generation", simulationService, SimulationService::getCurrentGeneration)
+                .description("Current generation of the default simulation")
+                .register(registry);
+        };
+    }
+}
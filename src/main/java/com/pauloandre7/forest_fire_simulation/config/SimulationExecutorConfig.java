@@ -0,0 +1,65 @@
+package com.pauloandre7.forest_fire_simulation.config;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.pauloandre7.forest_fire_simulation.parallel.ExecutionBackends;
+import com.pauloandre7.forest_fire_simulation.parallel.SweepKernel;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author pauloandre7
+ *
+ * Creates the pool of threads of the simulation. There is only one pool in the application,
+ * the default simulation and the sessions calculate their generations on it.
+ * The kernel of the full sweep and the execution backends are also created here, at the startup.
+ */
+@Slf4j
+@Configuration
+public class SimulationExecutorConfig {
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ForkJoinPool simulationExecutor(SimulationProperties properties){
+        return createPool(properties);
+    }
+
+    @Bean
+    public SweepKernel sweepKernel(SimulationProperties properties){
+        SweepKernel kernel = createKernel(properties);
+
+        if(properties.getKernel() == SimulationProperties.Kernel.VECTOR && !SweepKernel.isVectorAvailable()){
+            log.warn("The vector kernel needs --add-modules {}, the scalar kernel will be used.",
+                    SweepKernel.VECTOR_MODULE);
+        }
+        log.info("Sweep kernel: {}", kernel.getClass().getSimpleName());
+        return kernel;
+    }
+
+    // The services created outside of Spring (sessions, tests) select the same kernel.
+    public static SweepKernel createKernel(SimulationProperties properties){
+        return SweepKernel.select(properties.getKernel() == SimulationProperties.Kernel.VECTOR);
+    }
+
+    // The fixed pool and the virtual threads of the backends are shut down with the context.
+    @Bean(destroyMethod = "close")
+    public ExecutionBackends executionBackends(SimulationProperties properties, ForkJoinPool simulationExecutor){
+        log.info("Execution backend: {}", properties.getBackend().getMode());
+        return createBackends(properties, simulationExecutor);
+    }
+
+    public static ExecutionBackends createBackends(SimulationProperties properties, ForkJoinPool pool){
+        SimulationProperties.Backend backend = properties.getBackend();
+        return new ExecutionBackends(backend.getMode(), backend.getSerialMaxCells(), pool);
+    }
+
+    // simulation.parallelism can limit the threads, 0 means all the processors.
+    public static ForkJoinPool createPool(SimulationProperties properties){
+        int parallelism = properties.getParallelism() > 0 
+                            ? properties.getParallelism() 
+                            : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(parallelism);
+    }
+}
@@ -0,0 +1,117 @@
+package com.pauloandre7.forest_fire_simulation.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import com.pauloandre7.forest_fire_simulation.parallel.ExecutionBackends;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * @author pauloandre7
+ * 
+ * Properties of the simulation engine, read from application.properties with the prefix "simulation".
+ * The default values are used when the property is not defined.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "simulation")
+public class SimulationProperties {
+
+    // Threads of the simulation pool, 0 uses all the available processors.
+    private int parallelism = 0;
+
+    // Kernel of the full sweep. VECTOR needs the JVM option --add-modules jdk.incubator.vector,
+    // without it the scalar kernel is used.
+    private Kernel kernel = Kernel.SCALAR;
+
+    private final Scheduler scheduler = new Scheduler();
+    private final Backend backend = new Backend();
+    private final Tiling tiling = new Tiling();
+    private final Sessions sessions = new Sessions();
+    private final Checkpoint checkpoint = new Checkpoint();
+    private final Storage storage = new Storage();
+    private final Partitioned partitioned = new Partitioned();
+
+    public enum Kernel {
+        SCALAR, VECTOR
+    }
+
+    @Getter
+    @Setter
+    public static class Scheduler {
+        // Target rate of a simulation when the start request doesn't give one, 0 is as fast as possible.
+        private double generationsPerSecond = 2;
+        // Longest wait of the scheduler thread when no simulation is due, a started simulation
+        // waits at most this to calculate its first generation.
+        private long idleDelayMillis = 50;
+    }
+
+    @Getter
+    @Setter
+    public static class Backend {
+        // Where the tasks of a generation run, see ExecutionBackends.
+        private ExecutionBackends.Mode mode = ExecutionBackends.Mode.AUTO;
+        // With AUTO, the forests up to this size are calculated at the scheduler thread.
+        private long serialMaxCells = 16_384;
+    }
+
+    @Getter
+    @Setter
+    public static class Tiling {
+        // L2 cache of each core, the tiles of the full sweep are sized to fit in it.
+        private long l2CacheBytes = 1024 * 1024;
+        // Tasks for each thread of the pool, more tasks means better balance with the work-stealing.
+        private int tasksPerThread = 4;
+        // Smaller tiles than this don't pay the cost of the fork.
+        private int minTileCells = 4096;
+    }
+
+    @Getter
+    @Setter
+    public static class Sessions {
+        // Simulations that can exist at the same time, besides the default one.
+        private int maxSessions = 256;
+        // Limits of the forest of each session.
+        private int maxCells = 1_000_000;
+        private long maxMemoryBytes = 64L * 1024 * 1024;
+        // Time of each scheduler tick used to calculate the generations of the sessions.
+        private long tickBudgetMillis = 400;
+    }
+
+    @Getter
+    @Setter
+    public static class Checkpoint {
+        // File of the checkpoint of the default simulation.
+        private String path = "checkpoints/forest.ckpt";
+        // A checkpoint is written every interval generations, 0 disables the automatic checkpoints.
+        private int interval = 0;
+    }
+
+    @Getter
+    @Setter
+    public static class Storage {
+        // Forests with at least this many cells keep the grid off the heap, with the Foreign Memory API.
+        // It needs the JVM option --enable-preview, without it the heap is used. 0 keeps all in the heap,
+        // except the forests of more than Integer.MAX_VALUE cells, which don't fit in the arrays of the heap.
+        private long offHeapMinCells = 50_000_000;
+
+        public boolean isOffHeap(long cells){
+            return cells > Integer.MAX_VALUE || (offHeapMinCells > 0 && cells >= offHeapMinCells);
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Partitioned {
+        // Most worker processes of a partitioned run, see PartitionedSimulation.
+        private int maxWorkers = 16;
+        // Time for the workers to start and connect to the coordinator.
+        private long startTimeoutMillis = 30_000;
+        // Options of the JVMs of the workers, like -Xmx.
+        private List<String> workerJvmOptions = new ArrayList<>();
+    }
+}
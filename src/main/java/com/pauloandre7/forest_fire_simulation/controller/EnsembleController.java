@@ -0,0 +1,59 @@
+package com.pauloandre7.forest_fire_simulation.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pauloandre7.forest_fire_simulation.dto.EnsembleRequest;
+import com.pauloandre7.forest_fire_simulation.dto.EnsembleResultDTO;
+import com.pauloandre7.forest_fire_simulation.service.EnsembleService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Controller of the Monte Carlo ensembles
+ * <p>
+ * Runs many replicas of the same forest and returns the probability of each cell to burn. It doesn't
+ * change the default simulation or the sessions.
+ * </p>
+ *
+ * <p>Base URL: {@code /simulation}</p>
+ *
+ * @author Paulo Andre
+ */
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/simulation")
+public class EnsembleController {
+
+    private final EnsembleService ensembleService;
+
+    /**
+     * Runs an ensemble of replicas
+     * <p>
+     * <ul>
+     * <li>{@code customForest} or {@code randomForest} - the forest, with the fields of the forest requests.</li>
+     * <li>{@code replicas} - amount of runs of the forest.</li>
+     * <li>{@code seed} - optional, the same seed gives the same probabilities.</li>
+     * <li>{@code maxGeneration} - limit of generations of each replica, 0 runs until the fire dies out.</li>
+     * </ul>
+     * </p>
+     *
+     * @param ensembleRequest the JSON object with the forest and the params of the ensemble
+     * @return A {@link ResponseEntity} with the {@link EnsembleResultDTO} (burnProbability[][], 
+     * replicaGenerations, wallTimeMillis and replicaGenerationsPerSecond) and 200 status (OK).
+     * @throws IllegalArgumentException if the forest or the params are invalid (returns 400).
+     */
+    @PostMapping("/ensemble")
+    public ResponseEntity<EnsembleResultDTO> runEnsemble(@RequestBody EnsembleRequest ensembleRequest){
+        try{
+            return ResponseEntity.ok(ensembleService.runEnsemble(ensembleRequest));
+
+        } catch(IllegalArgumentException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+}
@@ -1,19 +1,33 @@
 package com.pauloandre7.forest_fire_simulation.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.pauloandre7.forest_fire_simulation.codec.ForestCheckpoint;
+import com.pauloandre7.forest_fire_simulation.dto.BatchRunResultDTO;
 import com.pauloandre7.forest_fire_simulation.dto.CellCoordinatesRequest;
-import com.pauloandre7.forest_fire_simulation.dto.CurrentForestDTO;
-import com.pauloandre7.forest_fire_simulation.dto.CustomForestRequest;
 import com.pauloandre7.forest_fire_simulation.dto.RandomForestRequest;
 import com.pauloandre7.forest_fire_simulation.dto.SimulationStartRequest;
+import com.pauloandre7.forest_fire_simulation.dto.ViewportRequest;
 import com.pauloandre7.forest_fire_simulation.exception.EmptyForestException;
+import com.pauloandre7.forest_fire_simulation.service.CheckpointService;
+import com.pauloandre7.forest_fire_simulation.service.DisplaySnapshot;
+import com.pauloandre7.forest_fire_simulation.service.ForestStreamPublisher;
 import com.pauloandre7.forest_fire_simulation.service.SimulationService;
 
 import lombok.RequiredArgsConstructor;
@@ -39,6 +53,8 @@ import lombok.RequiredArgsConstructor;
 public class SimulationController {
 
     private final SimulationService simulationService;
+    private final ForestStreamPublisher streamPublisher;
+    private final CheckpointService checkpointService;
 
     /**
      * Initialize a custom forest with provided params
@@ -53,20 +69,28 @@ public class SimulationController {
      * <li>{@code burningTime} - the time that a burning cell needs to become ash.</li>
      * </ul>
      * </p>
+     * <p>
+     * The body is read as a stream and the cells are written straight into the grid when {@code height}
+     * and {@code width} come before {@code forestCells}, otherwise they are kept in compact columns until
+     * the dimensions are read.
+     * </p>
      *
-     * @param initializeForestDto the JSON object containing all the values for a new forest
+     * @param body the JSON object containing all the values for a new forest
      * @return {@code ResponseEntity} with confirmation string
      * @throws IllegalStateException if the simulation is already running (returns 204).
+     * @throws IllegalArgumentException if the grid doesn't match height and width (returns 400).
      */
-    @PostMapping("/forest/custom")
-    public ResponseEntity<String> initializeForest(@RequestBody CustomForestRequest initializeForestDto) {
+    @PostMapping(value = "/forest/custom", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> initializeForest(InputStream body) {
         try{
-            simulationService.initializeForest(initializeForestDto);
+            simulationService.initializeForest(body);
             return ResponseEntity.ok("The custom forest was created successfully");
             
         }catch(IllegalStateException e){
             return new ResponseEntity<>("Simulation must be stopped to initialize a Forest.", 
                                             HttpStatus.CONFLICT);
+        }catch(IllegalArgumentException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
         }
     }
 
@@ -78,6 +102,7 @@ public class SimulationController {
      * <li>{@code height} - amount of rows.</li>
      * <li>{@code width} - amount of columns.</li>
      * <li>{@code burningTime} - the time that a burning cell needs to become ash.</li>
+     * <li>{@code seed} - optional, the same seed generates the same forest and fire.</li>
      * </ul>
      * </p>
      *
@@ -113,15 +138,147 @@ public class SimulationController {
      * <li>{@code isRunning} - the boolean status of simulation execution.</li>
      * </ul>
      * </p>
+     * <p>
+     * The JSON is serialized once for each generation and the same bytes are returned to every request
+     * until the forest changes. The response has an {@code ETag}, a request with the same value at
+     * {@code If-None-Match} gets 304 (Not Modified) without the body.
+     * </p>
      * @return A {@link ResponseEntity} that contains the Forest DTO (grid[][], currentGeneration and isRunning) and 200 status (OK).
      * @throws IllegalStateException if the forest wasn't initialized (returns 404).
      * @throws EmptyForestException if the forest is empty (returns 204).
      */
-    @GetMapping("/forest")
-    public ResponseEntity<CurrentForestDTO> getForestForDisplay(){
+    @GetMapping(value = "/forest", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getForestForDisplay(){
+        try{
+            return displaySnapshotResponse(simulationService.getJsonDisplaySnapshot());
+
+        } catch(IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch(EmptyForestException e){
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+    }
+
+    /**
+     * Gets the forest in a compact binary format
+     * <p>
+     * Selected with {@code Accept: application/octet-stream}, the JSON representation is still the default.
+     * It has the same data of the JSON, but each cell uses 2 bits instead of an object.
+     * </p>
+     * <p>
+     * Layout (big-endian, see {@link com.pauloandre7.forest_fire_simulation.codec.PackedGridEncoder}):
+     * <ul>
+     * <li>{@code height}, {@code width} and {@code currentGeneration} - ints.</li>
+     * <li>{@code isRunning} - one byte, 1 when running.</li>
+     * <li>{@code states} - 4 cells for each byte in row-major order, the value is the CellState ordinal.</li>
+     * </ul>
+     * </p>
+     * It's cached and has an {@code ETag} as the JSON.
+     * @return A {@link ResponseEntity} with the packed forest and 200 status (OK).
+     * @throws IllegalStateException if the forest wasn't initialized (returns 404).
+     * @throws EmptyForestException if the forest is empty (returns 204).
+     */
+    @GetMapping(value = "/forest", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> getPackedForestForDisplay(){
+        try{
+            return displaySnapshotResponse(simulationService.getPackedDisplaySnapshot());
+
+        } catch(IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch(EmptyForestException e){
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+    }
+
+    /**
+     * Gets a region of the forest at the resolution of the screen
+     * <p>
+     * For forests larger than the screen: the cells are aggregated in square blocks, with the smallest
+     * side (a power of two) that fits the region in {@code maxRows} x {@code maxCols} blocks. Zooming out
+     * of a big forest reads counts kept up to date at each generation, not the cells of the region.
+     * </p>
+     * <p>
+     * Parameters:
+     * <ul>
+     * <li>{@code row}, {@code col}, {@code height} and {@code width} - the region, the whole forest by default.</li>
+     * <li>{@code maxRows} and {@code maxCols} - the resolution of the view, in blocks (256 by default).</li>
+     * <li>{@code counts} - true to add the amount of cells of each state for each block.</li>
+     * </ul>
+     * </p>
+     * The JSON is described by {@link com.pauloandre7.forest_fire_simulation.codec.LevelOfDetailEncoder},
+     * it has an {@code ETag} as the whole forest.
+     * @return A {@link ResponseEntity} with the blocks and 200 status (OK).
+     * @throws IllegalStateException if the forest wasn't initialized (returns 404).
+     * @throws EmptyForestException if the forest is empty (returns 204).
+     * @throws IllegalArgumentException if the region is outside the forest or the resolution is invalid (returns 400).
+     */
+    @GetMapping(value = "/forest/lod", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getForestLevelOfDetail(ViewportRequest viewport,
+                                                        @RequestParam(defaultValue = "256") int maxRows,
+                                                        @RequestParam(defaultValue = "256") int maxCols,
+                                                        @RequestParam(defaultValue = "false") boolean counts){
+        try{
+            return displaySnapshotResponse(simulationService.getLevelOfDetail(viewport, maxRows, maxCols, counts));
+
+        } catch(IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch(EmptyForestException e){
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch(IllegalArgumentException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Gets the cells of a region of the forest
+     * <p>
+     * For viewers zoomed into a part of the forest: only the cells of the region are read from the
+     * current generation, the rest of the forest is not copied nor serialized.
+     * </p>
+     * <p>
+     * Parameters:
+     * <ul>
+     * <li>{@code row}, {@code col}, {@code height} and {@code width} - the region, cut at the border of the forest.</li>
+     * <li>{@code terrain} - true to add the moisture and the relief of the cells.</li>
+     * </ul>
+     * </p>
+     * The JSON is described by {@link com.pauloandre7.forest_fire_simulation.codec.RegionEncoder},
+     * it has an {@code ETag} as the whole forest.
+     * @return A {@link ResponseEntity} with the cells and 200 status (OK).
+     * @throws IllegalStateException if the forest wasn't initialized (returns 404).
+     * @throws EmptyForestException if the forest is empty (returns 204).
+     * @throws IllegalArgumentException if the region is outside the forest or too large (returns 400).
+     */
+    @GetMapping(value = "/forest/region", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getForestRegion(ViewportRequest viewport,
+                                                @RequestParam(defaultValue = "false") boolean terrain){
+        try{
+            return displaySnapshotResponse(simulationService.getRegion(viewport, terrain));
+
+        } catch(IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch(EmptyForestException e){
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch(IllegalArgumentException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Gets the bounding box of the burning cells
+     * <p>
+     * A viewer can focus on the fire and then ask its region, without downloading the forest.
+     * The region is null when nothing is burning. It's found once for each generation and has an
+     * {@code ETag} as the whole forest.
+     * </p>
+     * @return A {@link ResponseEntity} with the bounding box and 200 status (OK).
+     * @throws IllegalStateException if the forest wasn't initialized (returns 404).
+     * @throws EmptyForestException if the forest is empty (returns 204).
+     */
+    @GetMapping(value = "/forest/fire-bounds", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getFireBounds(){
         try{
-            CurrentForestDTO currentForestDto = simulationService.getForestForDisplay();
-            return ResponseEntity.ok(currentForestDto);
+            return displaySnapshotResponse(simulationService.getFireBounds());
 
         } catch(IllegalStateException e){
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
@@ -130,28 +287,127 @@ public class SimulationController {
         }
     }
 
+    /**
+     * Streams the forest generation by generation with Server-Sent Events
+     * <p>
+     * Instead of polling {@code /forest}, the viewer receives only the cells that changed at each generation.
+     * The data of each event is a base64 frame of
+     * {@link com.pauloandre7.forest_fire_simulation.codec.GenerationDeltaEncoder}.
+     * <ul>
+     * <li>{@code keyframe} - the whole grid, sent on connect and when the viewer falls behind.</li>
+     * <li>{@code delta} - the runs of changed cells since the previous event.</li>
+     * </ul>
+     * </p>
+     *
+     * @return the {@link SseEmitter} of the stream, it stays open until the viewer disconnects.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamForest(){
+        return streamPublisher.subscribe();
+    }
+
     /**
      * Starts the simulation if the forest exists
      * <p>
      * Toggle on the execution status and starts the simulation. Needs a forest to calculate.
      * <ul>
      * <li>{@code maxGeneration} - the amount of cycles of the simulation execution.</li>
+     * <li>{@code seed} - optional, makes the run reproducible for the same forest.</li>
+     * <li>{@code generationsPerSecond} - optional, target rate of the generations, 0 is as fast as
+     * possible. Without it, {@code simulation.scheduler.generations-per-second} is used.</li>
      * </ul>
      * </p>
      *
-     * @param startDto the JSON object containing maxGeneration param
+     * @param startDto the JSON object containing maxGeneration, seed and generationsPerSecond params
      * @return {@code ResponseEntity} with confirmation string
-     * @throws IllegalStateException if the simulation is already running (returns 409).
+     * @throws IllegalStateException if the simulation is already running or the forest 
+     * wasn't initialized (returns 409).
+     * @throws IllegalArgumentException if generationsPerSecond is negative (returns 400).
      */ 
     @PostMapping("/start")
     public ResponseEntity<String> startSimulation(@RequestBody SimulationStartRequest startDto){
         try{
-            simulationService.startSimulation(startDto.getMaxGeneration());
+            simulationService.startSimulation(startDto.getMaxGeneration(), startDto.getSeed(),
+                                            startDto.getGenerationsPerSecond());
             return ResponseEntity.ok("Simulation started successfully");
 
         }catch(IllegalStateException e){
-            return new ResponseEntity<>("Simulation is already running.", 
-                                            HttpStatus.CONFLICT);
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+        }catch(IllegalArgumentException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Runs the simulation to the end without the scheduler
+     * <p>
+     * The generations are calculated back to back until {@code maxGeneration} or until the fire dies out,
+     * and the response only comes at the end. It can be cancelled by {@code /simulation/stop}.
+     * The run is a task of its own, the request is answered asynchronously and no HTTP thread waits for it.
+     * <ul>
+     * <li>{@code maxGeneration} - the maximum amount of cycles, must be positive.</li>
+     * <li>{@code seed} - optional, makes the run reproducible for the same forest.</li>
+     * </ul>
+     * </p>
+     *
+     * @param startDto the JSON object containing maxGeneration and seed params
+     * @return A {@link ResponseEntity} with the {@link BatchRunResultDTO} (generations, burnedCells,
+     * wallTimeMillis, cellsPerSecond, extinguished and cancelled) and 200 status (OK).
+     * @throws IllegalStateException if the simulation is already running or the forest 
+     * wasn't initialized (returns 409).
+     * @throws IllegalArgumentException if maxGeneration is not positive (returns 400).
+     */
+    @PostMapping("/batch")
+    public CompletableFuture<ResponseEntity<BatchRunResultDTO>> runToCompletion(
+                                                                @RequestBody SimulationStartRequest startDto){
+        try{
+            return simulationService.submitBatch(startDto.getMaxGeneration(), startDto.getSeed())
+                                    .thenApply(ResponseEntity::ok);
+
+        }catch(IllegalStateException e){
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.CONFLICT));
+        }catch(IllegalArgumentException e){
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+    }
+
+    /**
+     * Runs the simulation to the end with the forest split among worker processes
+     * <p>
+     * Same as {@code /simulation/batch}, but the rows of the forest are divided in bands, one for each
+     * worker JVM started on this machine, and the workers exchange the rows at the borders of their bands
+     * at every generation. With the same seed, the result is the same of {@code /simulation/batch}.
+     * The forest is updated with the cells of the workers at the end.
+     * <ul>
+     * <li>{@code workers} - query parameter, the amount of worker processes (up to
+     * {@code simulation.partitioned.max-workers}).</li>
+     * </ul>
+     * </p>
+     *
+     * @return A {@link ResponseEntity} with the {@link BatchRunResultDTO} and 200 status (OK).
+     * @throws IllegalStateException if the simulation is already running or the forest
+     * wasn't initialized (returns 409).
+     * @throws IllegalArgumentException if maxGeneration or workers are invalid (returns 400).
+     * @throws IOException if a worker couldn't start or failed (returns 500).
+     */
+    @PostMapping("/batch/partitioned")
+    public CompletableFuture<ResponseEntity<BatchRunResultDTO>> runPartitioned(@RequestParam int workers,
+                                                            @RequestBody SimulationStartRequest startDto){
+        try{
+            return simulationService.submitPartitioned(workers, startDto.getMaxGeneration(), startDto.getSeed())
+                                    .thenApply(ResponseEntity::ok)
+                                    .exceptionally(e -> {
+                                        if(e.getCause() instanceof IOException){
+                                            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+                                        }
+                                        throw e instanceof CompletionException completion ? completion
+                                                                                          : new CompletionException(e);
+                                    });
+
+        }catch(IllegalStateException e){
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.CONFLICT));
+        }catch(IllegalArgumentException e){
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
         }
     }
 
@@ -167,6 +423,63 @@ public class SimulationController {
         return ResponseEntity.ok("Simulation stopped successfully");
     }
 
+    /**
+     * Writes a binary checkpoint of the simulation
+     * <p>
+     * The grid, the terrain, the wind and the generation counters are saved at the file of
+     * {@code simulation.checkpoint.path}. While the simulation runs, the checkpoint is taken between two
+     * generations.
+     * </p>
+     *
+     * @return {@code ResponseEntity} with the generation of the checkpoint
+     * @throws IllegalStateException if the forest wasn't initialized or a partitioned run has its cells
+     * (returns 409).
+     * @throws IOException if the file cannot be written (returns 500).
+     */
+    @PostMapping("/checkpoint")
+    public ResponseEntity<String> checkpoint(){
+        try{
+            ForestCheckpoint checkpoint = checkpointService.checkpoint();
+            return ResponseEntity.ok("Checkpoint of generation " + checkpoint.currentGeneration() + " written.");
+
+        } catch(IllegalStateException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+        } catch(IOException e){
+            return new ResponseEntity<>("The checkpoint could not be written.", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Restores the last checkpoint
+     * <p>
+     * The file is mapped and the grid is copied in bulk, without parsing each cell.
+     * <ul>
+     * <li>{@code resume} - optional, when true the simulation continues from the saved generation.</li>
+     * </ul>
+     * </p>
+     *
+     * @return {@code ResponseEntity} with the restored generation
+     * @throws IllegalStateException if the simulation is running (returns 409).
+     * @throws NoSuchFileException if there is no checkpoint (returns 404).
+     * @throws IllegalArgumentException if the file is not a valid checkpoint (returns 400).
+     */
+    @PostMapping("/checkpoint/restore")
+    public ResponseEntity<String> restoreCheckpoint(@RequestParam(defaultValue = "false") boolean resume){
+        try{
+            ForestCheckpoint checkpoint = checkpointService.restore(resume);
+            return ResponseEntity.ok("Generation " + checkpoint.currentGeneration() + " restored.");
+
+        } catch(IllegalStateException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+        } catch(IllegalArgumentException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch(NoSuchFileException e){
+            return new ResponseEntity<>("There is no checkpoint to restore.", HttpStatus.NOT_FOUND);
+        } catch(IOException e){
+            return new ResponseEntity<>("The checkpoint could not be read.", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     /**
      * Start fire at a specific cell
      * <p>
@@ -197,4 +510,15 @@ public class SimulationController {
             return new ResponseEntity<>("The coordinates doesn't exist.", HttpStatus.BAD_REQUEST);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The response of a display snapshot. Spring answers 304 when the ETag matches the
+     * {@code If-None-Match} of a GET, and no-cache makes the browsers revalidate it at each poll.
+     */
+    static ResponseEntity<byte[]> displaySnapshotResponse(DisplaySnapshot snapshot){
+        return ResponseEntity.ok()
+                            .eTag(snapshot.eTag())
+                            .cacheControl(CacheControl.noCache())
+                            .body(snapshot.body());
+    }
+}
@@ -0,0 +1,267 @@
+package com.pauloandre7.forest_fire_simulation.controller;
+
+import java.io.InputStream;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.pauloandre7.forest_fire_simulation.dto.CellCoordinatesRequest;
+import com.pauloandre7.forest_fire_simulation.dto.RandomForestRequest;
+import com.pauloandre7.forest_fire_simulation.dto.SimulationStartRequest;
+import com.pauloandre7.forest_fire_simulation.dto.ViewportRequest;
+import com.pauloandre7.forest_fire_simulation.exception.EmptyForestException;
+import com.pauloandre7.forest_fire_simulation.exception.SessionLimitException;
+import com.pauloandre7.forest_fire_simulation.exception.SessionNotFoundException;
+import com.pauloandre7.forest_fire_simulation.service.SimulationSessionManager;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Controller of the simulation sessions
+ * <p>
+ * Each session is an independent simulation with its own forest, identified by the id returned
+ * when it is created. The endpoints are the same of {@link SimulationController}, under
+ * {@code /simulation/{id}}. All the sessions run on the same pool of threads.
+ * </p>
+ *
+ * <p>Base URL: {@code /simulation}</p>
+ *
+ * @author Paulo Andre
+ */
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/simulation")
+public class SimulationSessionController {
+
+    private final SimulationSessionManager sessionManager;
+
+    /**
+     * Creates a new session without forest
+     *
+     * @return {@code ResponseEntity} with the id of the session and 201 status (CREATED).
+     * @throws SessionLimitException if the maximum amount of sessions was reached (returns 409).
+     */
+    @PostMapping("/sessions")
+    public ResponseEntity<String> createSession(){
+        try{
+            return new ResponseEntity<>(sessionManager.createSession(), HttpStatus.CREATED);
+
+        } catch(SessionLimitException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+        }
+    }
+
+    /**
+     * Stops and removes a session
+     *
+     * @param id the id of the session
+     * @return {@code ResponseEntity} with confirmation string
+     * @throws SessionNotFoundException if the session doesn't exist (returns 404).
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<String> deleteSession(@PathVariable String id){
+        try{
+            sessionManager.deleteSession(id);
+            return ResponseEntity.ok("Session removed successfully");
+
+        } catch(SessionNotFoundException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    /**
+     * Initialize a custom forest at the session, see {@link SimulationController#initializeForest}.
+     * The limits of the session are checked before the grid is allocated.
+     *
+     * @throws SessionLimitException if the forest exceeds the limits of a session (returns 413).
+     */
+    @PostMapping(value = "/{id}/forest/custom", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> initializeForest(@PathVariable String id, InputStream body){
+        try{
+            sessionManager.initializeForest(id, body);
+            return ResponseEntity.ok("The custom forest was created successfully");
+
+        } catch(SessionNotFoundException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch(SessionLimitException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONTENT_TOO_LARGE);
+        } catch(IllegalStateException e){
+            return new ResponseEntity<>("Simulation must be stopped to initialize a Forest.",
+                                            HttpStatus.CONFLICT);
+        } catch(IllegalArgumentException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Initialize a random forest at the session, see {@link SimulationController#generateRandomForest}
+     *
+     * @throws SessionLimitException if the forest exceeds the limits of a session (returns 413).
+     */
+    @PostMapping("/{id}/forest/random")
+    public ResponseEntity<String> generateRandomForest(@PathVariable String id,
+                                                    @RequestBody RandomForestRequest randomForestRequest){
+        try{
+            sessionManager.generateRandomForest(id, randomForestRequest);
+            return ResponseEntity.ok("Random forest created");
+
+        } catch(SessionNotFoundException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch(SessionLimitException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONTENT_TOO_LARGE);
+        } catch(IllegalStateException e){
+            return new ResponseEntity<>("Simulation must be stopped to create a random Forest.",
+                                            HttpStatus.CONFLICT);
+        }
+    }
+
+    /**
+     * Gets the forest of the session, see {@link SimulationController#getForestForDisplay}
+     */
+    @GetMapping(value = "/{id}/forest", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getForestForDisplay(@PathVariable String id){
+        try{
+            return SimulationController.displaySnapshotResponse(sessionManager.getService(id).getJsonDisplaySnapshot());
+
+        } catch(SessionNotFoundException | IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch(EmptyForestException e){
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+    }
+
+    /**
+     * Gets the forest of the session in the packed binary format,
+     * see {@link SimulationController#getPackedForestForDisplay}
+     */
+    @GetMapping(value = "/{id}/forest", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> getPackedForestForDisplay(@PathVariable String id){
+        try{
+            return SimulationController.displaySnapshotResponse(sessionManager.getService(id).getPackedDisplaySnapshot());
+
+        } catch(SessionNotFoundException | IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch(EmptyForestException e){
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+    }
+
+    /**
+     * Gets a region of the forest of the session by blocks,
+     * see {@link SimulationController#getForestLevelOfDetail}
+     */
+    @GetMapping(value = "/{id}/forest/lod", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getForestLevelOfDetail(@PathVariable String id, ViewportRequest viewport,
+                                                        @RequestParam(defaultValue = "256") int maxRows,
+                                                        @RequestParam(defaultValue = "256") int maxCols,
+                                                        @RequestParam(defaultValue = "false") boolean counts){
+        try{
+            return SimulationController.displaySnapshotResponse(
+                            sessionManager.getService(id).getLevelOfDetail(viewport, maxRows, maxCols, counts));
+
+        } catch(SessionNotFoundException | IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch(EmptyForestException e){
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch(IllegalArgumentException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Gets the cells of a region of the forest of the session, see {@link SimulationController#getForestRegion}
+     */
+    @GetMapping(value = "/{id}/forest/region", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getForestRegion(@PathVariable String id, ViewportRequest viewport,
+                                                @RequestParam(defaultValue = "false") boolean terrain){
+        try{
+            return SimulationController.displaySnapshotResponse(sessionManager.getService(id).getRegion(viewport, terrain));
+
+        } catch(SessionNotFoundException | IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch(EmptyForestException e){
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch(IllegalArgumentException e){
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Gets the bounding box of the fire of the session, see {@link SimulationController#getFireBounds}
+     */
+    @GetMapping(value = "/{id}/forest/fire-bounds", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> getFireBounds(@PathVariable String id){
+        try{
+            return SimulationController.displaySnapshotResponse(sessionManager.getService(id).getFireBounds());
+
+        } catch(SessionNotFoundException | IllegalStateException e){
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch(EmptyForestException e){
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+    }
+
+    /**
+     * Starts the simulation of the session, see {@link SimulationController#startSimulation}
+     */
+    @PostMapping("/{id}/start")
+    public ResponseEntity<String> startSimulation(@PathVariable String id,
+                                                @RequestBody SimulationStartRequest startDto){
+        try{
+            sessionManager.startSimulation(id, startDto.getMaxGeneration(), startDto.getSeed(),
+                                            startDto.getGenerationsPerSecond());
+            return ResponseEntity.ok("Simulation started successfully");
+
+        } catch(SessionNotFoundException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch(IllegalStateException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.CONFLICT);
+        } catch(IllegalArgumentException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Stops the simulation of the session, see {@link SimulationController#stopSimulation}
+     */
+    @PostMapping("/{id}/stop")
+    public ResponseEntity<String> stopSimulation(@PathVariable String id){
+        try{
+            sessionManager.getService(id).stopSimulation();
+            return ResponseEntity.ok("Simulation stopped successfully");
+
+        } catch(SessionNotFoundException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        }
+    }
+
+    /**
+     * Start fire at a cell of the session, see {@link SimulationController#igniteCell}
+     */
+    @PostMapping("/{id}/forest/ignite")
+    public ResponseEntity<String> igniteCell(@PathVariable String id,
+                                            @RequestBody CellCoordinatesRequest cellCoordinates){
+        try{
+            sessionManager.getService(id).igniteCell(cellCoordinates);
+            return ResponseEntity.ok("Cell burned succesfully.");
+
+        } catch(SessionNotFoundException e){
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND);
+        } catch(IllegalStateException e){
+            return new ResponseEntity<>("The forest must be initialized.", HttpStatus.CONFLICT);
+        } catch(EmptyForestException e){
+            return new ResponseEntity<>("The forest is empty.", HttpStatus.CONFLICT);
+        } catch(IndexOutOfBoundsException e){
+            return new ResponseEntity<>("The coordinates doesn't exist.", HttpStatus.BAD_REQUEST);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.pauloandre7.forest_fire_simulation.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author pauloandre7
+ * 
+ * Statistics of a simulation calculated without the scheduler, returned when the batch run ends.
+ */
+@Getter
+@RequiredArgsConstructor
+public class BatchRunResultDTO {
+
+    private final int generations;
+    // Cells reached by the fire, burning or ash at the end of the run.
+    private final long burnedCells;
+    private final long wallTimeMillis;
+    // Grid cells advanced per second (generations * cells of the grid / wall time).
+    private final double cellsPerSecond;
+    // true when the run ended because there was no burning cell left.
+    private final boolean extinguished;
+    // true when the run was stopped by /simulation/stop before the end.
+    private final boolean cancelled;
+}
@@ -0,0 +1,22 @@
+package com.pauloandre7.forest_fire_simulation.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author pauloandre7
+ * 
+ * Request of an ensemble of replicas. Only one of the forests must be sent, with the same
+ * fields of the custom and random forest requests.
+ */
+@Getter
+@RequiredArgsConstructor
+public class EnsembleRequest {
+    private final CustomForestRequest customForest;
+    private final RandomForestRequest randomForest;
+    private final int replicas;
+    // optional, the same seed gives the same burn probabilities.
+    private final Long seed;
+    // 0 runs each replica until the fire dies out.
+    private final int maxGeneration;
+}
@@ -0,0 +1,24 @@
+package com.pauloandre7.forest_fire_simulation.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author pauloandre7
+ * 
+ * Result of an ensemble: the fraction of the replicas in which each cell burned.
+ */
+@Getter
+@RequiredArgsConstructor
+public class EnsembleResultDTO {
+
+    private final int height;
+    private final int width;
+    private final int replicas;
+    // generations calculated by all the replicas together.
+    private final long replicaGenerations;
+    private final long wallTimeMillis;
+    private final double replicaGenerationsPerSecond;
+    // [row][col], between 0 and 1.
+    private final float[][] burnProbability;
+}
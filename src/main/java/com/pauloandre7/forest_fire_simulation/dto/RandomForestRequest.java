@@ -9,4 +9,6 @@ public class RandomForestRequest{
     private final int height;
     private final int width;
     private final int burningTime;
+    // Optional, the same seed generates the same forest and the same fire.
+    private final Long seed;
 }
\ No newline at end of file
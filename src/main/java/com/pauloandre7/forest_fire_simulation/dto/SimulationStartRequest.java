@@ -7,4 +7,8 @@ import lombok.Getter;
 @AllArgsConstructor
 public class SimulationStartRequest {
     private final int maxGeneration;
+    // Optional, restarts the ignition randomness from this seed.
+    private final Long seed;
+    // Optional, target rate of the scheduled generations. 0 is as fast as possible.
+    private final Double generationsPerSecond;
 }
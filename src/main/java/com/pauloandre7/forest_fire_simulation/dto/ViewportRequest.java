@@ -0,0 +1,23 @@
+package com.pauloandre7.forest_fire_simulation.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * @author pauloandre7
+ *
+ * Region of the forest asked by a view, bound from the query parameters {@code row}, {@code col},
+ * {@code height} and {@code width}. Without them, the view has the whole forest: row and col start
+ * at 0 and height and width go to the end of the forest.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class ViewportRequest {
+
+    private Integer row;
+    private Integer col;
+    private Integer height;
+    private Integer width;
+}
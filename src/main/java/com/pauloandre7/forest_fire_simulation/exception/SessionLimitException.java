@@ -0,0 +1,9 @@
+package com.pauloandre7.forest_fire_simulation.exception;
+
+public class SessionLimitException extends RuntimeException{
+
+    public SessionLimitException(String message){
+        super(message);
+    }
+
+}
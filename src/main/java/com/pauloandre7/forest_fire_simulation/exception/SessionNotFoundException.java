@@ -0,0 +1,9 @@
+package com.pauloandre7.forest_fire_simulation.exception;
+
+public class SessionNotFoundException extends RuntimeException{
+
+    public SessionNotFoundException(String message){
+        super(message);
+    }
+
+}
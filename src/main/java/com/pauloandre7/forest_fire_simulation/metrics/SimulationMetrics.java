@@ -0,0 +1,102 @@
+package com.pauloandre7.forest_fire_simulation.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.Getter;
+
+/**
+ * @author pauloandre7
+ *
+ * Meters of the generations of a simulation. The tag "simulation" is "default" for the simulation of
+ * /simulation and "sessions" for all the sessions together, one tag for each session would create
+ * too many series.
+ *
+ * The phases of a generation are:
+ * <ul>
+ * <li>copy - the buffer grid is synchronized and the candidates of the frontier are collected.</li>
+ * <li>compute - the tasks write the next generation at the buffer.</li>
+ * <li>publish - the stream of the changes to the viewers, only the default simulation has it.</li>
+ * </ul>
+ * The meters are created once, so recording them at each generation doesn't allocate.
+ */
+@Getter
+public class SimulationMetrics {
+
+    private final Timer copyTimer;
+    private final Timer computeTimer;
+    private final Timer publishTimer;
+    private final Timer tickTimer;
+    private final Timer jsonDisplayTimer;
+    private final Timer packedDisplayTimer;
+    private final Timer lodDisplayTimer;
+    private final Timer regionDisplayTimer;
+    private final Timer fireBoundsTimer;
+
+    // Prometheus gives the cells/s with rate(simulation_processed_cells_total[1m]).
+    private final Counter cellsProcessed;
+    private final Counter generationErrors;
+    private final Counter generationOverruns;
+    private final Counter skippedPublications;
+
+    public SimulationMetrics(MeterRegistry registry, String simulation){
+        this.copyTimer = phaseTimer(registry, simulation, "copy");
+        this.computeTimer = phaseTimer(registry, simulation, "compute");
+        this.publishTimer = phaseTimer(registry, simulation, "publish");
+        this.tickTimer = Timer.builder("simulation.tick")
+                            .description("Duration of a tick of the scheduler")
+                            .tag("simulation", simulation)
+                            .register(registry);
+        this.jsonDisplayTimer = displayTimer(registry, simulation, "json");
+        this.packedDisplayTimer = displayTimer(registry, simulation, "packed");
+        this.lodDisplayTimer = displayTimer(registry, simulation, "lod");
+        this.regionDisplayTimer = displayTimer(registry, simulation, "region");
+        this.fireBoundsTimer = displayTimer(registry, simulation, "fire-bounds");
+
+        this.cellsProcessed = Counter.builder("simulation.processed")
+                                .description("Cells evaluated by the generations")
+                                .baseUnit("cells")
+                                .tag("simulation", simulation)
+                                .register(registry);
+        this.generationErrors = Counter.builder("simulation.generation.errors")
+                                .description("Generations that failed and were not swapped")
+                                .tag("simulation", simulation)
+                                .register(registry);
+        this.generationOverruns = Counter.builder("simulation.generation.overruns")
+                                .description("Generations longer than the period of their target rate")
+                                .tag("simulation", simulation)
+                                .register(registry);
+        this.skippedPublications = Counter.builder("simulation.publish.skipped")
+                                .description("Generations not streamed because the viewers were still receiving")
+                                .tag("simulation", simulation)
+                                .register(registry);
+    }
+
+    // Meters that are not exported, for the services created outside of Spring (tests and benchmarks).
+    public static SimulationMetrics noop(){
+        return new SimulationMetrics(new CompositeMeterRegistry(), "noop");
+    }
+
+    public void recordTick(long nanos){
+        tickTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer phaseTimer(MeterRegistry registry, String simulation, String phase){
+        return Timer.builder("simulation.generation.phase")
+                    .description("Duration of each phase of a generation")
+                    .tag("simulation", simulation)
+                    .tag("phase", phase)
+                    .register(registry);
+    }
+
+    private static Timer displayTimer(MeterRegistry registry, String simulation, String format){
+        return Timer.builder("simulation.display")
+                    .description("Time to build the forest for display, JSON, packed, level of detail, region or fire bounds")
+                    .tag("simulation", simulation)
+                    .tag("format", format)
+                    .register(registry);
+    }
+}
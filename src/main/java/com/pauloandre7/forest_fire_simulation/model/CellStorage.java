@@ -0,0 +1,122 @@
+package com.pauloandre7.forest_fire_simulation.model;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * @author pauloandre7
+ *
+ * Memory of the columns of a ForestGrid: the state and the burning timer of each cell, which change at
+ * every generation, and the terrain (moisture, relief and the mask of neighbors with lower relief), which
+ * never changes and is shared by the buffers and the replicas of the grid.
+ *
+ * HeapCellStorage keeps the columns in Java arrays. OffHeapCellStorage keeps them in native memory with the
+ * Foreign Memory API, outside of the heap and of the work of the garbage collector, and is released as soon
+ * as the forest is closed. The indexes are long, so a column is not limited to the size of an array.
+ */
+public interface CellStorage {
+
+    String OFF_HEAP_STORAGE_CLASS = "com.pauloandre7.forest_fire_simulation.model.OffHeapCellStorage";
+
+    long size();
+
+    int getState(long index);
+
+    void setState(long index, int state);
+
+    int getBurningTime(long index);
+
+    void setBurningTime(long index, int burningTime);
+
+    float getMoisture(long index);
+
+    float getRelief(long index);
+
+    void setTerrain(long index, float moisture, float relief);
+
+    int getReliefMask(long index);
+
+    void setReliefMask(long index, int mask);
+
+    // Copies the states and timers of a range of cells from a storage of the same size.
+    void copyStates(CellStorage source, long startIndex, long length);
+
+    // A storage with its own states and timers (a copy of these) and the same terrain.
+    CellStorage createBuffer();
+
+    /**
+     * Writes the states, timers, moisture and relief columns one after the other at the position
+     * of the file, little-endian (see ForestCheckpoint).
+     */
+    void writeTo(FileChannel channel, long position) throws IOException;
+
+    // The state column as an array, for the vector kernel. null when the states are not in the heap.
+    byte[] getStateArray();
+
+    boolean isOffHeap();
+
+    /**
+     * Releases the memory of the storage. The terrain is released when the last storage that shares it
+     * (the one that created it and its buffers) is closed. Nothing happens for the heap storage.
+     */
+    void close();
+
+    /**
+     * The Foreign Memory API is a preview of Java 21, the off-heap storage can only be loaded when the JVM
+     * is started with --enable-preview.
+     */
+    static boolean isOffHeapAvailable(){
+        return OffHeapSupport.FACTORY != null;
+    }
+
+    /**
+     * Allocates the columns of the cells, off the heap when it was requested and it's available.
+     */
+    static CellStorage allocate(long cells, boolean offHeap){
+        if(offHeap && isOffHeapAvailable()) return OffHeapSupport.FACTORY.allocate(cells);
+        return new HeapCellStorage(heapCells(cells));
+    }
+
+    /**
+     * Maps the columns written by writeTo() from the file: the terrain is not read into the memory, its
+     * pages are loaded when the cells are used. The generations never change the file.
+     * Without the off-heap storage, the columns are read into the heap.
+     */
+    static CellStorage map(FileChannel channel, long position, long cells, boolean offHeap) throws IOException {
+        if(offHeap && isOffHeapAvailable()) return OffHeapSupport.FACTORY.map(channel, position, cells);
+        return HeapCellStorage.read(channel, position, heapCells(cells));
+    }
+
+    // The arrays of the heap are indexed by int, a bigger grid can only be kept off the heap.
+    private static int heapCells(long cells){
+        if(cells > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("A grid of more than " + Integer.MAX_VALUE
+                                                + " cells must be off the heap, the JVM needs --enable-preview.");
+        }
+        return (int) cells;
+    }
+
+    // Implemented by OffHeapCellStorage, so this interface doesn't link the classes of the preview API.
+    interface Factory {
+        CellStorage allocate(long cells);
+
+        CellStorage map(FileChannel channel, long position, long cells) throws IOException;
+    }
+
+    // Loaded once, by name. A JVM without --enable-preview refuses the class and the heap is used.
+    final class OffHeapSupport {
+        private static final Factory FACTORY = load();
+
+        private OffHeapSupport(){
+        }
+
+        private static Factory load(){
+            try{
+                return (Factory) Class.forName(OFF_HEAP_STORAGE_CLASS + "$StorageFactory")
+                                    .getDeclaredConstructor().newInstance();
+            } catch(ReflectiveOperationException | LinkageError e){
+                return null;
+            }
+        }
+    }
+}
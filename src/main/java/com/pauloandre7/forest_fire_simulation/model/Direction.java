@@ -1,11 +1,23 @@
 package com.pauloandre7.forest_fire_simulation.model;
 
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
 /**
  * @author pauloandre7
  * 
  * This enum must have this sequence to work well with the task in the wind direction task.
  * NORTH, SOUTH, WEST, EAST, NW, NE, SW, SE;
+ * 
+ * When the offsets are added to the current row and col, we get the coordinate of the neighbor
+ * cell at this direction. The ordinal is also the bit of the neighbor at the neighbor masks.
  */
+@Getter
+@RequiredArgsConstructor
 public enum Direction{
-    NORTH, SOUTH, WEST, EAST, NW, NE, SW, SE;
-}
\ No newline at end of file
+    NORTH(-1, 0), SOUTH(1, 0), WEST(0, -1), EAST(0, 1), 
+    NW(-1, -1), NE(-1, 1), SW(1, -1), SE(1, 1);
+
+    private final int rowOffset;
+    private final int colOffset;
+}
@@ -1,13 +1,11 @@
 package com.pauloandre7.forest_fire_simulation.model;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
@@ -15,23 +13,49 @@ import lombok.ToString;
 /**
  * @author pauloandre7
  * 
- * This class represents the grid wich contains all the cells.
+ * This class represents the forest, wich contains the grid with all the cells and the
+ * parameters of the simulation (wind, burning time and base probability).
  */
 @Getter
 @ToString
 @EqualsAndHashCode
-public class Forest {
+public class Forest implements AutoCloseable {
+
+    // Memory of each cell: state and timer of both grids, the shared moisture and relief,
+    // and the relief mask of the IgnitionCoefficients.
+    public static final int BYTES_PER_CELL = (1 + 2) * 2 + 4 + 4 + 1;
     
     private final int height;
     private final int width;
 
-    @Getter(AccessLevel.NONE) // will not creat the getter for this one.
-    private final List<List<Cell>> cells;
+    // The cells are stored in primitive arrays, see ForestGrid.
+    // grid is the current generation and bufferGrid receives the next one, then they are swapped.
+    // volatile because the swap is done by the scheduler thread and read by the request threads.
+    private volatile ForestGrid grid;
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private volatile ForestGrid bufferGrid;
     private final Direction windDirection;
     private final double windSpeed;
     private final int burningTime;
     private final double baseBurningProbability;
 
+    // Seed of the ignition randomness (see CellRandom). stepCount is the amount of generations calculated
+    // since the seed was defined, so the value of a cell depends only on (seed, stepCount, index).
+    // They are read by the tasks at each cell, so they are not volatile: the pool already publishes
+    // the values written before the tasks are submitted.
+    private long randomSeed;
+    private long stepCount;
+    // Index of the first cell of this grid in the whole forest. It's 0, except for the bands of a
+    // partitioned simulation (see BandWorker), where the random value of a cell must use its index
+    // in the whole forest to match the single process.
+    private long firstCellIndex;
+
+    // Calculated once with the terrain and the wind, they don't change during the simulation.
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final IgnitionCoefficients coefficients;
+
     @JsonCreator
     public Forest(@JsonProperty("rows") int height,
                   @JsonProperty("cols") int width,
@@ -42,44 +66,98 @@ public class Forest {
                   @JsonProperty("baseBurningProbability") double baseBurningProbability
 
     ){
-        this.height = height;
-        this.width = width;
-        this.cells = cells;
+        this(ForestGrid.fromCells(height, width, cells), windDirection, windSpeed, 
+            burningTime, baseBurningProbability);
+    }
+
+    public Forest(ForestGrid grid,
+                  Direction windDirection,
+                  double windSpeed,
+                  int burningTime,
+                  double baseBurningProbability
+    ){
+        this.height = grid.getHeight();
+        this.width = grid.getWidth();
+        this.grid = grid;
+        // allocated once, every generation will reuse the two grids.
+        this.bufferGrid = grid.createBuffer();
         this.windDirection = windDirection;
         this.windSpeed = windSpeed;
         this.burningTime = burningTime;
         this.baseBurningProbability = baseBurningProbability;
+        this.coefficients = new IgnitionCoefficients(grid, windDirection, windSpeed, baseBurningProbability);
+        // without a seed from the request, each forest has a different one.
+        this.randomSeed = ThreadLocalRandom.current().nextLong();
+    }
+
+    // Used by replicate(), the replica shares the terrain and the coefficients of the original forest.
+    private Forest(Forest original){
+        this.height = original.height;
+        this.width = original.width;
+        this.grid = original.grid.createBuffer();
+        this.bufferGrid = this.grid.createBuffer();
+        this.windDirection = original.windDirection;
+        this.windSpeed = original.windSpeed;
+        this.burningTime = original.burningTime;
+        this.baseBurningProbability = original.baseBurningProbability;
+        this.coefficients = original.coefficients;
+        this.randomSeed = original.randomSeed;
+        this.firstCellIndex = original.firstCellIndex;
+    }
+
+    /**
+     * Creates a copy of the forest with its own state grids. Moisture, relief and the ignition
+     * coefficients are read-only, so all the replicas share them with this forest.
+     */
+    public Forest replicate(){
+        return new Forest(this);
+    }
+
+    // Defines the seed of the next generations, the same seed and grid will give the same results.
+    public void reseed(long randomSeed){
+        this.randomSeed = randomSeed;
+        this.stepCount = 0;
+    }
+
+    // Used by the restore of a checkpoint, the next generations continue the same random stream.
+    public void restoreRandomState(long randomSeed, long stepCount){
+        this.randomSeed = randomSeed;
+        this.stepCount = stepCount;
+    }
+
+    // The grid of this forest is a band of a bigger one, starting at the cell of this index.
+    public void placeAt(long firstCellIndex){
+        this.firstCellIndex = firstCellIndex;
+    }
+
+    /**
+     * Turns the buffer into the current generation. It must be called only after all the cells
+     * of the buffer were written, the old grid will be overwritten by the next generation.
+     */
+    public void swapBuffers(){
+        ForestGrid nextGrid = this.bufferGrid;
+        this.bufferGrid = this.grid;
+        this.grid = nextGrid;
+        this.stepCount++;
+    }
+
+    // Memory needed by a forest with this amount of cells, used to limit the sessions before creating it.
+    public static long estimateMemoryBytes(long cells){
+        return cells * BYTES_PER_CELL;
     }
 
-    public Forest(Forest originalForest){
-        
-        this.height = originalForest.height;
-        this.width = originalForest.width;
-
-        this.cells = new ArrayList<>();
-
-        // for loop to make a copy of all cell in the grid
-        // This 'for' will get each row from the grid cells and use it in the inner 'for' loop
-        for(List<Cell> originalRow : originalForest.cells){
-            List<Cell> newRow = new ArrayList<>();
-            
-            for(Cell originalCell : originalRow){
-                // Uses deep copy from Cell class to create new rows
-                newRow.add(new Cell(originalCell));
-            }
-
-            this.cells.add(newRow);
-        }
-
-        this.windDirection = originalForest.windDirection;
-        this.windSpeed = originalForest.windSpeed;
-        this.burningTime = originalForest.burningTime;
-        this.baseBurningProbability = originalForest.baseBurningProbability;
+    public boolean isEmpty(){
+        return grid.size() == 0;
     }
 
-    public List<List<Cell>> getCells(){
-        // This method return the list, but she cannot be modified
-        // This class cannot let the matriz be modified by a set() method.
-        return Collections.unmodifiableList(cells);
+    /**
+     * Releases the memory of the grids when they are off the heap (see ForestGrid.close()). Called when
+     * the forest is replaced, the forest can't be used after that. The replicas don't own the terrain,
+     * it's released by the original forest.
+     */
+    @Override
+    public void close(){
+        bufferGrid.close();
+        grid.close();
     }
 }
@@ -0,0 +1,357 @@
+package com.pauloandre7.forest_fire_simulation.model;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @author pauloandre7
+ *
+ * Struct-of-arrays storage for the cellular automaton grid. Instead of one Cell object per
+ * position, each attribute lives in its own column indexed by the long {@code row * width + col}:
+ * a byte for the CellState ordinal, a short for the burning timer and floats for moisture and relief.
+ * That is 11 bytes per cell, against the ~50 bytes of a Cell object plus its reference in a List.
+ *
+ * The columns are kept by a CellStorage, in arrays of the heap or, for the big forests, in native
+ * memory that must be released with close().
+ */
+@Getter
+@ToString(onlyExplicitlyIncluded = true)
+public class ForestGrid implements AutoCloseable {
+
+    // cached because values() creates a new array at each call
+    private static final CellState[] STATES = CellState.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private static final int VEGETATION = CellState.VEGETATION.ordinal();
+    private static final int BURNING = CellState.BURNING.ordinal();
+    private static final int ASH = CellState.ASH.ordinal();
+
+    @ToString.Include
+    private final int height;
+    @ToString.Include
+    private final int width;
+
+    @Getter(AccessLevel.NONE)
+    private final CellStorage storage;
+
+    // Difference between the index of a cell and the index of its neighbor, in the order of Direction.
+    @Getter(AccessLevel.NONE)
+    private final int[] neighborDeltas;
+
+    public ForestGrid(int height, int width){
+        this(height, width, false);
+    }
+
+    /**
+     * With offHeap, the columns are allocated out of the heap when the JVM allows it
+     * (see CellStorage.isOffHeapAvailable()), otherwise in the heap.
+     */
+    public ForestGrid(int height, int width, boolean offHeap){
+        this(height, width, CellStorage.allocate(checkedSize(height, width), offHeap));
+    }
+
+    // Copy constructor, it duplicates all the columns so both grids can be changed independently.
+    public ForestGrid(ForestGrid originalGrid){
+        this(originalGrid.height, originalGrid.width, originalGrid.isOffHeap());
+
+        for(long index = 0; index < size(); index++){
+            storage.setTerrain(index, originalGrid.storage.getMoisture(index), originalGrid.storage.getRelief(index));
+            storage.setReliefMask(index, originalGrid.storage.getReliefMask(index));
+        }
+        storage.copyStates(originalGrid.storage, 0, size());
+    }
+
+    // Used by createBuffer() and by the tests, the columns are received instead of allocated.
+    ForestGrid(int height, int width, CellStorage storage){
+        this.height = height;
+        this.width = width;
+        this.storage = storage;
+        this.neighborDeltas = createNeighborDeltas(width);
+    }
+
+    // The cells are indexed by long, a grid can have more than Integer.MAX_VALUE cells when it's off the heap.
+    private static long checkedSize(int height, int width){
+        if(height < 0 || width < 0){
+            throw new IllegalArgumentException("The grid dimensions cannot be negative.");
+        }
+        return (long) height * width;
+    }
+
+    private static int[] createNeighborDeltas(int width){
+        int[] deltas = new int[DIRECTIONS.length];
+        for(Direction direction : DIRECTIONS){
+            deltas[direction.ordinal()] = direction.getRowOffset() * width + direction.getColOffset();
+        }
+        return deltas;
+    }
+
+    /**
+     * Creates a second grid to be used as a buffer of this one. The states are copied, but moisture and
+     * relief never change during the simulation, so both grids share the same terrain columns.
+     */
+    public ForestGrid createBuffer(){
+        return new ForestGrid(height, width, storage.createBuffer());
+    }
+
+    /**
+     * Builds a grid from the cell matrix received by the JSON contract. The position of each
+     * cell in the matrix defines its index, the row and col attributes are not used here.
+     */
+    public static ForestGrid fromCells(int height, int width, List<List<Cell>> cells){
+        if(cells.size() != height){
+            throw new IllegalArgumentException("The amount of rows doesn't match the forest height.");
+        }
+
+        ForestGrid grid = new ForestGrid(height, width);
+
+        for(int row = 0; row < height; row++){
+            List<Cell> cellRow = cells.get(row);
+
+            if(cellRow.size() != width){
+                throw new IllegalArgumentException("The amount of columns doesn't match the forest width.");
+            }
+
+            for(int col = 0; col < width; col++){
+                Cell cell = cellRow.get(col);
+                long index = grid.index(row, col);
+
+                grid.setState(index, cell.getState());
+                grid.setBurningTime(index, cell.getBurningTime());
+                grid.setTerrain(index, cell.getMoisture(), cell.getRelief());
+            }
+        }
+
+        return grid;
+    }
+
+    // Bytes written by writeTo(): state, timer, moisture and relief of each cell.
+    public static long serializedBytes(int height, int width){
+        return (long) height * width * (1 + 2 + 4 + 4);
+    }
+
+    /**
+     * Writes the columns one after the other (states, timers, moisture and relief), little-endian,
+     * at the position of the file. Used by the checkpoints.
+     */
+    public void writeTo(FileChannel channel, long position) throws IOException {
+        storage.writeTo(channel, position);
+    }
+
+    /**
+     * Reads a grid written by writeTo(). With offHeap, the columns are mapped from the file instead
+     * of read, see CellStorage.map().
+     */
+    public static ForestGrid readFrom(FileChannel channel, long position, int height, int width,
+                                    boolean offHeap) throws IOException {
+        return new ForestGrid(height, width, CellStorage.map(channel, position, checkedSize(height, width), offHeap));
+    }
+
+    public boolean isOffHeap(){
+        return storage.isOffHeap();
+    }
+
+    /**
+     * Releases the native memory of an off-heap grid, the grid can't be used after that.
+     * The terrain is released with the last grid that shares it, the one that created it or a buffer.
+     */
+    @Override
+    public void close(){
+        storage.close();
+    }
+
+    public long size(){
+        return storage.size();
+    }
+
+    public long index(int row, int col){
+        return (long) row * width + col;
+    }
+
+    public int rowOf(long index){
+        return (int) (index / width);
+    }
+
+    public int colOf(long index){
+        return (int) (index % width);
+    }
+
+    public boolean isInside(int row, int col){
+        return row >= 0 && row < height && col >= 0 && col < width;
+    }
+
+    /**
+     * Returns a mask with the bit {@code direction.ordinal()} set for each burning neighbor of the cell.
+     * The cells away from the borders don't need the bounds check.
+     */
+    public int burningNeighborMask(int row, int col){
+        long index = index(row, col);
+        int mask = 0;
+
+        if(row > 0 && row < height - 1 && col > 0 && col < width - 1){
+            for(int direction = 0; direction < neighborDeltas.length; direction++){
+                if(storage.getState(index + neighborDeltas[direction]) == BURNING) mask |= 1 << direction;
+            }
+        } else {
+            for(int direction = 0; direction < neighborDeltas.length; direction++){
+                int neighborRow = row + DIRECTIONS[direction].getRowOffset();
+                int neighborCol = col + DIRECTIONS[direction].getColOffset();
+
+                if(isInside(neighborRow, neighborCol)
+                    && storage.getState(index + neighborDeltas[direction]) == BURNING){
+                    mask |= 1 << direction;
+                }
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * The array of state ordinals, so the vector kernel can load whole row segments at once.
+     * It must only be read, the states are changed through the methods of the grid.
+     * null when the states are off the heap.
+     */
+    public byte[] getStateArray(){
+        return storage.getStateArray();
+    }
+
+    // Difference between the index of a cell and the index of its neighbor at the direction.
+    public int getNeighborDelta(Direction direction){
+        return neighborDeltas[direction.ordinal()];
+    }
+
+    // All the deltas in the order of Direction, for the kernels. The array is the one of the grid, read only.
+    public int[] getNeighborDeltas(){
+        return neighborDeltas;
+    }
+
+    public CellState getState(long index){
+        return STATES[storage.getState(index)];
+    }
+
+    public CellState getState(int row, int col){
+        return getState(index(row, col));
+    }
+
+    // The ordinal of the state, for the encoders that don't need the enum.
+    public int getStateOrdinal(long index){
+        return storage.getState(index);
+    }
+
+    public void setState(long index, CellState state){
+        storage.setState(index, state.ordinal());
+    }
+
+    // Faster checks for the hot loop, they compare the ordinal without the enum lookup.
+    public boolean isBurning(long index){
+        return storage.getState(index) == BURNING;
+    }
+
+    public boolean isVegetation(long index){
+        return storage.getState(index) == VEGETATION;
+    }
+
+    // Copies the state and the timer of one cell from another grid with the same dimensions.
+    public void copyCell(ForestGrid source, long index){
+        storage.setState(index, source.storage.getState(index));
+        storage.setBurningTime(index, source.storage.getBurningTime(index));
+    }
+
+    // Copies the state and the timer of a range of cells, like a row segment of the vector kernel.
+    public void copyCells(ForestGrid source, long startIndex, int length){
+        storage.copyStates(source.storage, startIndex, length);
+    }
+
+    // Copies the state and the timer of all the cells, without allocating new columns.
+    public void copyStatesFrom(ForestGrid source){
+        storage.copyStates(source.storage, 0, storage.size());
+    }
+
+    public int getBurningTime(long index){
+        return storage.getBurningTime(index);
+    }
+
+    public void setBurningTime(long index, int burningTime){
+        if(burningTime < 0 || burningTime > Short.MAX_VALUE){
+            throw new IllegalArgumentException("The burning time must be between 0 and " + Short.MAX_VALUE + ".");
+        }
+        storage.setBurningTime(index, burningTime);
+    }
+
+    public double getMoisture(long index){
+        return storage.getMoisture(index);
+    }
+
+    public double getRelief(long index){
+        return storage.getRelief(index);
+    }
+
+    public void setTerrain(long index, double moisture, double relief){
+        storage.setTerrain(index, (float) moisture, (float) relief);
+    }
+
+    // Mask of the neighbors with lower relief, calculated by the IgnitionCoefficients and kept with the terrain.
+    public int getLowerReliefMask(long index){
+        return storage.getReliefMask(index);
+    }
+
+    void setLowerReliefMask(long index, int mask){
+        storage.setReliefMask(index, mask);
+    }
+
+    // Same rules of Cell.startBurning(), only vegetation can start to burn.
+    public void startBurning(long index, int initialBurningTime){
+        if(storage.getState(index) == VEGETATION){
+            setBurningTime(index, initialBurningTime);
+            storage.setState(index, BURNING);
+        }
+    }
+
+    // Same rules of Cell.updateBurningState(), decrease the timer or turn into ash.
+    public void updateBurningState(long index){
+        if(storage.getState(index) == BURNING){
+            int burningTime = storage.getBurningTime(index);
+            if(burningTime > 0){
+                storage.setBurningTime(index, burningTime - 1);
+            } else {
+                storage.setState(index, ASH);
+                storage.setBurningTime(index, 0);
+            }
+        }
+    }
+
+    // Two grids are equal when they have the same dimensions and cells, wherever the columns are.
+    @Override
+    public boolean equals(Object other){
+        if(this == other) return true;
+        if(!(other instanceof ForestGrid grid) || grid.height != height || grid.width != width) return false;
+
+        for(long index = 0; index < size(); index++){
+            if(storage.getState(index) != grid.storage.getState(index)
+                || storage.getBurningTime(index) != grid.storage.getBurningTime(index)
+                || Float.compare(storage.getMoisture(index), grid.storage.getMoisture(index)) != 0
+                || Float.compare(storage.getRelief(index), grid.storage.getRelief(index)) != 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode(){
+        int hash = 31 * height + width;
+        for(long index = 0; index < size(); index++){
+            hash = 31 * hash + storage.getState(index);
+            hash = 31 * hash + storage.getBurningTime(index);
+            hash = 31 * hash + Float.floatToIntBits(storage.getMoisture(index));
+            hash = 31 * hash + Float.floatToIntBits(storage.getRelief(index));
+        }
+        return hash;
+    }
+
+}
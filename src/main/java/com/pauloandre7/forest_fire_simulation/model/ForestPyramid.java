@@ -0,0 +1,155 @@
+package com.pauloandre7.forest_fire_simulation.model;
+
+/**
+ * @author pauloandre7
+ *
+ * Counts of the states of the grid by square blocks, in levels of increasing block size: 8x8 cells at the
+ * first level, then 16x16, 32x32 and so on, until one block covers the whole grid. The views of a big
+ * forest at the resolution of a screen (see SimulationService.getLevelOfDetail()) read one block of a level
+ * instead of all its cells, so their cost depends on the size of the view and not of the forest.
+ *
+ * The pyramid is built once from the grid and then kept up to date with the cells that changed: each change
+ * moves one count in the block of the cell at every level. The blocks at the right and bottom borders can
+ * be smaller than the others, they only count the cells inside the grid. The blocks of 2^16 x 2^16 cells and
+ * larger can have more than Integer.MAX_VALUE cells, so those levels (a few blocks each) count in long.
+ *
+ * Not thread-safe, the caller must not read the counts while they are updated.
+ */
+public class ForestPyramid {
+
+    // Side of the blocks of the first level is 1 << BASE_SHIFT.
+    public static final int BASE_SHIFT = 3;
+    public static final int STATES = CellState.values().length;
+    // First level with blocks of more than 2^31 cells.
+    private static final int WIDE_LEVEL = 16 - BASE_SHIFT;
+
+    private final int width;
+    private final int[] blockCols;
+    private final int[] blockRows;
+    // For each level, STATES counts for each block in row-major order. The levels from WIDE_LEVEL are at
+    // wideCounts, the others at counts.
+    private final int[][] counts;
+    private final long[][] wideCounts;
+
+    public ForestPyramid(ForestGrid grid){
+        this.width = grid.getWidth();
+
+        int levels = 1;
+        while(blocks(grid.getHeight(), levels - 1) > 1 || blocks(grid.getWidth(), levels - 1) > 1) levels++;
+
+        this.blockRows = new int[levels];
+        this.blockCols = new int[levels];
+        this.counts = new int[levels][];
+        this.wideCounts = new long[levels][];
+        for(int level = 0; level < levels; level++){
+            blockRows[level] = blocks(grid.getHeight(), level);
+            blockCols[level] = blocks(grid.getWidth(), level);
+            int length = blockRows[level] * blockCols[level] * STATES;
+            if(level < WIDE_LEVEL){
+                counts[level] = new int[length];
+            } else {
+                wideCounts[level] = new long[length];
+            }
+        }
+
+        // the first level is counted from the cells, each next one sums the 4 blocks below it.
+        for(long index = 0; index < grid.size(); index++){
+            counts[0][block(0, index) + grid.getStateOrdinal(index)]++;
+        }
+        for(int level = 1; level < levels; level++){
+            for(int row = 0; row < blockRows[level - 1]; row++){
+                for(int col = 0; col < blockCols[level - 1]; col++){
+                    int child = (row * blockCols[level - 1] + col) * STATES;
+                    int parent = ((row >> 1) * blockCols[level] + (col >> 1)) * STATES;
+                    for(int state = 0; state < STATES; state++){
+                        add(level, parent + state, count(level - 1, child + state));
+                    }
+                }
+            }
+        }
+    }
+
+    private long count(int level, int position){
+        return level < WIDE_LEVEL ? counts[level][position] : wideCounts[level][position];
+    }
+
+    private void add(int level, int position, long amount){
+        if(level < WIDE_LEVEL){
+            counts[level][position] += (int) amount;
+        } else {
+            wideCounts[level][position] += amount;
+        }
+    }
+
+    private static int blocks(int cells, int level){
+        int shift = BASE_SHIFT + level;
+        return (int) (((long) cells + (1L << shift) - 1) >> shift);
+    }
+
+    // Position of the counts of the block of the cell at the level.
+    private int block(int level, long index){
+        int shift = BASE_SHIFT + level;
+        int row = (int) (index / width);
+        int col = (int) (index % width);
+        return ((row >> shift) * blockCols[level] + (col >> shift)) * STATES;
+    }
+
+    /**
+     * Moves the cell from one state to the other at every level. It must be called once for each cell
+     * that changed, with the state that the pyramid has for it.
+     */
+    public void update(long index, int previousState, int state){
+        if(previousState == state) return;
+
+        for(int level = 0; level < counts.length; level++){
+            int block = block(level, index);
+            add(level, block + previousState, -1);
+            add(level, block + state, 1);
+        }
+    }
+
+    public int getLevels(){
+        return counts.length;
+    }
+
+    // Side of the blocks of the level, in cells.
+    public static int blockSize(int level){
+        return 1 << (BASE_SHIFT + level);
+    }
+
+    /**
+     * The level with blocks of this side (a power of two), -1 when the blocks are smaller than the
+     * first level and must be counted from the cells.
+     */
+    public int levelOf(int blockSize){
+        int level = Integer.numberOfTrailingZeros(blockSize) - BASE_SHIFT;
+        if(level >= counts.length){
+            throw new IllegalArgumentException("The blocks are larger than the grid.");
+        }
+        return Math.max(level, -1);
+    }
+
+    public int getBlockRows(int level){
+        return blockRows[level];
+    }
+
+    public int getBlockCols(int level){
+        return blockCols[level];
+    }
+
+    // Cells of the state in the block.
+    public long getCount(int level, int blockRow, int blockCol, int state){
+        return count(level, (blockRow * blockCols[level] + blockCol) * STATES + state);
+    }
+
+    /**
+     * Adds the counts of the states of a block to the target, from the position offset.
+     * The blocks are numbered from the top left corner of the grid.
+     */
+    public void addCounts(int level, int blockRow, int blockCol, long[] target, int offset){
+        int block = (blockRow * blockCols[level] + blockCol) * STATES;
+        for(int state = 0; state < STATES; state++){
+            target[offset + state] += count(level, block + state);
+        }
+    }
+}
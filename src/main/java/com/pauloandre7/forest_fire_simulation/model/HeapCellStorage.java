@@ -0,0 +1,201 @@
+package com.pauloandre7.forest_fire_simulation.model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * @author pauloandre7
+ *
+ * Columns of the grid in primitive arrays: a byte for the state, a short for the timer, floats for
+ * moisture and relief and a byte for the relief mask. The arrays are indexed by int, so this storage
+ * is limited to Integer.MAX_VALUE cells and to the size of the heap.
+ */
+class HeapCellStorage implements CellStorage {
+
+    // Size of the buffer used to copy the columns to and from the files.
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    private final byte[] states;
+    private final short[] burningTimes;
+    private final float[] moisture;
+    private final float[] relief;
+    private final byte[] reliefMasks;
+
+    HeapCellStorage(int cells){
+        this(new byte[cells], new short[cells], new float[cells], new float[cells], new byte[cells]);
+    }
+
+    private HeapCellStorage(byte[] states, short[] burningTimes, float[] moisture, float[] relief, byte[] reliefMasks){
+        this.states = states;
+        this.burningTimes = burningTimes;
+        this.moisture = moisture;
+        this.relief = relief;
+        this.reliefMasks = reliefMasks;
+    }
+
+    // Reads the columns written by writeTo(), in chunks, so the file is not limited to one mapping.
+    static HeapCellStorage read(FileChannel channel, long position, int cells) throws IOException {
+        HeapCellStorage storage = new HeapCellStorage(cells);
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        long offset = position;
+        for(int index = 0; index < cells; ){
+            int length = Math.min(cells - index, CHUNK_BYTES);
+            offset = readChunk(channel, chunk, offset, length);
+            chunk.get(storage.states, index, length);
+            index += length;
+        }
+        for(int index = 0; index < cells; ){
+            int length = Math.min(cells - index, CHUNK_BYTES / Short.BYTES);
+            offset = readChunk(channel, chunk, offset, length * Short.BYTES);
+            chunk.asShortBuffer().get(storage.burningTimes, index, length);
+            index += length;
+        }
+        for(float[] column : new float[][]{ storage.moisture, storage.relief }){
+            for(int index = 0; index < cells; ){
+                int length = Math.min(cells - index, CHUNK_BYTES / Float.BYTES);
+                offset = readChunk(channel, chunk, offset, length * Float.BYTES);
+                chunk.asFloatBuffer().get(column, index, length);
+                index += length;
+            }
+        }
+        return storage;
+    }
+
+    private static long readChunk(FileChannel channel, ByteBuffer chunk, long offset, int bytes) throws IOException {
+        chunk.clear().limit(bytes);
+        while(chunk.hasRemaining()){
+            int read = channel.read(chunk, offset + chunk.position());
+            if(read < 0) throw new EOFException("The file ended before the columns of the grid.");
+        }
+        chunk.flip();
+        return offset + bytes;
+    }
+
+    @Override
+    public long size(){
+        return states.length;
+    }
+
+    @Override
+    public int getState(long index){
+        return states[(int) index];
+    }
+
+    @Override
+    public void setState(long index, int state){
+        states[(int) index] = (byte) state;
+    }
+
+    @Override
+    public int getBurningTime(long index){
+        return burningTimes[(int) index];
+    }
+
+    @Override
+    public void setBurningTime(long index, int burningTime){
+        burningTimes[(int) index] = (short) burningTime;
+    }
+
+    @Override
+    public float getMoisture(long index){
+        return moisture[(int) index];
+    }
+
+    @Override
+    public float getRelief(long index){
+        return relief[(int) index];
+    }
+
+    @Override
+    public void setTerrain(long index, float moisture, float relief){
+        this.moisture[(int) index] = moisture;
+        this.relief[(int) index] = relief;
+    }
+
+    @Override
+    public int getReliefMask(long index){
+        return reliefMasks[(int) index] & 0xFF;
+    }
+
+    @Override
+    public void setReliefMask(long index, int mask){
+        reliefMasks[(int) index] = (byte) mask;
+    }
+
+    @Override
+    public void copyStates(CellStorage source, long startIndex, long length){
+        if(source instanceof HeapCellStorage heapSource){
+            System.arraycopy(heapSource.states, (int) startIndex, states, (int) startIndex, (int) length);
+            System.arraycopy(heapSource.burningTimes, (int) startIndex, burningTimes, (int) startIndex, (int) length);
+            return;
+        }
+        for(long index = startIndex; index < startIndex + length; index++){
+            setState(index, source.getState(index));
+            setBurningTime(index, source.getBurningTime(index));
+        }
+    }
+
+    @Override
+    public CellStorage createBuffer(){
+        return new HeapCellStorage(states.clone(), burningTimes.clone(), moisture, relief, reliefMasks);
+    }
+
+    @Override
+    public void writeTo(FileChannel channel, long position) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        int cells = states.length;
+
+        long offset = position;
+        for(int index = 0; index < cells; ){
+            int length = Math.min(cells - index, CHUNK_BYTES);
+            chunk.clear();
+            chunk.put(states, index, length);
+            offset = writeChunk(channel, chunk, offset, length);
+            index += length;
+        }
+        for(int index = 0; index < cells; ){
+            int length = Math.min(cells - index, CHUNK_BYTES / Short.BYTES);
+            chunk.clear();
+            chunk.asShortBuffer().put(burningTimes, index, length);
+            offset = writeChunk(channel, chunk, offset, length * Short.BYTES);
+            index += length;
+        }
+        for(float[] column : new float[][]{ moisture, relief }){
+            for(int index = 0; index < cells; ){
+                int length = Math.min(cells - index, CHUNK_BYTES / Float.BYTES);
+                chunk.clear();
+                chunk.asFloatBuffer().put(column, index, length);
+                offset = writeChunk(channel, chunk, offset, length * Float.BYTES);
+                index += length;
+            }
+        }
+    }
+
+    // The views (asShortBuffer) don't move the position of the chunk, so the bytes are given here.
+    private static long writeChunk(FileChannel channel, ByteBuffer chunk, long offset, int bytes) throws IOException {
+        chunk.position(0).limit(bytes);
+        while(chunk.hasRemaining()){
+            channel.write(chunk, offset + chunk.position());
+        }
+        return offset + bytes;
+    }
+
+    @Override
+    public byte[] getStateArray(){
+        return states;
+    }
+
+    @Override
+    public boolean isOffHeap(){
+        return false;
+    }
+
+    @Override
+    public void close(){
+        // the arrays are released by the garbage collector.
+    }
+}
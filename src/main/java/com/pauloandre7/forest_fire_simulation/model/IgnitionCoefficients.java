@@ -0,0 +1,102 @@
+package com.pauloandre7.forest_fire_simulation.model;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * @author pauloandre7
+ *
+ * Coefficients of the ignition probability that don't change during the simulation. Relief, moisture,
+ * wind direction and wind speed are fixed after the forest is created, so they are calculated once here
+ * and the hot loop only combines them with the mask of burning neighbors.
+ *
+ * The formula is the same used before the precomputation:
+ * {@code burning * base * (1 - moisture) + wind + 5% for each burning neighbor with lower relief}.
+ *
+ * The masks of the neighbors with lower relief are kept with the terrain of the grid (in the heap or off
+ * it, like the rest of the grid), and the dryness is calculated from the moisture at each test: it's one
+ * subtraction, cheaper than reading 8 more bytes of each cell from the memory.
+ */
+@Getter
+public class IgnitionCoefficients {
+
+    private static final double BONUS_RELIEF = 0.05;    // 5% for each neighbor burning
+    private static final double WIND_BONUS_LIMITER = 300; // will stop the maximum wind speed at 33%
+
+    // Relief bonus for 0 to 8 neighbors. The values are summed one by one, like the formula did,
+    // so the results are exactly the same (0.05 * 3 is not equal to 0.05 + 0.05 + 0.05 in double).
+    private static final double[] RELIEF_BONUS = new double[Direction.values().length + 1];
+
+    static {
+        for(int neighbors = 1; neighbors < RELIEF_BONUS.length; neighbors++){
+            RELIEF_BONUS[neighbors] = RELIEF_BONUS[neighbors - 1] + BONUS_RELIEF;
+        }
+    }
+
+    // Grid with the terrain and, for each cell, the mask with the bit of a direction set when that
+    // neighbor has lower relief than the cell. The buffers and the replicas share this terrain.
+    @Getter(AccessLevel.NONE)
+    private final ForestGrid terrain;
+
+    // Bit of the neighbor in the wind direction, 0 when the forest has no wind direction.
+    private final int windMask;
+    private final double windProbability;
+    private final double baseBurningProbability;
+
+    public IgnitionCoefficients(ForestGrid grid, Direction windDirection, double windSpeed,
+                                double baseBurningProbability){
+        this.terrain = grid;
+        this.windMask = windDirection == null ? 0 : 1 << windDirection.ordinal();
+        // If the speed is 100, the limit of 300 will result in 0.33 (33%)
+        this.windProbability = windSpeed / WIND_BONUS_LIMITER;
+        this.baseBurningProbability = baseBurningProbability;
+
+        Direction[] directions = Direction.values();
+
+        for(int row = 0; row < grid.getHeight(); row++){
+            for(int col = 0; col < grid.getWidth(); col++){
+                long index = grid.index(row, col);
+                double relief = grid.getRelief(index);
+                int mask = 0;
+
+                for(Direction direction : directions){
+                    int neighborRow = row + direction.getRowOffset();
+                    int neighborCol = col + direction.getColOffset();
+
+                    if(grid.isInside(neighborRow, neighborCol)
+                        && grid.getRelief(grid.index(neighborRow, neighborCol)) < relief){
+                        mask |= 1 << direction.ordinal();
+                    }
+                }
+
+                grid.setLowerReliefMask(index, mask);
+            }
+        }
+    }
+
+    /**
+     * Ignition probability of a cell, given the mask of its burning neighbors
+     * (see {@link ForestGrid#burningNeighborMask(int, int)}).
+     */
+    public double ignitionProbability(long index, int burningMask){
+        if(burningMask == 0) return 0.0;
+
+        // BaseProb will increase with the number of burning cells around
+        double baseProb = Integer.bitCount(burningMask) * baseBurningProbability;
+        // Will decrease or maintain the base prob with the moisture level.
+        baseProb *= 1 - terrain.getMoisture(index);
+
+        // if the wind is coming from north and the north neighbor is burning, the wind prob will be considered.
+        double windProb = (burningMask & windMask) != 0 ? windProbability : 0.0;
+
+        // each burning cell with less relief will add 5% to reliefProb
+        double reliefProb = RELIEF_BONUS[Integer.bitCount(burningMask & terrain.getLowerReliefMask(index))];
+
+        double ignitionProbability = baseProb + windProb + reliefProb;
+
+        if(ignitionProbability > 1.0) ignitionProbability = 1.0;
+        if(ignitionProbability < 0.0) ignitionProbability = 0.0;
+
+        return ignitionProbability;
+    }
+}
@@ -0,0 +1,262 @@
+package com.pauloandre7.forest_fire_simulation.model;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * @author pauloandre7
+ *
+ * Columns of the grid in native memory, with the Foreign Memory API (a preview of Java 21, this class
+ * is only loaded by a JVM started with --enable-preview, see CellStorage.isOffHeapAvailable()).
+ *
+ * The memory is not part of the heap, so a forest larger than the heap can be simulated and the garbage
+ * collector never scans nor copies it. Each storage has a shared arena with its states and timers: the
+ * memory is released when the storage is closed, not when the collector finds it. The terrain has its own
+ * arena, shared by the storage that created it and its buffers, and is released when the last of them is
+ * closed: the copy of a checkpoint can still be written after its forest was replaced.
+ *
+ * The columns have the little-endian layout of the checkpoint files, so the terrain of a checkpoint is
+ * mapped straight into the grid (see CellStorage.map()) and the usual processors don't swap the bytes.
+ */
+final class OffHeapCellStorage implements CellStorage {
+
+    private static final ValueLayout.OfByte BYTE = ValueLayout.JAVA_BYTE;
+    private static final ValueLayout.OfShort SHORT =
+                                    ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfFloat FLOAT =
+                                    ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    // The columns are written to the files in slices, a ByteBuffer can't have more than 2 GB.
+    private static final long CHUNK_BYTES = 1 << 26;
+
+    private final long size;
+    private final Arena arena;
+    private final MemorySegment states;
+    private final MemorySegment burningTimes;
+    private final Terrain terrain;
+    private final MemorySegment moisture;
+    private final MemorySegment relief;
+    private final MemorySegment reliefMasks;
+    private boolean closed;
+
+    private OffHeapCellStorage(long size, Arena arena, MemorySegment states, MemorySegment burningTimes,
+                                Terrain terrain, MemorySegment moisture, MemorySegment relief,
+                                MemorySegment reliefMasks){
+        this.size = size;
+        this.arena = arena;
+        this.states = states;
+        this.burningTimes = burningTimes;
+        this.terrain = terrain;
+        this.moisture = moisture;
+        this.relief = relief;
+        this.reliefMasks = reliefMasks;
+    }
+
+    // The memory of the arenas starts with zeros, like the arrays of the heap.
+    static OffHeapCellStorage allocate(long cells){
+        Arena terrainArena = Arena.ofShared();
+        Arena arena = null;
+        try{
+            MemorySegment moisture = terrainArena.allocate(cells * Float.BYTES, 8);
+            MemorySegment relief = terrainArena.allocate(cells * Float.BYTES, 8);
+            MemorySegment reliefMasks = terrainArena.allocate(cells, 8);
+
+            arena = Arena.ofShared();
+            return new OffHeapCellStorage(cells, arena, arena.allocate(cells, 8),
+                                            arena.allocate(cells * Short.BYTES, 8),
+                                            new Terrain(terrainArena), moisture, relief, reliefMasks);
+        } catch(RuntimeException | OutOfMemoryError e){
+            if(arena != null) arena.close();
+            terrainArena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The terrain is a read-only mapping of the file, the pages are read by the system when they are used
+     * and never copied to the memory of the process. The states and timers change at every generation, so
+     * they are copied to the arena, and the file is never changed by the simulation.
+     */
+    static OffHeapCellStorage map(FileChannel channel, long position, long cells) throws IOException {
+        Arena terrainArena = Arena.ofShared();
+        Arena arena = null;
+        try{
+            MemorySegment file = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                            cells * (1 + Short.BYTES + 2 * Float.BYTES), terrainArena);
+            long timersOffset = cells;
+            long moistureOffset = timersOffset + cells * Short.BYTES;
+            long reliefOffset = moistureOffset + cells * Float.BYTES;
+
+            arena = Arena.ofShared();
+            return new OffHeapCellStorage(cells, arena, arena.allocate(cells, 8).copyFrom(file.asSlice(0, cells)),
+                                            arena.allocate(cells * Short.BYTES, 8)
+                                                .copyFrom(file.asSlice(timersOffset, cells * Short.BYTES)),
+                                            new Terrain(terrainArena),
+                                            file.asSlice(moistureOffset, cells * Float.BYTES),
+                                            file.asSlice(reliefOffset, cells * Float.BYTES),
+                                            terrainArena.allocate(cells, 8));
+        } catch(IOException | RuntimeException e){
+            if(arena != null) arena.close();
+            terrainArena.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long size(){
+        return size;
+    }
+
+    @Override
+    public int getState(long index){
+        return states.get(BYTE, index);
+    }
+
+    @Override
+    public void setState(long index, int state){
+        states.set(BYTE, index, (byte) state);
+    }
+
+    @Override
+    public int getBurningTime(long index){
+        return burningTimes.getAtIndex(SHORT, index);
+    }
+
+    @Override
+    public void setBurningTime(long index, int burningTime){
+        burningTimes.setAtIndex(SHORT, index, (short) burningTime);
+    }
+
+    @Override
+    public float getMoisture(long index){
+        return moisture.getAtIndex(FLOAT, index);
+    }
+
+    @Override
+    public float getRelief(long index){
+        return relief.getAtIndex(FLOAT, index);
+    }
+
+    @Override
+    public void setTerrain(long index, float moisture, float relief){
+        this.moisture.setAtIndex(FLOAT, index, moisture);
+        this.relief.setAtIndex(FLOAT, index, relief);
+    }
+
+    @Override
+    public int getReliefMask(long index){
+        return reliefMasks.get(BYTE, index) & 0xFF;
+    }
+
+    @Override
+    public void setReliefMask(long index, int mask){
+        reliefMasks.set(BYTE, index, (byte) mask);
+    }
+
+    @Override
+    public void copyStates(CellStorage source, long startIndex, long length){
+        if(source instanceof OffHeapCellStorage offHeapSource){
+            MemorySegment.copy(offHeapSource.states, startIndex, states, startIndex, length);
+            MemorySegment.copy(offHeapSource.burningTimes, startIndex * Short.BYTES,
+                                burningTimes, startIndex * Short.BYTES, length * Short.BYTES);
+            return;
+        }
+        for(long index = startIndex; index < startIndex + length; index++){
+            setState(index, source.getState(index));
+            setBurningTime(index, source.getBurningTime(index));
+        }
+    }
+
+    @Override
+    public CellStorage createBuffer(){
+        // the buffer keeps the terrain until it is closed, even if this storage is closed before.
+        terrain.retain();
+        Arena bufferArena = Arena.ofShared();
+        try{
+            MemorySegment bufferStates = bufferArena.allocate(size, 8).copyFrom(states);
+            MemorySegment bufferTimes = bufferArena.allocate(size * Short.BYTES, 8).copyFrom(burningTimes);
+            return new OffHeapCellStorage(size, bufferArena, bufferStates, bufferTimes,
+                                            terrain, moisture, relief, reliefMasks);
+        } catch(RuntimeException | OutOfMemoryError e){
+            bufferArena.close();
+            terrain.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void writeTo(FileChannel channel, long position) throws IOException {
+        long offset = position;
+        for(MemorySegment column : new MemorySegment[]{ states, burningTimes, moisture, relief }){
+            for(long start = 0; start < column.byteSize(); start += CHUNK_BYTES){
+                ByteBuffer chunk = column.asSlice(start, Math.min(CHUNK_BYTES, column.byteSize() - start))
+                                        .asByteBuffer();
+                while(chunk.hasRemaining()){
+                    channel.write(chunk, offset + start + chunk.position());
+                }
+            }
+            offset += column.byteSize();
+        }
+    }
+
+    @Override
+    public byte[] getStateArray(){
+        return null;
+    }
+
+    @Override
+    public boolean isOffHeap(){
+        return true;
+    }
+
+    /**
+     * Releases the arena of the storage and its reference to the terrain. A thread that still reads the
+     * columns after the close gets an IllegalStateException, never the memory of something else.
+     */
+    @Override
+    public synchronized void close(){
+        if(closed) return;
+        closed = true;
+        arena.close();
+        terrain.release();
+    }
+
+    // The arena of the terrain with the amount of storages that read it, the last one to be closed releases it.
+    private static final class Terrain {
+        private final Arena arena;
+        private int references = 1;
+
+        private Terrain(Arena arena){
+            this.arena = arena;
+        }
+
+        synchronized void retain(){
+            if(references == 0){
+                throw new IllegalStateException("The terrain of the grid was already released.");
+            }
+            references++;
+        }
+
+        synchronized void release(){
+            if(--references == 0) arena.close();
+        }
+    }
+
+    // Created by CellStorage, by name.
+    static final class StorageFactory implements CellStorage.Factory {
+
+        @Override
+        public CellStorage allocate(long cells){
+            return OffHeapCellStorage.allocate(cells);
+        }
+
+        @Override
+        public CellStorage map(FileChannel channel, long position, long cells) throws IOException {
+            return OffHeapCellStorage.map(channel, position, cells);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+/**
+ * @author pauloandre7
+ *
+ * Counter-based random numbers for the ignition test. Instead of a generator with state, the value of each
+ * cell is a hash of (seed, generation, cell index), so it doesn't depend on which thread or tile calculated
+ * the cell, nor on the order of the calculations. The same seed always gives the same simulation, and the
+ * tasks don't need to create or share a java.util.Random.
+ *
+ * The hash is the finalizer of SplitMix64, applied to the key of the generation and then to the cell index.
+ */
+public final class CellRandom {
+
+    // 2^64 divided by the golden ratio, the increment of SplitMix64.
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private CellRandom(){
+    }
+
+    /**
+     * Returns a double between 0.0 (inclusive) and 1.0 (exclusive) for the cell at the generation.
+     */
+    public static double nextDouble(long seed, long generation, long index){
+        long generationKey = mix(seed + GOLDEN_GAMMA * (generation + 1));
+        long value = mix(generationKey + GOLDEN_GAMMA * (index + 1));
+
+        // the 53 upper bits fill the mantissa of the double, like Random.nextDouble()
+        return (value >>> 11) * 0x1.0p-53;
+    }
+
+    // Independent seed for each stream of a simulation, like the replicas of an ensemble.
+    public static long deriveSeed(long seed, long stream){
+        return mix(seed + GOLDEN_GAMMA * (stream + 1));
+    }
+
+    private static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,30 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @author pauloandre7
+ *
+ * Where the tasks of a generation run: the tiles of the full sweep (SimulationTask) and the ranges of the
+ * frontier (FrontierTask). The SimulationService picks one backend for each forest (see ExecutionBackends),
+ * a small forest runs at the calling thread because the handoff to other threads costs more than the cells.
+ */
+public interface ExecutionBackend {
+
+    String getName();
+
+    // Threads that can run the tasks at the same time, the tiling and the frontier are divided by it.
+    int getParallelism();
+
+    /**
+     * Runs the full sweep and returns when all the tiles were calculated.
+     */
+    void runSweep(SimulationTask sweepTask) throws InterruptedException, ExecutionException;
+
+    /**
+     * Runs the tasks and returns when all of them are complete, the first failure is thrown.
+     */
+    <T> void runAll(List<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException;
+}
@@ -0,0 +1,75 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author pauloandre7
+ *
+ * The execution backends of the application and the rule that picks one for each forest.
+ * <ul>
+ * <li>AUTO: the serial backend up to serialMaxCells, the shared ForkJoinPool above it.</li>
+ * <li>SERIAL, FORK_JOIN, FIXED or VIRTUAL: the same backend for every forest.</li>
+ * </ul>
+ * The fixed pool and the virtual threads are only created when their mode is configured, and they are
+ * shut down by close() when the Spring context is closed.
+ */
+public class ExecutionBackends implements AutoCloseable {
+
+    public enum Mode {
+        AUTO, SERIAL, FORK_JOIN, FIXED, VIRTUAL
+    }
+
+    private final Mode mode;
+    private final long serialMaxCells;
+    private final ForkJoinPool pool;
+    private final ForkJoinBackend forkJoinBackend;
+    // null when the mode doesn't use them.
+    private final ExecutorServiceBackend fixedBackend;
+    private final ExecutorServiceBackend virtualBackend;
+
+    public ExecutionBackends(Mode mode, long serialMaxCells, ForkJoinPool pool){
+        this.mode = mode;
+        this.serialMaxCells = serialMaxCells;
+        this.pool = pool;
+        this.forkJoinBackend = new ForkJoinBackend(pool);
+
+        int parallelism = pool.getParallelism();
+        this.fixedBackend = mode == Mode.FIXED 
+                            ? new ExecutorServiceBackend("fixed", Executors.newFixedThreadPool(parallelism), parallelism)
+                            : null;
+        // the virtual threads run on as many carrier threads as processors, the tasks are divided the same way.
+        this.virtualBackend = mode == Mode.VIRTUAL
+                            ? new ExecutorServiceBackend("virtual", Executors.newVirtualThreadPerTaskExecutor(), 
+                                                        parallelism)
+                            : null;
+    }
+
+    /**
+     * Returns the backend of a forest with the given amount of cells.
+     */
+    public ExecutionBackend select(long cells){
+        return switch(mode){
+            case SERIAL -> SerialBackend.INSTANCE;
+            case FORK_JOIN -> forkJoinBackend;
+            case FIXED -> fixedBackend;
+            case VIRTUAL -> virtualBackend;
+            case AUTO -> cells <= serialMaxCells ? SerialBackend.INSTANCE : forkJoinBackend;
+        };
+    }
+
+    public Mode getMode(){
+        return mode;
+    }
+
+    // The shared pool, whatever the mode. The scheduler also runs the steps of the sessions on it.
+    public ForkJoinPool getPool(){
+        return pool;
+    }
+
+    @Override
+    public void close(){
+        if(fixedBackend != null) fixedBackend.shutdown();
+        if(virtualBackend != null) virtualBackend.shutdown();
+    }
+}
@@ -0,0 +1,58 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author pauloandre7
+ *
+ * Runs the tasks at a plain ExecutorService: a fixed pool of platform threads or a virtual thread for
+ * each task. There is no work-stealing, so the tiles of the sweep are submitted all at once and the
+ * threads take them in order. The executor is owned by ExecutionBackends, which shuts it down.
+ */
+@RequiredArgsConstructor
+public final class ExecutorServiceBackend implements ExecutionBackend {
+
+    private final String name;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    @Override
+    public String getName(){
+        return name;
+    }
+
+    @Override
+    public int getParallelism(){
+        return parallelism;
+    }
+
+    @Override
+    public void runSweep(SimulationTask sweepTask) throws InterruptedException, ExecutionException {
+        List<SimulationTask> tiles = sweepTask.getTiles();
+        List<Callable<Void>> tileTasks = new ArrayList<>(tiles.size());
+
+        for(SimulationTask tile : tiles){
+            tileTasks.add(() -> {
+                tile.computeSerially();
+                return null;
+            });
+        }
+        runAll(tileTasks);
+    }
+
+    @Override
+    public <T> void runAll(List<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        for(Future<T> result : executor.invokeAll(tasks)) result.get();
+    }
+
+    void shutdown(){
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,223 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import java.util.Arrays;
+
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ *
+ * Keeps the active frontier of the fire between generations: the burning cells and their vegetation
+ * neighbors. Those are the only cells that can change at the next generation, so the service can evaluate
+ * only them instead of sweeping the whole grid.
+ *
+ * The frontier mode relies on the buffer grid being equal to the current grid, except for the cells that
+ * changed at the last generation. Those cells were the candidates of the last generation, so they are copied
+ * before the new candidates are written. When the grid is changed by other ways (full sweep, ignition by the
+ * controller or new forest) the frontier must be invalidated and it will copy the whole grid once.
+ *
+ * The cells are kept by their long index, like the grid. The lists are arrays, so a fire of more burning
+ * cells than an array can hold is only counted, and the full sweep calculates it.
+ */
+public class FireFrontier {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    // Longest list of cells, a bit below Integer.MAX_VALUE like the limit of the arrays of the JVM.
+    private static final int MAX_LISTED_CELLS = Integer.MAX_VALUE - 8;
+
+    private final Forest forest;
+
+    // The arrays start small and only grow when the fire grows.
+    private long[] burningCells = new long[64];
+    private int listedCount;
+    private long burningCount;
+    private long[] candidates = new long[64];
+    private int candidateCount;
+    private long[] previousCandidates = new long[64];
+    private int previousCount;
+
+    // false when the burning list doesn't match the current grid.
+    private boolean burningKnown = false;
+    // true when only the amount of burning cells is known (counted by the full sweep), not the list.
+    private boolean countKnown = false;
+    // false when the buffer grid differs from the current grid at unknown cells.
+    private boolean synced = false;
+
+    public FireFrontier(Forest forest){
+        this.forest = forest;
+    }
+
+    // Must be called when the grid was changed outside of the frontier step.
+    public void invalidate(){
+        this.burningKnown = false;
+        this.countKnown = false;
+        this.synced = false;
+    }
+
+    /**
+     * Invalidates the frontier after a full sweep that counted the burning cells. The count is enough to
+     * choose the mode of the next generation, so the grid is only scanned when the frontier is used again.
+     */
+    public void invalidate(long burningCount){
+        invalidate();
+        this.burningCount = burningCount;
+        this.countKnown = true;
+    }
+
+    /**
+     * Upper bound of the candidates for the next generation. It is cheap, so the service can decide
+     * to use the full sweep before collecting the candidates.
+     */
+    public long estimateCandidates(){
+        if(!burningKnown && !countKnown) scanBurningCells();
+
+        // each burning cell adds itself and at most 8 neighbors. More candidates than an array can hold
+        // are estimated as the whole grid, so the full sweep is used.
+        long candidates = burningCount * 9;
+        return candidates > MAX_LISTED_CELLS ? forest.getGrid().size() : Math.min(candidates, forest.getGrid().size());
+    }
+
+    /**
+     * Prepares the buffer grid and collects the cells to be evaluated at the next generation,
+     * sorted by index. Returns the number of candidates. It must only be called when estimateCandidates()
+     * is small, the list of the burning cells is needed.
+     */
+    public int collectCandidates(){
+        ForestGrid grid = forest.getGrid();
+        ForestGrid bufferGrid = forest.getBufferGrid();
+
+        if(!burningKnown) scanBurningCells();
+        if(!burningKnown){
+            throw new IllegalStateException("The fire has too many burning cells for the frontier.");
+        }
+
+        if(!synced){
+            bufferGrid.copyStatesFrom(grid);
+            synced = true;
+        } else {
+            // only the cells changed at the last generation are different at the buffer.
+            for(int i = 0; i < previousCount; i++){
+                bufferGrid.copyCell(grid, previousCandidates[i]);
+            }
+        }
+
+        candidateCount = 0;
+        for(int i = 0; i < listedCount; i++){
+            long index = burningCells[i];
+            int row = grid.rowOf(index);
+            int col = grid.colOf(index);
+
+            addCandidate(index);
+
+            for(Direction direction : DIRECTIONS){
+                int neighborRow = row + direction.getRowOffset();
+                int neighborCol = col + direction.getColOffset();
+
+                if(!grid.isInside(neighborRow, neighborCol)) continue;
+
+                long neighborIndex = grid.index(neighborRow, neighborCol);
+                if(grid.isVegetation(neighborIndex)) addCandidate(neighborIndex);
+            }
+        }
+
+        // The same cell can be neighbor of many burning cells. Sorting removes the duplicates and keeps the
+        // order of the full sweep, which is better for the cache and for the random stream.
+        Arrays.sort(candidates, 0, candidateCount);
+        int uniqueCount = 0;
+        for(int i = 0; i < candidateCount; i++){
+            if(uniqueCount == 0 || candidates[uniqueCount - 1] != candidates[i]){
+                candidates[uniqueCount++] = candidates[i];
+            }
+        }
+        candidateCount = uniqueCount;
+
+        return candidateCount;
+    }
+
+    public long getCandidate(int position){
+        return candidates[position];
+    }
+
+    /**
+     * Must be called after all the candidates were written at the buffer grid and before the swap.
+     * The cells that are not candidates cannot start burning, so the new burning list comes from them.
+     */
+    public void finish(){
+        ForestGrid bufferGrid = forest.getBufferGrid();
+
+        burningCount = 0;
+        listedCount = 0;
+        for(int i = 0; i < candidateCount; i++){
+            if(bufferGrid.isBurning(candidates[i])) addBurning(candidates[i]);
+        }
+
+        // the candidates of this generation will be copied to the buffer before the next one.
+        long[] oldCandidates = previousCandidates;
+        previousCandidates = candidates;
+        previousCount = candidateCount;
+        candidates = oldCandidates;
+        candidateCount = 0;
+    }
+
+    // Cells evaluated at the last frontier step, the only ones that can have changed in it.
+    public int getEvaluatedCount(){
+        return previousCount;
+    }
+
+    public long getEvaluatedCell(int position){
+        return previousCandidates[position];
+    }
+
+    public long getBurningCount(){
+        return burningCount;
+    }
+
+    // Burning cells of the current grid. After a full sweep it's the count of the sweep, the grid is only
+    // scanned when it was changed by other ways (ignition by the controller or new forest).
+    public long countBurning(){
+        if(!burningKnown && !countKnown) scanBurningCells();
+        return burningCount;
+    }
+
+    private void scanBurningCells(){
+        ForestGrid grid = forest.getGrid();
+
+        burningCount = 0;
+        listedCount = 0;
+        boolean listed = true;
+        for(long index = 0; index < grid.size(); index++){
+            if(!grid.isBurning(index)) continue;
+
+            if(listed && listedCount < MAX_LISTED_CELLS){
+                addBurning(index);
+            } else {
+                // only counted, the next generations use the full sweep.
+                listed = false;
+                burningCount++;
+            }
+        }
+        burningKnown = listed;
+        countKnown = !listed;
+    }
+
+    private void addCandidate(long index){
+        if(candidateCount == candidates.length){
+            candidates = Arrays.copyOf(candidates, grownLength(candidates.length));
+        }
+        candidates[candidateCount++] = index;
+    }
+
+    private void addBurning(long index){
+        if(listedCount == burningCells.length){
+            burningCells = Arrays.copyOf(burningCells, grownLength(burningCells.length));
+        }
+        burningCells[listedCount++] = index;
+        burningCount++;
+    }
+
+    private static int grownLength(int length){
+        return (int) Math.min((long) length * 2, MAX_LISTED_CELLS);
+    }
+}
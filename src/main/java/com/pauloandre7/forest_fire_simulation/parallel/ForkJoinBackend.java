@@ -0,0 +1,43 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author pauloandre7
+ *
+ * Runs the tasks at the shared ForkJoinPool. The tree of tiles splits itself and the idle threads steal
+ * the pending halves, which balances the clustered fire. The pool belongs to the Spring context
+ * (see SimulationExecutorConfig), this backend doesn't shut it down.
+ */
+@RequiredArgsConstructor
+public final class ForkJoinBackend implements ExecutionBackend {
+
+    private final ForkJoinPool pool;
+
+    @Override
+    public String getName(){
+        return "fork-join";
+    }
+
+    @Override
+    public int getParallelism(){
+        return pool.getParallelism();
+    }
+
+    @Override
+    public void runSweep(SimulationTask sweepTask){
+        sweepTask.reinitialize();
+        pool.invoke(sweepTask);
+    }
+
+    @Override
+    public <T> void runAll(List<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        for(Future<T> result : pool.invokeAll(tasks)) result.get();
+    }
+}
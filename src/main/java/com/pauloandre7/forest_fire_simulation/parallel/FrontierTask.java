@@ -0,0 +1,47 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import java.util.concurrent.Callable;
+
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ *
+ * Task of the frontier mode. Instead of a row, it receives a range of positions of the candidates
+ * collected by FireFrontier and applies the same rules of SimulationTask to each of them.
+ */
+public class FrontierTask implements Callable<Forest>{
+
+    private final Forest currentForest;
+    private final FireFrontier frontier;
+
+    // The range changes at each generation, because the amount of candidates changes.
+    private int startPosition;
+    private int finalPosition;
+
+    public FrontierTask(Forest currentForest, FireFrontier frontier){
+        this.currentForest = currentForest;
+        this.frontier = frontier;
+    }
+
+    public void setRange(int startPosition, int finalPosition){
+        this.startPosition = startPosition;
+        this.finalPosition = finalPosition;
+    }
+
+    @Override
+    public Forest call(){
+        ForestGrid currentGrid = currentForest.getGrid();
+        ForestGrid bufferGrid = currentForest.getBufferGrid();
+
+        for(int position = startPosition; position < finalPosition; position++){
+            long index = frontier.getCandidate(position);
+
+            SimulationTask.updateCell(currentForest, currentGrid, bufferGrid,
+                                    currentGrid.rowOf(index), currentGrid.colOf(index));
+        }
+
+        return currentForest;
+    }
+}
@@ -0,0 +1,88 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * @author pauloandre7
+ *
+ * Unbounded queue with many producers and a single consumer, without locks. A producer swaps the tail
+ * with getAndSet (one atomic instruction, it never retries as a CAS loop does) and then links the old
+ * tail to its node. The consumer follows the links from the head, which only it changes.
+ *
+ * Between the swap and the link, a node is in the queue but not reachable yet: the consumer sees the
+ * queue as empty up to it and takes it at the next drain. The order is the order of the swaps.
+ *
+ * offer() can be called by any thread. drain() must be called by one thread at a time, the caller
+ * is responsible for that (see SimulationService, which holds a lock while it drains).
+ */
+public class MpscQueue<T> {
+
+    private static final VarHandle NEXT;
+
+    static {
+        try{
+            NEXT = MethodHandles.lookup().findVarHandle(Node.class, "next", Node.class);
+        } catch(ReflectiveOperationException e){
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // The head is a node already consumed (or the first empty one), the items start at its next.
+    private volatile Node<T> head;
+    private final AtomicReference<Node<T>> tail;
+
+    public MpscQueue(){
+        Node<T> empty = new Node<>(null);
+        this.head = empty;
+        this.tail = new AtomicReference<>(empty);
+    }
+
+    public void offer(T item){
+        Node<T> node = new Node<>(item);
+        Node<T> previous = tail.getAndSet(node);
+        // release, so the consumer that sees the link also sees the item.
+        NEXT.setRelease(previous, node);
+    }
+
+    /**
+     * Gives up to limit items to the consumer, in the order they were offered.
+     * Returns the amount of items drained.
+     */
+    public int drain(Consumer<? super T> consumer, int limit){
+        Node<T> current = head;
+        int drained = 0;
+
+        while(drained < limit){
+            @SuppressWarnings("unchecked")
+            Node<T> next = (Node<T>) NEXT.getAcquire(current);
+            if(next == null) break;
+
+            T item = next.item;
+            // the node becomes the new head, the item is released for the garbage collector.
+            next.item = null;
+            current = next;
+            head = current;
+            drained++;
+            consumer.accept(item);
+        }
+        return drained;
+    }
+
+    // Can be called by any thread, an item that is being offered at the same time may not be seen.
+    public boolean isEmpty(){
+        return NEXT.getAcquire(head) == null;
+    }
+
+    private static final class Node<T> {
+        private T item;
+        @SuppressWarnings("unused") // accessed by the NEXT VarHandle
+        private Node<T> next;
+
+        private Node(T item){
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ *
+ * Runs replicas of a forest one after the other, at the calling thread. Each thread of the ensemble has
+ * one runner, so the replicas run in parallel without sharing any state: the runner has its own replica
+ * of the forest (only the state grids, the terrain is shared) and its own burn counts.
+ *
+ * The steps use the same rules of the service: the frontier while the fire is small and a full sweep
+ * in a single tile when it's bigger, both without the pool.
+ */
+public class ReplicaRunner {
+
+    private static final int ASH = CellState.ASH.ordinal();
+
+    // The burn counts are an array of the cells, a larger forest doesn't fit in one.
+    public static final int MAX_CELLS = Integer.MAX_VALUE - 8;
+
+    private final ForestGrid originalGrid;
+    private final Forest replica;
+    private final FireFrontier frontier;
+    private final FrontierTask frontierTask;
+    private final SimulationTask sweepTask;
+    private final long denseLimit;
+
+    // How many replicas burned each cell, the ensemble sums the counts of all the runners.
+    private final int[] burnCounts;
+
+    public ReplicaRunner(Forest forest, double denseSweepRatio){
+        this(forest, denseSweepRatio, ScalarSweepKernel.INSTANCE);
+    }
+
+    public ReplicaRunner(Forest forest, double denseSweepRatio, SweepKernel kernel){
+        if(forest.getGrid().size() > MAX_CELLS){
+            throw new IllegalArgumentException("The ensemble is limited to forests of " + MAX_CELLS + " cells.");
+        }
+        this.originalGrid = forest.getGrid();
+        this.replica = forest.replicate();
+        this.frontier = new FireFrontier(replica);
+        this.frontierTask = new FrontierTask(replica, frontier);
+        // a tile with the whole grid, the task doesn't fork.
+        this.sweepTask = new SimulationTask(replica, 0, replica.getHeight(), 0, replica.getWidth(),
+                                            Integer.MAX_VALUE, kernel);
+        this.denseLimit = (long) (originalGrid.size() * denseSweepRatio);
+        this.burnCounts = new int[(int) originalGrid.size()];
+    }
+
+    /**
+     * Runs one replica from the original grid until the fire dies out or maxGeneration is reached
+     * (0 means no limit) and adds the burned cells to the counts. Returns the generations calculated.
+     */
+    public int run(long seed, int maxGeneration){
+        replica.getGrid().copyStatesFrom(originalGrid);
+        replica.reseed(seed);
+        frontier.invalidate();
+
+        int generations = 0;
+        while((maxGeneration == 0 || generations < maxGeneration) && frontier.countBurning() > 0){
+            step();
+            generations++;
+        }
+
+        ForestGrid grid = replica.getGrid();
+        for(int index = 0; index < burnCounts.length; index++){
+            if(grid.isBurning(index) || grid.getStateOrdinal(index) == ASH) burnCounts[index]++;
+        }
+
+        return generations;
+    }
+
+    public int[] getBurnCounts(){
+        return burnCounts;
+    }
+
+    private void step(){
+        boolean frontierStep = false;
+
+        if(frontier.estimateCandidates() <= denseLimit){
+            int candidates = frontier.collectCandidates();
+
+            if(candidates <= denseLimit){
+                frontierTask.setRange(0, candidates);
+                frontierTask.call();
+                frontier.finish();
+                frontierStep = true;
+            }
+        }
+
+        if(!frontierStep){
+            // compute() runs the single tile at this thread, without the pool.
+            sweepTask.compute();
+            frontier.invalidate(sweepTask.countBurning());
+        }
+
+        replica.swapBuffers();
+    }
+}
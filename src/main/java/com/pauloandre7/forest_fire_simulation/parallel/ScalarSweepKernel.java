@@ -0,0 +1,27 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ *
+ * The default kernel, it applies SimulationTask.updateCell() to each cell of the row.
+ */
+public final class ScalarSweepKernel implements SweepKernel {
+
+    public static final ScalarSweepKernel INSTANCE = new ScalarSweepKernel();
+
+    private ScalarSweepKernel(){
+    }
+
+    @Override
+    public int updateRow(Forest forest, ForestGrid currentGrid, ForestGrid bufferGrid, 
+                            int row, int startCol, int finalCol){
+        int burning = 0;
+        for(int col = startCol; col < finalCol; col++){
+            burning += SimulationTask.updateCell(forest, currentGrid, bufferGrid, row, col);
+        }
+        return burning;
+    }
+}
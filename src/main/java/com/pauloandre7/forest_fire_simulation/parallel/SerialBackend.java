@@ -0,0 +1,45 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @author pauloandre7
+ *
+ * Runs everything at the calling thread (the scheduler), in place. For small forests, where the whole
+ * generation takes less than the handoff of the tasks to a pool.
+ */
+public final class SerialBackend implements ExecutionBackend {
+
+    public static final SerialBackend INSTANCE = new SerialBackend();
+
+    private SerialBackend(){
+    }
+
+    @Override
+    public String getName(){
+        return "serial";
+    }
+
+    @Override
+    public int getParallelism(){
+        return 1;
+    }
+
+    @Override
+    public void runSweep(SimulationTask sweepTask){
+        sweepTask.computeSerially();
+    }
+
+    @Override
+    public <T> void runAll(List<? extends Callable<T>> tasks) throws ExecutionException {
+        for(Callable<T> task : tasks){
+            try{
+                task.call();
+            } catch(Exception e){
+                throw new ExecutionException(e);
+            }
+        }
+    }
+}
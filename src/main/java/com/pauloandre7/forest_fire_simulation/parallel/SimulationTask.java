@@ -1,142 +1,198 @@
 package com.pauloandre7.forest_fire_simulation.parallel;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
-import java.util.concurrent.Callable;
+import java.util.concurrent.RecursiveAction;
 
-import com.pauloandre7.forest_fire_simulation.model.BurningCell;
-import com.pauloandre7.forest_fire_simulation.model.Cell;
-import com.pauloandre7.forest_fire_simulation.model.CellState;
-import com.pauloandre7.forest_fire_simulation.model.Direction;
 import com.pauloandre7.forest_fire_simulation.model.Forest;
-
-
-public class SimulationTask implements Callable<Forest>{
-
-    // CurrentForest will be used for all that is related to read data
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+
+/**
+ * @author pauloandre7
+ * 
+ * Task of the full sweep. It covers a rectangle of the grid (a tile) and splits itself in two halves,
+ * at the longer side, until the tiles have the size given by the TilingStrategy. The ForkJoinPool
+ * runs the halves and the idle threads steal the pending ones, which balances the clustered fire.
+ * 
+ * The tree of tasks is created once for each forest. Before each generation the root must be
+ * reinitialized, and each task reinitializes its children before running them again.
+ */
+public class SimulationTask extends RecursiveAction{
+    // The task reads the current grid of the forest and writes the next generation at the buffer grid,
+    // because i cannot change state at the grid that will be read for other threads.
+    // The forest swaps both grids after each generation, so the same task can be reused.
     private final Forest currentForest;
-    // Buffer Forest will only be used to change state, because i cannot change state
-    // at the Forest that will be read for other threads.
-    private final Forest bufferForest;
-    private final int rowOfWork;
+    private final int startRow;
+    private final int finalRow;
     private final int startCol;
     private final int finalCol;
-    
-    private final double  BONUS_RELIEF = 0.05;    // 5% for each neighbor burning
-    private final double  WIND_BONUS_LIMITER = 300; // will stop the maximum wind speed at 33%
+    // Runs the rows of the tile, see SweepKernel.
+    private final SweepKernel kernel;
+
+    private final SimulationTask firstHalf;
+    private final SimulationTask secondHalf;
+    // Burning cells written by this tile at the last sweep.
+    private int burningCount;
+
+    public SimulationTask(Forest currentForest, int startRow, int finalRow, int startCol, int finalCol, 
+                            int maxTileCells){
+        this(currentForest, startRow, finalRow, startCol, finalCol, maxTileCells, ScalarSweepKernel.INSTANCE);
+    }
 
-    public SimulationTask(Forest originalForest, Forest bufferForest, int rowOfWork, int startCol, int finalCol){
-        this.currentForest = originalForest;
-        this.bufferForest = bufferForest;
-        this.rowOfWork = rowOfWork;
+    public SimulationTask(Forest currentForest, int startRow, int finalRow, int startCol, int finalCol, 
+                            int maxTileCells, SweepKernel kernel){
+        this.currentForest = currentForest;
+        this.startRow = startRow;
+        this.finalRow = finalRow;
         this.startCol = startCol;
         this.finalCol = finalCol;
+        this.kernel = kernel;
+
+        int rows = finalRow - startRow;
+        int cols = finalCol - startCol;
+
+        if((long) rows * cols <= maxTileCells || (rows <= 1 && cols <= 1)){
+            this.firstHalf = null;
+            this.secondHalf = null;
+        } else if(rows >= cols){
+            // splits the rows, the tiles stay close to a square to reuse the neighbor rows in the cache
+            int middleRow = startRow + rows / 2;
+            this.firstHalf = new SimulationTask(currentForest, startRow, middleRow, startCol, finalCol, maxTileCells,
+                                                    kernel);
+            this.secondHalf = new SimulationTask(currentForest, middleRow, finalRow, startCol, finalCol, maxTileCells,
+                                                    kernel);
+        } else {
+            int middleCol = startCol + cols / 2;
+            this.firstHalf = new SimulationTask(currentForest, startRow, finalRow, startCol, middleCol, maxTileCells,
+                                                    kernel);
+            this.secondHalf = new SimulationTask(currentForest, startRow, finalRow, middleCol, finalCol, maxTileCells,
+                                                    kernel);
+        }
     }
 
-    public double calculateIgnitionProbability(int columnIndex) {
-        int totalRows = currentForest.getCells().size();
-        int totalColumns = currentForest.getCells().get(0).size();
-
-        int currentRowIndex = rowOfWork;
-        int currentColumnIndex = columnIndex;
-
-        // When an offSet is added to the current row and col, 
-        // we get the coordinate of neighbor's cell.
-        final int[][] neighborCoordinates = {
-            {-1,  0}, // North (modifies row, modifies col)
-            { 1,  0}, // South
-            { 0, -1}, // West
-            { 0,  1}, // East
-            {-1, -1}, // Northwest
-            {-1,  1}, // Northeast
-            { 1, -1}, // Southwest
-            { 1,  1}  // Southeast
-        };
-
-        List<Direction> directionsList = new ArrayList<>(Arrays.asList(Direction.values()));
-
-        List<BurningCell> burningCells = new ArrayList<>();
-
-        int count = 0;
-        for (int[] offset : neighborCoordinates) {
-
-            // if its the offset 0 (north) and currentRowIndex is 1, then 1+(-1) == 0 (row 0) 
-            int neighborRow = currentRowIndex + offset[0];
-            // if its the offset north and currentRowIndex is 1, then 1-0 == 1 (row 1 and col 1 == North) 
-            int neighborCol = currentColumnIndex + offset[1];
-
-            // Bounds check to avoid accessing outside the grid
-            boolean isInsideRows = neighborRow >= 0 && neighborRow < totalRows;
-            boolean isInsideColumns = neighborCol >= 0 && neighborCol < totalColumns;
-            if (!isInsideRows || !isInsideColumns) {
-                count++;
-                continue;
-            }
-
-            Cell neighborCell = currentForest.getCells().get(neighborRow).get(neighborCol);
-            if (neighborCell.getState() == CellState.BURNING) {
-                burningCells.add(new BurningCell(neighborCell, directionsList.get(count)));
-            }
-            count++;
-        }
+    public double calculateIgnitionProbability(int rowIndex, int columnIndex) {
+        return calculateIgnitionProbability(currentForest, rowIndex, columnIndex);
+    }
+
+    // The static part of the formula was calculated when the forest was created (see IgnitionCoefficients),
+    // so here it only needs the mask of the burning neighbors.
+    static double calculateIgnitionProbability(Forest forest, int rowIndex, int columnIndex) {
+        ForestGrid grid = forest.getGrid();
+        int burningMask = grid.burningNeighborMask(rowIndex, columnIndex);
+
+        return forest.getCoefficients().ignitionProbability(grid.index(rowIndex, columnIndex), burningMask);
+    }
 
-        Cell calculatingCell = currentForest.getCells().get(rowOfWork).get(columnIndex);
-        
-        // BaseProb will increase with the number of burning cells around
-        double baseProb = burningCells.size() * bufferForest.getBaseBurningProbability();
-        // Will decrease or maintain the base prob with the moisture level.
-        baseProb *= (1 - calculatingCell.getMoisture());
-        
-        double windProb = 0.0;
-        double reliefProb = 0.0;
-
-        for(BurningCell burningCell : burningCells){
-            // if the wind is coming from north and one of the burning cell is in the way
-            // the wind prob will be considered.
-            if(burningCell.getCellDirection() == currentForest.getWindDirection()){
-                // If the speed is 100, the limit of 300 will result in 0.33 (33%)
-                windProb = currentForest.getWindSpeed() / WIND_BONUS_LIMITER;
-            }
-            // each burning cell with less relief will add 5% to reliefProb
-            if(burningCell.getRelief() < calculatingCell.getRelief()){
-                reliefProb += BONUS_RELIEF;
-            }
+    /**
+     * Writes the next state of one cell at the buffer grid. Used by the full sweep of this task and
+     * by the FrontierTask, so both modes apply exactly the same rules.
+     * The random value comes from CellRandom, so it's the same for the cell whatever task calculates it.
+     * Returns 1 when the cell is burning at the next generation, so the sweep counts the fire as it goes.
+     */
+    static int updateCell(Forest forest, ForestGrid currentGrid, ForestGrid bufferGrid, 
+                            int rowIndex, int columnIndex){
+        long index = currentGrid.index(rowIndex, columnIndex);
+
+        // The buffer can have an old state, so every cell is written explicitly.
+        bufferGrid.copyCell(currentGrid, index);
+
+        // if the cell is already burning, then will use the method to 
+        // decrease the timer of burning or turn into ash
+        if(currentGrid.isBurning(index)) {
+            bufferGrid.updateBurningState(index);
+            return bufferGrid.isBurning(index) ? 1 : 0;
         }
 
-        double ignitionProbability = baseProb + windProb + reliefProb;
+        // continue to next cell if this one is Ash or empty.
+        if(!currentGrid.isVegetation(index)) return 0;
 
-        if(ignitionProbability > 1.0) ignitionProbability = 1.0;
-        if(ignitionProbability < 0.0) ignitionProbability = 0.0;
+        return tryIgnition(forest, bufferGrid, index, currentGrid.burningNeighborMask(rowIndex, columnIndex));
+    }
 
-        return ignitionProbability;
+    /**
+     * Ignition test of a vegetation cell, given the mask of its burning neighbors. The vector kernel
+     * calculates the masks of many cells at once and calls this for the cells with burning neighbors.
+     * Returns 1 when the cell started to burn.
+     */
+    static int tryIgnition(Forest forest, ForestGrid bufferGrid, long index, int burningMask){
+        double ignitionProbability = forest.getCoefficients().ignitionProbability(index, burningMask);
+
+        // the hash is skipped when the cell cannot ignite
+        if(ignitionProbability > 0.0 
+            && CellRandom.nextDouble(forest.getRandomSeed(), forest.getStepCount(), forest.getFirstCellIndex() + index)
+                < ignitionProbability){
+            bufferGrid.startBurning(index, forest.getBurningTime());
+            return 1;
+        }
+        return 0;
     }
 
     @Override
-    public Forest call() throws Exception {
-        Random random = new Random();
+    protected void compute() {
+        if(firstHalf != null){
+            firstHalf.reinitialize();
+            secondHalf.reinitialize();
+            // runs the first half at this thread and lets the second one be stolen
+            invokeAll(firstHalf, secondHalf);
+            return;
+        }
 
-        for(int i = startCol; i < finalCol; i++){
-            Cell currentCell = currentForest.getCells().get(rowOfWork).get(i);
+        computeTile();
+    }
 
-            // if the cell is already burning, then will use the method to 
-            // decrease the timer of burning or turn into ash
-            if(currentCell.getState() == CellState.BURNING) {
-                bufferForest.getCells().get(rowOfWork).get(i).updateBurningState();
-            }
+    private void computeTile(){
+        ForestGrid currentGrid = currentForest.getGrid();
+        ForestGrid bufferGrid = currentForest.getBufferGrid();
 
-            // continue to next cell if this one is Ash, burning or empty.
-            if(currentCell.getState() != CellState.VEGETATION) continue;
+        int burning = 0;
+        for(int row = startRow; row < finalRow; row++){
+            burning += kernel.updateRow(currentForest, currentGrid, bufferGrid, row, startCol, finalCol);
+        }
+        // each tile has its own counter, so the threads don't share a variable during the sweep.
+        this.burningCount = burning;
+    }
 
-            double ignitionProbability = calculateIgnitionProbability(i);
+    /**
+     * Burning cells of the generation written by the last sweep, summed from the tiles. The service uses
+     * it instead of scanning the grid again.
+     */
+    public long countBurning(){
+        return firstHalf == null ? burningCount : firstHalf.countBurning() + secondHalf.countBurning();
+    }
 
-            if(random.nextDouble() < ignitionProbability){
-                bufferForest.getCells().get(rowOfWork).get(i).startBurning(bufferForest.getBurningTime());
-            }
+    /**
+     * Runs all the tiles at the calling thread, without forking. Used by the backends that don't run
+     * on a ForkJoinPool (see ExecutionBackend).
+     */
+    public void computeSerially(){
+        if(firstHalf != null){
+            firstHalf.computeSerially();
+            secondHalf.computeSerially();
+            return;
         }
+        computeTile();
+    }
+
+    // The leaves of the tree, so an ExecutorService can run them as independent tasks.
+    public List<SimulationTask> getTiles(){
+        List<SimulationTask> tiles = new ArrayList<>(countTiles());
+        collectTiles(tiles);
+        return tiles;
+    }
+
+    private void collectTiles(List<SimulationTask> tiles){
+        if(firstHalf == null){
+            tiles.add(this);
+            return;
+        }
+        firstHalf.collectTiles(tiles);
+        secondHalf.collectTiles(tiles);
+    }
 
-        return bufferForest;
+    // Amount of tiles of this task, used to check the tiling.
+    public int countTiles(){
+        return firstHalf == null ? 1 : firstHalf.countTiles() + secondHalf.countTiles();
     }
     
 }
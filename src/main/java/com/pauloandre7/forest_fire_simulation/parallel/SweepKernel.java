@@ -0,0 +1,47 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ *
+ * Calculates the next state of a row segment at the full sweep. The SimulationTask splits the grid in
+ * tiles and the kernel runs the rows of each tile, so the kernel only decides how the cells of a row
+ * are visited: one by one (ScalarSweepKernel) or many cells at once (VectorSweepKernel).
+ *
+ * Every kernel must produce exactly the same generation, the random value of each cell comes from
+ * CellRandom and doesn't depend on the order of the cells.
+ */
+public interface SweepKernel {
+
+    String VECTOR_MODULE = "jdk.incubator.vector";
+    String VECTOR_KERNEL_CLASS = "com.pauloandre7.forest_fire_simulation.parallel.VectorSweepKernel";
+
+    /**
+     * Writes the next state of the cells {@code [startCol, finalCol)} of the row at the buffer grid
+     * and returns how many of them are burning at the next generation.
+     */
+    int updateRow(Forest forest, ForestGrid currentGrid, ForestGrid bufferGrid, 
+                    int row, int startCol, int finalCol);
+
+    // The Vector API is an incubator module, it only exists when the JVM is started with
+    // --add-modules jdk.incubator.vector.
+    static boolean isVectorAvailable(){
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+
+    /**
+     * Returns the vector kernel when it was requested and the module is enabled, otherwise the scalar one.
+     */
+    static SweepKernel select(boolean vector){
+        if(!vector || !isVectorAvailable()) return ScalarSweepKernel.INSTANCE;
+
+        // loaded by name, so this class never links the classes of the incubator module when it's disabled.
+        try{
+            return (SweepKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+        } catch(ReflectiveOperationException | LinkageError e){
+            return ScalarSweepKernel.INSTANCE;
+        }
+    }
+}
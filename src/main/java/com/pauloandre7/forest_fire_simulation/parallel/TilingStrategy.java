@@ -0,0 +1,51 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author pauloandre7
+ *
+ * Defines the size of the tiles of the full sweep. The tiles must fit in the L2 cache of a core, and
+ * there must be some tasks for each thread so the idle threads can steal the work of the busy ones
+ * (the burning regions are clustered, so some tiles take longer than others).
+ * The amount of tasks depends on the parallelism and on the grid area, not on the grid shape.
+ */
+@Getter
+@RequiredArgsConstructor
+public class TilingStrategy {
+
+    // Bytes touched for each cell of a tile: state and timer of the current grid, relief mask of the
+    // IgnitionCoefficients and moisture (for the dryness), plus state and timer of the buffer grid.
+    private static final int BYTES_PER_CELL = 1 + 2 + 1 + 4 + 1 + 2;
+
+    private final long l2CacheBytes;
+    private final int tasksPerThread;
+    // Smaller tiles than this don't pay the cost of the fork.
+    private final int minTileCells;
+
+    public int maxTileCells(long totalCells, int parallelism){
+        long cacheCells = Math.max(1, l2CacheBytes / BYTES_PER_CELL);
+
+        long numberOfTasks = Math.max(1L, (long) parallelism * tasksPerThread);
+        long balancedCells = (totalCells + numberOfTasks - 1) / numberOfTasks;
+
+        long tileCells = Math.max(minTileCells, Math.min(cacheCells, balancedCells));
+        return (int) Math.min(Integer.MAX_VALUE, tileCells);
+    }
+
+    /**
+     * Creates the tree of tasks for the whole grid of the forest.
+     */
+    public SimulationTask createTasks(Forest forest, int parallelism){
+        return createTasks(forest, parallelism, ScalarSweepKernel.INSTANCE);
+    }
+
+    // The tiles run their rows with the kernel selected at the startup, see SweepKernel.
+    public SimulationTask createTasks(Forest forest, int parallelism, SweepKernel kernel){
+        int tileCells = maxTileCells(forest.getGrid().size(), parallelism);
+        return new SimulationTask(forest, 0, forest.getHeight(), 0, forest.getWidth(), tileCells, kernel);
+    }
+}
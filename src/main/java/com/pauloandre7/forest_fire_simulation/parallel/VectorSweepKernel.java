@@ -0,0 +1,120 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * @author pauloandre7
+ *
+ * Kernel of the full sweep with the Vector API (jdk.incubator.vector). The interior of a row is read in
+ * segments of one vector of state bytes: the 8 neighbor segments are compared with BURNING and combined
+ * in the burning masks of all the lanes at once, the same masks of ForestGrid.burningNeighborMask().
+ *
+ * Most of the cells of a sweep don't change (they are far from the fire), so the states and timers of the
+ * row are copied in bulk and only the lanes that are burning, or vegetation with a burning neighbor, go to
+ * the scalar rules. The ignition test itself stays scalar, because the probability and the random value
+ * must be the same of the scalar kernel. The border rows and columns use the scalar kernel, and so do the
+ * grids off the heap, which have no array of states to load the vectors from.
+ *
+ * This class is only loaded by SweepKernel.select() when the module is enabled.
+ */
+public final class VectorSweepKernel implements SweepKernel {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private static final byte VEGETATION = (byte) CellState.VEGETATION.ordinal();
+    private static final byte BURNING = (byte) CellState.BURNING.ordinal();
+    // the masks of the lanes are read from here by the scalar ignition test, one array for each thread of
+    // the sweep so the rows don't allocate it.
+    private static final ThreadLocal<byte[]> BURNING_MASKS = ThreadLocal.withInitial(() -> new byte[SPECIES.length()]);
+
+    @Override
+    public int updateRow(Forest forest, ForestGrid currentGrid, ForestGrid bufferGrid, 
+                            int row, int startCol, int finalCol){
+        int width = currentGrid.getWidth();
+
+        if(row == 0 || row == currentGrid.getHeight() - 1 || currentGrid.getStateArray() == null){
+            return ScalarSweepKernel.INSTANCE.updateRow(forest, currentGrid, bufferGrid, row, startCol, finalCol);
+        }
+
+        // the first and the last columns need the bounds check of the neighbors.
+        int firstCol = Math.max(startCol, 1);
+        int lastCol = Math.min(finalCol, width - 1);
+
+        int burning = 0;
+        if(startCol < firstCol){
+            burning += SimulationTask.updateCell(forest, currentGrid, bufferGrid, row, startCol);
+        }
+        if(firstCol < lastCol){
+            burning += updateInterior(forest, currentGrid, bufferGrid, row, firstCol, lastCol);
+        }
+        if(lastCol < finalCol && lastCol >= firstCol){
+            burning += SimulationTask.updateCell(forest, currentGrid, bufferGrid, row, lastCol);
+        }
+        return burning;
+    }
+
+    public int getLanes(){
+        return SPECIES.length();
+    }
+
+    private int updateInterior(Forest forest, ForestGrid currentGrid, ForestGrid bufferGrid,
+                                int row, int firstCol, int lastCol){
+        byte[] states = currentGrid.getStateArray();
+        // only the grids of the heap get here, their indexes fit in the array of states.
+        int rowStart = (int) currentGrid.index(row, 0);
+
+        int[] neighborDeltas = currentGrid.getNeighborDeltas();
+        byte[] burningMasks = BURNING_MASKS.get();
+
+        // the cells that don't change are written here, the loop only writes the changes.
+        bufferGrid.copyCells(currentGrid, rowStart + firstCol, lastCol - firstCol);
+
+        int burning = 0;
+        int col = firstCol;
+        int vectorBound = firstCol + SPECIES.loopBound(lastCol - firstCol);
+
+        for(; col < vectorBound; col += SPECIES.length()){
+            int base = rowStart + col;
+            ByteVector segment = ByteVector.fromArray(SPECIES, states, base);
+
+            VectorMask<Byte> burningLanes = segment.eq(BURNING);
+            for(long lanes = burningLanes.toLong(); lanes != 0; lanes &= lanes - 1){
+                int index = base + Long.numberOfTrailingZeros(lanes);
+                bufferGrid.updateBurningState(index);
+                if(bufferGrid.isBurning(index)) burning++;
+            }
+
+            VectorMask<Byte> vegetation = segment.eq(VEGETATION);
+            if(!vegetation.anyTrue()) continue;
+
+            // bit d of each lane is set when the neighbor at the direction d is burning.
+            ByteVector masks = ByteVector.zero(SPECIES);
+            for(int direction = 0; direction < neighborDeltas.length; direction++){
+                ByteVector neighbors = ByteVector.fromArray(SPECIES, states, base + neighborDeltas[direction]);
+                masks = masks.lanewise(VectorOperators.OR, (byte) (1 << direction), neighbors.eq(BURNING));
+            }
+
+            VectorMask<Byte> candidates = vegetation.and(masks.compare(VectorOperators.NE, (byte) 0));
+            if(!candidates.anyTrue()) continue;
+
+            masks.intoArray(burningMasks, 0);
+            for(long lanes = candidates.toLong(); lanes != 0; lanes &= lanes - 1){
+                int lane = Long.numberOfTrailingZeros(lanes);
+                burning += SimulationTask.tryIgnition(forest, bufferGrid, base + lane, burningMasks[lane] & 0xFF);
+            }
+        }
+
+        // the cells after the last full vector.
+        for(; col < lastCol; col++){
+            burning += SimulationTask.updateCell(forest, currentGrid, bufferGrid, row, col);
+        }
+        return burning;
+    }
+}
@@ -0,0 +1,225 @@
+package com.pauloandre7.forest_fire_simulation.partitioned;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ForkJoinPool;
+
+import com.pauloandre7.forest_fire_simulation.config.SimulationProperties;
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+import com.pauloandre7.forest_fire_simulation.parallel.SimulationTask;
+import com.pauloandre7.forest_fire_simulation.parallel.SweepKernel;
+import com.pauloandre7.forest_fire_simulation.parallel.TilingStrategy;
+import com.pauloandre7.forest_fire_simulation.partitioned.HaloProtocol.Connection;
+
+/**
+ * @author pauloandre7
+ *
+ * Worker of a partitioned simulation, a process of its own started by the coordinator (see
+ * PartitionedSimulation) with {@code BandWorker <host> <port> <band>}.
+ *
+ * The worker has a band of rows of the forest plus one row above and one below it (the halo), that belong
+ * to the neighbor bands. At each generation the worker sends its first and last rows to the neighbors and
+ * receives their rows into the halo, then runs the full sweep of the SimulationTask on its own rows. The
+ * halo is never calculated here, it's only read as the neighbors of the border rows.
+ *
+ * The band is a Forest of its own, placed at its first cell in the whole forest (see Forest.placeAt()),
+ * so the random values and the generations are the same of the single process.
+ */
+public final class BandWorker implements AutoCloseable {
+
+    private final Connection coordinator;
+    private final ServerSocket haloServer;
+    private final int band;
+
+    private Forest forest;
+    // Rows of the band grid calculated by this worker, the others are the halo.
+    private int firstOwnedRow;
+    private int ownedRows;
+    private SimulationTask sweepTask;
+    private Connection upper;
+    private Connection lower;
+
+    private BandWorker(Connection coordinator, ServerSocket haloServer, int band){
+        this.coordinator = coordinator;
+        this.haloServer = haloServer;
+        this.band = band;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length != 3){
+            System.err.println("Usage: BandWorker <host> <port> <band>");
+            System.exit(2);
+        }
+
+        try(BandWorker worker = connect(new InetSocketAddress(args[0], Integer.parseInt(args[1])),
+                                        Integer.parseInt(args[2]))){
+            worker.run();
+        }
+    }
+
+    /**
+     * Connects to the coordinator and says where the band above can connect. The port of the halo is
+     * opened first, so the neighbor never connects before it exists.
+     */
+    public static BandWorker connect(InetSocketAddress coordinatorAddress, int band) throws IOException {
+        ServerSocket haloServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        try{
+            Connection coordinator = HaloProtocol.open(new Socket(coordinatorAddress.getAddress(),
+                                                                coordinatorAddress.getPort()));
+            coordinator.out().writeByte(HaloProtocol.HELLO);
+            coordinator.out().writeInt(band);
+            coordinator.out().writeInt(haloServer.getLocalPort());
+            coordinator.out().flush();
+            return new BandWorker(coordinator, haloServer, band);
+        } catch(IOException e){
+            haloServer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Answers the messages of the coordinator until SHUTDOWN. The worker has no state besides the band,
+     * if the coordinator is lost, the worker ends with the IOException.
+     */
+    public void run() throws IOException {
+        DataInputStream in = coordinator.in();
+        DataOutputStream out = coordinator.out();
+
+        HaloProtocol.expect(in, HaloProtocol.ASSIGN);
+        read(in);
+        connectNeighbors(in.readInt());
+        out.writeByte(HaloProtocol.READY);
+        out.flush();
+
+        while(true){
+            byte type = in.readByte();
+            switch(type){
+                case HaloProtocol.STEP -> step(in, out);
+                case HaloProtocol.GATHER -> writeOwnedRows(out);
+                case HaloProtocol.SHUTDOWN -> {
+                    return;
+                }
+                default -> throw new IOException("Band " + band + " received the unknown message " + type + ".");
+            }
+            out.flush();
+        }
+    }
+
+    // The band with its halo rows, its terrain and the parameters of the forest (see PartitionedSimulation.assign()).
+    private void read(DataInputStream in) throws IOException {
+        long firstCellIndex = in.readLong();
+        int rows = in.readInt();
+        int width = in.readInt();
+        this.firstOwnedRow = in.readInt();
+        this.ownedRows = in.readInt();
+        int windDirection = in.readByte();
+        double windSpeed = in.readDouble();
+        int burningTime = in.readInt();
+        double baseBurningProbability = in.readDouble();
+        long randomSeed = in.readLong();
+        long stepCount = in.readLong();
+
+        ForestGrid grid = new ForestGrid(rows, width);
+        HaloProtocol.readStates(in, grid, 0, grid.size());
+        HaloProtocol.readBurningTimes(in, grid, 0, grid.size());
+        for(long index = 0; index < grid.size(); index++){
+            grid.setTerrain(index, in.readFloat(), in.readFloat());
+        }
+
+        // the relief masks of the border rows see the terrain of the halo, like in the whole forest.
+        this.forest = new Forest(grid, windDirection < 0 ? null : Direction.values()[windDirection],
+                                windSpeed, burningTime, baseBurningProbability);
+        forest.restoreRandomState(randomSeed, stepCount);
+        forest.placeAt(firstCellIndex);
+
+        SimulationProperties.Tiling tiling = new SimulationProperties.Tiling();
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        int tileCells = new TilingStrategy(tiling.getL2CacheBytes(), tiling.getTasksPerThread(), tiling.getMinTileCells())
+                            .maxTileCells((long) ownedRows * width, parallelism);
+        this.sweepTask = new SimulationTask(forest, firstOwnedRow, firstOwnedRow + ownedRows, 0, width, tileCells,
+                                            SweepKernel.select(true));
+    }
+
+    // Each worker connects to the band below and accepts the band above, so no one waits for the other.
+    private void connectNeighbors(int lowerPort) throws IOException {
+        if(lowerPort >= 0){
+            lower = HaloProtocol.open(new Socket(InetAddress.getLoopbackAddress(), lowerPort));
+        }
+        if(firstOwnedRow > 0){
+            upper = HaloProtocol.open(haloServer.accept());
+        }
+        haloServer.close();
+    }
+
+    private void step(DataInputStream in, DataOutputStream out) throws IOException {
+        ForestGrid grid = forest.getGrid();
+
+        // the ignitions come first, the neighbors must see them in the halo of this generation.
+        int ignitions = in.readInt();
+        for(int i = 0; i < ignitions; i++){
+            grid.startBurning(in.readLong() - forest.getFirstCellIndex(), forest.getBurningTime());
+        }
+
+        exchangeHalos(grid);
+        // the same tree of tasks runs every generation, see SimulationTask.
+        sweepTask.reinitialize();
+        ForkJoinPool.commonPool().invoke(sweepTask);
+        forest.swapBuffers();
+
+        int[] counts = new int[HaloProtocol.STATES];
+        grid = forest.getGrid();
+        long firstIndex = grid.index(firstOwnedRow, 0);
+        for(long index = firstIndex; index < firstIndex + ownedRows * grid.getWidth(); index++){
+            counts[grid.getStateOrdinal(index)]++;
+        }
+
+        out.writeByte(HaloProtocol.STEP_DONE);
+        for(int count : counts) out.writeInt(count);
+    }
+
+    /**
+     * The link with the band above reads before writing, and the link with the band below writes before
+     * reading. So the rows go down the chain of workers and back, and two neighbors never wait to write to
+     * each other at the same time, whatever the size of the rows and of the socket buffers.
+     */
+    private void exchangeHalos(ForestGrid grid) throws IOException {
+        int width = grid.getWidth();
+
+        if(upper != null){
+            HaloProtocol.readStates(upper.in(), grid, grid.index(firstOwnedRow - 1, 0), width);
+            HaloProtocol.writeStates(upper.out(), grid, grid.index(firstOwnedRow, 0), width);
+            upper.out().flush();
+        }
+        if(lower != null){
+            int lastRow = firstOwnedRow + ownedRows - 1;
+            HaloProtocol.writeStates(lower.out(), grid, grid.index(lastRow, 0), width);
+            lower.out().flush();
+            HaloProtocol.readStates(lower.in(), grid, grid.index(lastRow + 1, 0), width);
+        }
+    }
+
+    private void writeOwnedRows(DataOutputStream out) throws IOException {
+        ForestGrid grid = forest.getGrid();
+        long firstIndex = grid.index(firstOwnedRow, 0);
+        long cells = (long) ownedRows * grid.getWidth();
+
+        out.writeByte(HaloProtocol.BAND);
+        HaloProtocol.writeStates(out, grid, firstIndex, cells);
+        HaloProtocol.writeBurningTimes(out, grid, firstIndex, cells);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try(coordinator; haloServer){
+            if(upper != null) upper.close();
+            if(lower != null) lower.close();
+        }
+    }
+}
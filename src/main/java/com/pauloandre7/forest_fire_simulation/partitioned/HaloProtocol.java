@@ -0,0 +1,99 @@
+package com.pauloandre7.forest_fire_simulation.partitioned;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+/**
+ * @author pauloandre7
+ *
+ * Binary messages between the coordinator (PartitionedSimulation) and the workers (BandWorker), and
+ * between neighbor workers. Each message starts with one byte of its type, the numbers are big-endian
+ * (DataOutputStream) and the cells go by column: all the states, then all the timers, then the moisture
+ * and relief of each cell.
+ *
+ * <ul>
+ * <li>HELLO (worker to coordinator): band, port where the worker waits for the band above it.</li>
+ * <li>ASSIGN: the band (see BandWorker.read()), the worker answers READY when its neighbors are connected.</li>
+ * <li>STEP: the ignitions of the band (indexes in the whole forest), the worker answers STEP_DONE with
+ * the amount of cells of each state after the generation.</li>
+ * <li>GATHER: the worker answers BAND with the states and timers of its rows.</li>
+ * <li>SHUTDOWN: the worker closes its connections and exits.</li>
+ * </ul>
+ *
+ * Between the workers there is no type, only the states of one row of the grid (a byte each) at every
+ * generation: the halo.
+ */
+final class HaloProtocol {
+
+    static final byte HELLO = 1;
+    static final byte ASSIGN = 2;
+    static final byte READY = 3;
+    static final byte STEP = 4;
+    static final byte STEP_DONE = 5;
+    static final byte GATHER = 6;
+    static final byte BAND = 7;
+    static final byte SHUTDOWN = 8;
+
+    static final int STATES = CellState.values().length;
+    private static final CellState[] CELL_STATES = CellState.values();
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private HaloProtocol(){
+    }
+
+    // The messages are small and answered right away, so Nagle's algorithm would only add latency.
+    static Connection open(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        return new Connection(socket,
+                            new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_BYTES)),
+                            new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_BYTES)));
+    }
+
+    static void expect(DataInputStream in, byte type) throws IOException {
+        byte received = in.readByte();
+        if(received != type){
+            throw new IOException("Expected the message " + type + " but received " + received + ".");
+        }
+    }
+
+    // States of the cells [firstIndex, firstIndex + length), one byte each.
+    static void writeStates(DataOutputStream out, ForestGrid grid, long firstIndex, long length) throws IOException {
+        for(long index = firstIndex; index < firstIndex + length; index++){
+            out.writeByte(grid.getStateOrdinal(index));
+        }
+    }
+
+    static void readStates(DataInputStream in, ForestGrid grid, long firstIndex, long length) throws IOException {
+        for(long index = firstIndex; index < firstIndex + length; index++){
+            grid.setState(index, CELL_STATES[in.readUnsignedByte()]);
+        }
+    }
+
+    static void writeBurningTimes(DataOutputStream out, ForestGrid grid, long firstIndex, long length) throws IOException {
+        for(long index = firstIndex; index < firstIndex + length; index++){
+            out.writeShort(grid.getBurningTime(index));
+        }
+    }
+
+    static void readBurningTimes(DataInputStream in, ForestGrid grid, long firstIndex, long length) throws IOException {
+        for(long index = firstIndex; index < firstIndex + length; index++){
+            grid.setBurningTime(index, in.readShort());
+        }
+    }
+
+    // A socket with its streams, closed together.
+    record Connection(Socket socket, DataInputStream in, DataOutputStream out) implements AutoCloseable {
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
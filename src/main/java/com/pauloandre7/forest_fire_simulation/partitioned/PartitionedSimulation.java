@@ -0,0 +1,331 @@
+package com.pauloandre7.forest_fire_simulation.partitioned;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+import com.pauloandre7.forest_fire_simulation.partitioned.HaloProtocol.Connection;
+
+/**
+ * @author pauloandre7
+ *
+ * Coordinator of a simulation partitioned among worker processes, for forests that don't fit in the memory
+ * or the cores of one JVM. The grid is split in bands of rows, one for each worker (see BandWorker), and
+ * the workers exchange the rows at the borders of their bands with each other at every generation.
+ *
+ * The coordinator only sends small messages: the start of each generation with the ignitions of the band,
+ * and it waits until every band finished it (the barrier) before the next one. The workers answer with
+ * the amount of cells of each state, so the statistics of the whole forest never need the cells. The cells
+ * only come back to the coordinator when gather() is called.
+ *
+ * A seeded simulation calculates exactly the generations of the single process, for any amount of workers.
+ * Not thread-safe, the steps and the ignitions must come from the same thread or be synchronized.
+ */
+public class PartitionedSimulation implements AutoCloseable {
+
+    private final int width;
+    // First row of each band in the whole forest, plus the height of the forest at the end.
+    private final int[] bandRows;
+    private final List<Connection> workers;
+    private final List<Process> processes;
+
+    // Ignitions for the next step, by band.
+    private final long[][] ignitions;
+    private final int[] ignitionCounts;
+    private final long[] stateCounts = new long[HaloProtocol.STATES];
+    private long generations;
+
+    private PartitionedSimulation(int width, int[] bandRows, List<Connection> workers, List<Process> processes){
+        this.width = width;
+        this.bandRows = bandRows;
+        this.workers = workers;
+        this.processes = processes;
+        this.ignitions = new long[workers.size()][16];
+        this.ignitionCounts = new int[workers.size()];
+    }
+
+    /**
+     * Starts a worker for each band. The worker must connect to the coordinator with
+     * BandWorker.connect(coordinator, band), usually from a process of its own.
+     */
+    @FunctionalInterface
+    public interface WorkerLauncher {
+
+        // Returns the process of the worker, or null when the worker is not a process (it's not waited for).
+        Process launch(InetSocketAddress coordinator, int band) throws IOException;
+    }
+
+    /**
+     * Launches one JVM for each worker, on this machine, with the classpath of this JVM. The workers have
+     * the jvmOptions (like -Xmx) and the options of this JVM that enable the preview and the modules.
+     */
+    public static WorkerLauncher localJvm(List<String> jvmOptions){
+        return (coordinator, band) -> {
+            List<String> command = new ArrayList<>();
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            for(String option : ManagementFactory.getRuntimeMXBean().getInputArguments()){
+                if(option.equals("--enable-preview") || option.startsWith("--add-modules=")) command.add(option);
+            }
+            command.addAll(jvmOptions);
+
+            String classPath = System.getProperty("java.class.path");
+            command.add("-cp");
+            command.add(classPath);
+            if(isBootJar(classPath)){
+                // the packaged application has the classes inside the jar, only its launcher loads them.
+                command.add("-Dloader.main=" + BandWorker.class.getName());
+                command.add("org.springframework.boot.loader.launch.PropertiesLauncher");
+            } else {
+                command.add(BandWorker.class.getName());
+            }
+            command.addAll(List.of(coordinator.getHostString(), String.valueOf(coordinator.getPort()),
+                                    String.valueOf(band)));
+
+            return new ProcessBuilder(command).inheritIO().start();
+        };
+    }
+
+    private static boolean isBootJar(String classPath){
+        if(!classPath.endsWith(".jar") || classPath.contains(File.pathSeparator)) return false;
+
+        try(JarFile jar = new JarFile(classPath)){
+            return jar.getEntry("BOOT-INF/classes/") != null;
+        } catch(IOException e){
+            return false;
+        }
+    }
+
+    /**
+     * Splits the forest in bands of rows, launches the workers and sends them their bands, with the seed
+     * and the generation counter of the forest. The forest itself is not changed by the simulation.
+     *
+     * @throws IllegalArgumentException if there are more workers than rows.
+     * @throws IOException if a worker doesn't connect in time or fails.
+     */
+    public static PartitionedSimulation start(Forest forest, int workerCount, WorkerLauncher launcher,
+                                            Duration timeout) throws IOException {
+        if(workerCount < 1 || workerCount > forest.getHeight()){
+            throw new IllegalArgumentException("The workers must be between 1 and the rows of the forest.");
+        }
+
+        int[] bandRows = new int[workerCount + 1];
+        for(int band = 0; band <= workerCount; band++){
+            bandRows[band] = (int) ((long) forest.getHeight() * band / workerCount);
+        }
+
+        Connection[] workers = new Connection[workerCount];
+        int[] haloPorts = new int[workerCount];
+        List<Process> processes = new ArrayList<>();
+        PartitionedSimulation simulation = null;
+
+        try(ServerSocket server = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress())){
+            int timeoutMillis = (int) Math.min(Integer.MAX_VALUE, timeout.toMillis());
+            server.setSoTimeout(timeoutMillis);
+
+            InetSocketAddress address = new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+            for(int band = 0; band < workerCount; band++){
+                Process process = launcher.launch(address, band);
+                if(process != null) processes.add(process);
+            }
+
+            // the workers connect in any order, each one says its band.
+            for(int i = 0; i < workerCount; i++){
+                Connection worker = HaloProtocol.open(server.accept());
+                worker.socket().setSoTimeout(timeoutMillis);
+                HaloProtocol.expect(worker.in(), HaloProtocol.HELLO);
+                int band = worker.in().readInt();
+                if(band < 0 || band >= workerCount || workers[band] != null){
+                    worker.close();
+                    throw new IOException("A worker connected with the invalid band " + band + ".");
+                }
+                workers[band] = worker;
+                haloPorts[band] = worker.in().readInt();
+            }
+
+            simulation = new PartitionedSimulation(forest.getWidth(), bandRows, Arrays.asList(workers), processes);
+            for(int band = 0; band < workerCount; band++){
+                simulation.assign(forest, band, band + 1 < workerCount ? haloPorts[band + 1] : -1);
+            }
+            for(Connection worker : workers){
+                HaloProtocol.expect(worker.in(), HaloProtocol.READY);
+                // a generation of a big band can take any time, only the start has a limit.
+                worker.socket().setSoTimeout(0);
+            }
+            return simulation;
+
+        } catch(IOException | RuntimeException e){
+            if(simulation != null){
+                simulation.close();
+            } else {
+                for(Connection worker : workers){
+                    if(worker != null) worker.close();
+                }
+                processes.forEach(Process::destroyForcibly);
+            }
+            if(e instanceof SocketTimeoutException){
+                throw new IOException("The workers didn't connect in " + timeout.toMillis() + " ms.", e);
+            }
+            throw e;
+        }
+    }
+
+    // The rows of the band and the rows of the neighbors around it, with the terrain and the parameters.
+    private void assign(Forest forest, int band, int lowerPort) throws IOException {
+        ForestGrid grid = forest.getGrid();
+        int firstRow = Math.max(0, bandRows[band] - 1);
+        int lastRow = Math.min(forest.getHeight(), bandRows[band + 1] + 1);
+        long firstIndex = grid.index(firstRow, 0);
+        long cells = (long) (lastRow - firstRow) * width;
+
+        DataOutputStream out = workers.get(band).out();
+        out.writeByte(HaloProtocol.ASSIGN);
+        out.writeLong(firstIndex);
+        out.writeInt(lastRow - firstRow);
+        out.writeInt(width);
+        out.writeInt(bandRows[band] - firstRow);
+        out.writeInt(bandRows[band + 1] - bandRows[band]);
+        out.writeByte(forest.getWindDirection() == null ? -1 : forest.getWindDirection().ordinal());
+        out.writeDouble(forest.getWindSpeed());
+        out.writeInt(forest.getBurningTime());
+        out.writeDouble(forest.getBaseBurningProbability());
+        out.writeLong(forest.getRandomSeed());
+        out.writeLong(forest.getStepCount());
+
+        HaloProtocol.writeStates(out, grid, firstIndex, cells);
+        HaloProtocol.writeBurningTimes(out, grid, firstIndex, cells);
+        for(long index = firstIndex; index < firstIndex + cells; index++){
+            out.writeFloat((float) grid.getMoisture(index));
+            out.writeFloat((float) grid.getRelief(index));
+        }
+        out.writeInt(lowerPort);
+        out.flush();
+    }
+
+    /**
+     * Ignites the cell (index in the whole forest) at the start of the next generation, like the
+     * ignitions of the single process.
+     */
+    public void ignite(long index){
+        int band = bandOf((int) (index / width));
+        if(ignitionCounts[band] == ignitions[band].length){
+            ignitions[band] = Arrays.copyOf(ignitions[band], ignitions[band].length * 2);
+        }
+        ignitions[band][ignitionCounts[band]++] = index;
+    }
+
+    public boolean hasIgnitions(){
+        return Arrays.stream(ignitionCounts).anyMatch(count -> count > 0);
+    }
+
+    private int bandOf(int row){
+        int band = Arrays.binarySearch(bandRows, row);
+        // a row inside a band is not at the array, the search returns -(next band start) - 1.
+        return band >= 0 ? band : -band - 2;
+    }
+
+    /**
+     * Calculates one generation in all the bands and waits for all of them. Returns the burning cells
+     * of the whole forest.
+     */
+    public long step() throws IOException {
+        for(int band = 0; band < workers.size(); band++){
+            DataOutputStream out = workers.get(band).out();
+            out.writeByte(HaloProtocol.STEP);
+            out.writeInt(ignitionCounts[band]);
+            for(int i = 0; i < ignitionCounts[band]; i++) out.writeLong(ignitions[band][i]);
+            out.flush();
+            ignitionCounts[band] = 0;
+        }
+
+        Arrays.fill(stateCounts, 0);
+        for(Connection worker : workers){
+            HaloProtocol.expect(worker.in(), HaloProtocol.STEP_DONE);
+            for(int state = 0; state < stateCounts.length; state++) stateCounts[state] += worker.in().readInt();
+        }
+        generations++;
+
+        return getCount(CellState.BURNING);
+    }
+
+    // Cells of the state at the last generation, 0 before the first one.
+    public long getCount(CellState state){
+        return stateCounts[state.ordinal()];
+    }
+
+    // Generations calculated since the start.
+    public long getGenerations(){
+        return generations;
+    }
+
+    public int getWorkerCount(){
+        return workers.size();
+    }
+
+    /**
+     * Copies the states and timers of the current generation of every band into the grid, which must
+     * have the size of the forest. The terrain is not sent back, it never changes.
+     */
+    public void gather(ForestGrid grid) throws IOException {
+        for(Connection worker : workers){
+            worker.out().writeByte(HaloProtocol.GATHER);
+            worker.out().flush();
+        }
+
+        for(int band = 0; band < workers.size(); band++){
+            Connection worker = workers.get(band);
+            long firstIndex = grid.index(bandRows[band], 0);
+            long cells = (long) (bandRows[band + 1] - bandRows[band]) * width;
+
+            HaloProtocol.expect(worker.in(), HaloProtocol.BAND);
+            HaloProtocol.readStates(worker.in(), grid, firstIndex, cells);
+            HaloProtocol.readBurningTimes(worker.in(), grid, firstIndex, cells);
+        }
+    }
+
+    /**
+     * Stops the workers. The processes have some seconds to exit after the SHUTDOWN, then they are killed.
+     */
+    @Override
+    public void close(){
+        for(Connection worker : workers){
+            try{
+                worker.out().writeByte(HaloProtocol.SHUTDOWN);
+                worker.out().flush();
+            } catch(IOException e){
+                // the worker is already gone.
+            }
+        }
+
+        for(Connection worker : workers){
+            try{
+                worker.close();
+            } catch(IOException e){
+                // nothing else to release.
+            }
+        }
+
+        for(Process process : processes){
+            try{
+                if(!process.waitFor(5, TimeUnit.SECONDS)) process.destroyForcibly();
+            } catch(InterruptedException e){
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
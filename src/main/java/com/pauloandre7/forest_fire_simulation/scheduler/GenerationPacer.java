@@ -0,0 +1,78 @@
+package com.pauloandre7.forest_fire_simulation.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author pauloandre7
+ *
+ * Pace of the generations of one simulation. With a target of N generations per second, a generation
+ * is due every 1/N seconds from the previous one: the time spent calculating a step is taken from the
+ * delay until the next one, so the rate doesn't depend on the size of the forest while the step is
+ * shorter than the period.
+ *
+ * A step longer than the period is an overrun. The next step starts right away, but the missed starts
+ * are not recovered with a burst of generations, the simulation just runs slower than the target.
+ * A target of 0 means as fast as possible, the simulation is always due.
+ *
+ * Stepped only by the scheduler thread, the rate is set by the requests when the simulation starts.
+ */
+public class GenerationPacer {
+
+    private volatile long periodNanos;
+    private volatile long nextStepNanos;
+
+    public GenerationPacer(double generationsPerSecond){
+        setRate(generationsPerSecond);
+    }
+
+    /**
+     * Changes the target rate, the next step is due right away.
+     *
+     * @throws IllegalArgumentException if the rate is negative.
+     */
+    public void setRate(double generationsPerSecond){
+        if(generationsPerSecond < 0 || Double.isNaN(generationsPerSecond)){
+            throw new IllegalArgumentException("The generations per second can't be negative.");
+        }
+        this.periodNanos = generationsPerSecond == 0 ? 0
+                            : (long) (TimeUnit.SECONDS.toNanos(1) / generationsPerSecond);
+        this.nextStepNanos = System.nanoTime();
+    }
+
+    public double getRate(){
+        long period = periodNanos;
+        return period == 0 ? 0 : (double) TimeUnit.SECONDS.toNanos(1) / period;
+    }
+
+    public boolean isUnbounded(){
+        return periodNanos == 0;
+    }
+
+    // nanoTime can overflow, so the times are compared by their difference.
+    public boolean isDue(long now){
+        return now - nextStepNanos >= 0;
+    }
+
+    public long getNextStepNanos(){
+        return nextStepNanos;
+    }
+
+    /**
+     * Schedules the next step after one that started at stepStart and finished at stepEnd.
+     * Returns true if the step took longer than the period.
+     */
+    public boolean completeStep(long stepStart, long stepEnd){
+        long period = periodNanos;
+        long due = nextStepNanos;
+        // a step that started late because the simulation was stopped or waited for the others
+        // doesn't make the next ones come sooner to catch up.
+        if(stepStart - due > period) due = stepStart;
+        nextStepNanos = due + period;
+
+        if(period > 0 && stepEnd - nextStepNanos > 0){
+            nextStepNanos = stepEnd;
+            return true;
+        }
+        return false;
+    }
+}
@@ -1,32 +1,134 @@
 package com.pauloandre7.forest_fire_simulation.scheduler;
 
-import org.springframework.scheduling.annotation.Scheduled;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Component;
 
+import com.pauloandre7.forest_fire_simulation.config.SimulationProperties;
+import com.pauloandre7.forest_fire_simulation.metrics.SimulationMetrics;
+import com.pauloandre7.forest_fire_simulation.service.CheckpointService;
+import com.pauloandre7.forest_fire_simulation.service.ForestStreamPublisher;
 import com.pauloandre7.forest_fire_simulation.service.SimulationService;
+import com.pauloandre7.forest_fire_simulation.service.SimulationSessionManager;
 
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 
 /**
  * @author pauloandre7
  * 
- * This class will be managed by Spring Boot, which will recognize it through 
- * the @component bean and use it to control the calculateNextGeneration()
- * method every 500 ms (time specified in the @Scheduled annotation).
+ * This class will be managed by Spring Boot, which starts its thread with the application and stops it
+ * at the shutdown. The thread calculates the generations of the default simulation and of the sessions,
+ * each one at its own target rate (see GenerationPacer): every step is measured and the thread sleeps
+ * only until the next simulation is due, so a small forest can run as fast as it was asked and a large
+ * one that can't keep its rate is counted as an overrun instead of silently drifting.
+ * The default simulation is one more participant of the fair share of the SimulationSessionManager, so
+ * its steps are charged like the ones of the sessions and run on the same pool.
+ * After each generation, the changes are pushed to the viewers of the stream, unless they are still
+ * receiving the previous one.
+ * Between the generations, the CheckpointService can copy the grid for a checkpoint.
  */
+@Slf4j
 @Component
-@RequiredArgsConstructor // Lombok will add the constructor for final's attributes
-public class SimulationScheduler {
+public class SimulationScheduler implements SmartLifecycle {
     
     private final SimulationService service;
+    private final ForestStreamPublisher streamPublisher;
+    private final SimulationSessionManager sessionManager;
+
+    private final SimulationMetrics metrics;
+    private final CheckpointService checkpointService;
+    private final long idleDelayNanos;
+
+    // set by the step of the default simulation, which runs at a thread of the pool.
+    private volatile boolean defaultGenerationCalculated;
+    private volatile Thread thread;
+
+    public SimulationScheduler(SimulationService service, ForestStreamPublisher streamPublisher,
+                                SimulationSessionManager sessionManager, SimulationMetrics metrics,
+                                CheckpointService checkpointService, SimulationProperties properties){
+        this.service = service;
+        this.streamPublisher = streamPublisher;
+        this.sessionManager = sessionManager;
+        this.metrics = metrics;
+        this.checkpointService = checkpointService;
+        this.idleDelayNanos = TimeUnit.MILLISECONDS.toNanos(properties.getScheduler().getIdleDelayMillis());
+        sessionManager.setDefaultSimulation(service, this::publishGeneration);
+    }
+
+    private void publishGeneration(){
+        long publishStart = System.nanoTime();
+        if(!streamPublisher.publishGeneration()) metrics.getSkippedPublications().increment();
+        metrics.getPublishTimer().record(System.nanoTime() - publishStart, TimeUnit.NANOSECONDS);
+        defaultGenerationCalculated = true;
+    }
+
+    /**
+     * Calculates the generations that are due now. Returns the time (System.nanoTime()) of the
+     * next generation that will be due.
+     */
+    public long tick(){
+        long tickStart = System.nanoTime();
+        defaultGenerationCalculated = false;
+
+        // the default simulation and the sessions, it returns when all the steps of the tick are done.
+        sessionManager.runScheduledGenerations();
+        checkpointService.afterTick(defaultGenerationCalculated);
+
+        long tickEnd = System.nanoTime();
+        metrics.recordTick(tickEnd - tickStart);
+
+        long next = sessionManager.getNextStepNanos(tickEnd + idleDelayNanos);
+        if(service.isScheduledRunning() && service.getPacer().getNextStepNanos() - next < 0){
+            next = service.getPacer().getNextStepNanos();
+        }
+        return next;
+    }
 
-    @Scheduled(fixedDelay=500)
-    public void tick(){
+    private void run(){
+        while(thread == Thread.currentThread()){
+            long next;
+            try{
+                next = tick();
+            } catch(RuntimeException e){
+                // the thread must survive a failed tick, the next one tries again.
+                log.error("The tick of the scheduler failed.", e);
+                next = System.nanoTime() + idleDelayNanos;
+            }
 
-        if(service.isRunning()){
-            service.calculateNextGeneration();
-            service.iterateGeneration();
+            long delay = next - System.nanoTime();
+            if(delay > 0) LockSupport.parkNanos(this, delay);
         }
     }
+
+    @Override
+    public synchronized void start(){
+        if(thread != null) return;
+
+        thread = new Thread(this::run, "simulation-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop(){
+        Thread current = thread;
+        if(current == null) return;
+
+        thread = null;
+        LockSupport.unpark(current);
+        try{
+            // the generation being calculated is finished before the services are destroyed.
+            current.join(TimeUnit.SECONDS.toMillis(10));
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning(){
+        return thread != null;
+    }
 }
@@ -0,0 +1,190 @@
+package com.pauloandre7.forest_fire_simulation.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongPredicate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.pauloandre7.forest_fire_simulation.codec.ForestCheckpoint;
+import com.pauloandre7.forest_fire_simulation.config.SimulationProperties;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author pauloandre7
+ *
+ * Checkpoints of the default simulation (see ForestCheckpoint).
+ *
+ * The grid can only be copied between two generations, so while the simulation runs the copy is taken
+ * by the scheduler thread: a request of the endpoint waits for the next tick, and the automatic checkpoints
+ * are taken every simulation.checkpoint.interval generations. The copy is only the states and timers
+ * (the terrain doesn't change), and the file is written by another thread, so the ticks don't wait for
+ * the disk. When the simulation is stopped the checkpoint is written at the calling thread. The generations
+ * of a batch run are not calculated by the scheduler, its copy waits for the step of the batch instead.
+ *
+ * The copy is closed after the file is written, so an off-heap copy doesn't keep its memory until the
+ * collector finds it. A checkpoint of a big forest is mapped back off the heap (see ForestCheckpoint).
+ */
+@Slf4j
+@Service
+public class CheckpointService {
+
+    // Time that a request waits for the scheduler to take the copy and for the file to be written.
+    private static final long REQUEST_TIMEOUT_SECONDS = 60;
+
+    private final SimulationService service;
+    private final Path path;
+    private final int interval;
+    // Tells by the amount of cells if a restored grid is mapped off the heap.
+    private final LongPredicate offHeap;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    // true while an automatic checkpoint is written, the next one is skipped instead of queued.
+    private final AtomicBoolean writing = new AtomicBoolean();
+    // Request of the endpoint while the simulation is running, completed after the next tick.
+    private final AtomicReference<CompletableFuture<ForestCheckpoint>> pendingRequest = new AtomicReference<>();
+
+    @Autowired
+    public CheckpointService(SimulationService service, SimulationProperties properties){
+        this(service, Path.of(properties.getCheckpoint().getPath()), properties.getCheckpoint().getInterval(),
+            properties.getStorage()::isOffHeap);
+    }
+
+    public CheckpointService(SimulationService service, Path path, int interval){
+        this(service, path, interval, cells -> false);
+    }
+
+    public CheckpointService(SimulationService service, Path path, int interval, LongPredicate offHeap){
+        this.service = service;
+        this.path = path;
+        this.interval = interval;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Writes a checkpoint of the current generation and returns it when the file is complete.
+     */
+    public ForestCheckpoint checkpoint() throws IOException {
+        CompletableFuture<ForestCheckpoint> request;
+
+        // the service lock keeps the simulation from being started during the copy.
+        synchronized(service){
+            if(!service.isRunning()){
+                ForestCheckpoint checkpoint = takeSnapshot();
+                try{
+                    checkpoint.write(path);
+                } finally {
+                    checkpoint.grid().close();
+                }
+                return checkpoint;
+            }
+            request = pendingRequest.updateAndGet(current -> current != null ? current : new CompletableFuture<>());
+        }
+
+        try{
+            return request.get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("The checkpoint was interrupted.", e);
+        } catch(TimeoutException e){
+            throw new IOException("The checkpoint was not written in time.", e);
+        } catch(ExecutionException e){
+            if(e.getCause() instanceof IOException ioException) throw ioException;
+            if(e.getCause() instanceof IllegalStateException stateException) throw stateException;
+            throw new IOException("The checkpoint failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Called by the scheduler after each tick, when the grid is not being calculated.
+     */
+    public void afterTick(boolean generationCalculated){
+        CompletableFuture<ForestCheckpoint> request = pendingRequest.getAndSet(null);
+        boolean automatic = generationCalculated && interval > 0 && service.getCurrentGeneration() % interval == 0;
+
+        if(request == null && !automatic) return;
+
+        if(request == null && writing.get()){
+            log.warn("Checkpoint of generation {} skipped, the previous one is still being written.",
+                    service.getCurrentGeneration());
+            return;
+        }
+
+        ForestCheckpoint checkpoint;
+        try{
+            checkpoint = takeSnapshot();
+        } catch(IllegalStateException e){
+            if(request != null) request.completeExceptionally(e);
+            return;
+        }
+
+        writing.set(true);
+        writer.execute(() -> {
+            try{
+                checkpoint.write(path);
+                if(request != null) request.complete(checkpoint);
+            } catch(IOException | RuntimeException e){
+                log.error("The checkpoint of generation {} failed.", checkpoint.currentGeneration(), e);
+                if(request != null) request.completeExceptionally(e);
+            } finally {
+                checkpoint.grid().close();
+                writing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Loads the last checkpoint into the simulation, which must be stopped. With resume, the simulation
+     * continues from the saved generation.
+     */
+    public ForestCheckpoint restore(boolean resume) throws IOException {
+        ForestCheckpoint checkpoint = ForestCheckpoint.read(path, offHeap);
+
+        synchronized(service){
+            Forest forest = checkpoint.toForest();
+            try{
+                service.restoreForest(forest, checkpoint.currentGeneration(), checkpoint.maxGeneration());
+            } catch(RuntimeException e){
+                // the forest was not loaded, its grid is released here.
+                forest.close();
+                throw e;
+            }
+            if(resume) service.resumeSimulation();
+        }
+        return checkpoint;
+    }
+
+    public Path getPath(){
+        return path;
+    }
+
+    public boolean isWriting(){
+        return writing.get();
+    }
+
+    // Copies the states and timers of the current generation, the terrain is shared with the forest and
+    // stays allocated until the copy is closed, after the file is written, even if the forest is replaced. A batch run calculates its generations at its
+    // own thread, the copy waits for the end of its step (see SimulationService.betweenGenerations()).
+    private ForestCheckpoint takeSnapshot(){
+        return service.betweenGenerations(forest -> ForestCheckpoint.of(forest, forest.getGrid().createBuffer(),
+                                                    service.getCurrentGeneration(), service.getMaxGeneration()));
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        // the checkpoint being written is finished, so the file is not lost at the shutdown.
+        writer.shutdown();
+    }
+}
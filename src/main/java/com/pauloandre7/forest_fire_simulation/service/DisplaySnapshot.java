@@ -0,0 +1,19 @@
+package com.pauloandre7.forest_fire_simulation.service;
+
+/**
+ * @author pauloandre7
+ *
+ * The forest of one generation already serialized for the display (JSON or packed). It's built once for
+ * each version of the forest and shared by all the requests of that version, so the body must never be
+ * modified.
+ *
+ * The ETag has the generation and the version of the display, which changes with every generation and
+ * with the changes between them (ignitions, a new forest, start and stop), plus the format, because the
+ * JSON and the packed bodies are different representations of the same forest.
+ */
+public record DisplaySnapshot(long version, int generation, String eTag, byte[] body) {
+
+    static DisplaySnapshot of(long version, int generation, String format, byte[] body){
+        return new DisplaySnapshot(version, generation, "\"" + generation + "-" + version + "-" + format + "\"", body);
+    }
+}
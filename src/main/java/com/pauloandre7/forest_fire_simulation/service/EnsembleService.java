@@ -0,0 +1,131 @@
+package com.pauloandre7.forest_fire_simulation.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.pauloandre7.forest_fire_simulation.dto.EnsembleRequest;
+import com.pauloandre7.forest_fire_simulation.dto.EnsembleResultDTO;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.parallel.CellRandom;
+import com.pauloandre7.forest_fire_simulation.parallel.ReplicaRunner;
+import com.pauloandre7.forest_fire_simulation.parallel.ScalarSweepKernel;
+import com.pauloandre7.forest_fire_simulation.parallel.SweepKernel;
+
+/**
+ * @author pauloandre7
+ *
+ * Monte Carlo ensemble: runs many replicas of the same forest and ignition point and returns the
+ * probability of each cell to burn.
+ *
+ * The replicas are divided among the threads of the shared pool. Each thread has one ReplicaRunner and
+ * runs its replicas one after the other, so the memory depends on the amount of threads and not on the
+ * amount of replicas: the terrain and the coefficients are shared, and each runner only has two state
+ * grids and the burn counts. The final grids are not kept.
+ *
+ * Each replica has its own seed derived from the ensemble seed, so the result is the same whatever
+ * thread runs each replica.
+ */
+@Service
+public class EnsembleService {
+
+    private final ForkJoinPool simulationExecutor;
+    private final SweepKernel sweepKernel;
+
+    public EnsembleService(ForkJoinPool simulationExecutor){
+        this(simulationExecutor, ScalarSweepKernel.INSTANCE);
+    }
+
+    @Autowired
+    public EnsembleService(ForkJoinPool simulationExecutor, SweepKernel sweepKernel){
+        this.simulationExecutor = simulationExecutor;
+        this.sweepKernel = sweepKernel;
+    }
+
+    public EnsembleResultDTO runEnsemble(EnsembleRequest request){
+        if(request.getReplicas() <= 0){
+            throw new IllegalArgumentException("The ensemble needs at least one replica.");
+        }
+        if(request.getMaxGeneration() < 0){
+            throw new IllegalArgumentException("The maxGeneration cannot be negative.");
+        }
+
+        Forest forest = createForest(request);
+        if(forest.getGrid().size() > ReplicaRunner.MAX_CELLS){
+            throw new IllegalArgumentException("The ensemble is limited to forests of " + ReplicaRunner.MAX_CELLS + " cells.");
+        }
+        long seed = request.getSeed() != null ? request.getSeed() : ThreadLocalRandom.current().nextLong();
+
+        int numberOfWorkers = Math.min(simulationExecutor.getParallelism(), request.getReplicas());
+        // the replicas are taken one by one, so a thread with shorter fires runs more of them.
+        AtomicInteger nextReplica = new AtomicInteger();
+
+        List<Callable<ReplicaRunner>> workers = new ArrayList<>(numberOfWorkers);
+        long[] generationsOfWorker = new long[numberOfWorkers];
+
+        for(int i = 0; i < numberOfWorkers; i++){
+            int worker = i;
+            workers.add(() -> {
+                // created at the thread of the pool, each one has its own grids.
+                ReplicaRunner runner = new ReplicaRunner(forest, SimulationService.DENSE_SWEEP_RATIO, sweepKernel);
+
+                int replica;
+                while((replica = nextReplica.getAndIncrement()) < request.getReplicas()){
+                    generationsOfWorker[worker] += runner.run(CellRandom.deriveSeed(seed, replica), 
+                                                            request.getMaxGeneration());
+                }
+                return runner;
+            });
+        }
+
+        long start = System.nanoTime();
+        int[] burnCounts = new int[(int) forest.getGrid().size()];
+
+        try{
+            for(Future<ReplicaRunner> result : simulationExecutor.invokeAll(workers)){
+                int[] workerCounts = result.get().getBurnCounts();
+                for(int index = 0; index < burnCounts.length; index++) burnCounts[index] += workerCounts[index];
+            }
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The ensemble was interrupted.", e);
+        } catch(ExecutionException e){
+            throw new IllegalStateException("The ensemble failed.", e.getCause());
+        }
+
+        long wallTime = System.nanoTime() - start;
+
+        long replicaGenerations = 0;
+        for(long generations : generationsOfWorker) replicaGenerations += generations;
+
+        float[][] burnProbability = new float[forest.getHeight()][forest.getWidth()];
+        for(int row = 0; row < forest.getHeight(); row++){
+            for(int col = 0; col < forest.getWidth(); col++){
+                burnProbability[row][col] = (float) burnCounts[(int) forest.getGrid().index(row, col)] 
+                                            / request.getReplicas();
+            }
+        }
+
+        return new EnsembleResultDTO(forest.getHeight(), forest.getWidth(), request.getReplicas(), 
+                                    replicaGenerations, wallTime / 1_000_000,
+                                    replicaGenerations / (Math.max(wallTime, 1) / 1e9), burnProbability);
+    }
+
+    private static Forest createForest(EnsembleRequest request){
+        if((request.getCustomForest() == null) == (request.getRandomForest() == null)){
+            throw new IllegalArgumentException("The ensemble needs one forest, custom or random.");
+        }
+
+        return request.getCustomForest() != null 
+                ? SimulationService.createCustomForest(request.getCustomForest())
+                : SimulationService.createRandomForest(request.getRandomForest());
+    }
+}
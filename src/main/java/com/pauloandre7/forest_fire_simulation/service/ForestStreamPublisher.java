@@ -0,0 +1,183 @@
+package com.pauloandre7.forest_fire_simulation.service;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.pauloandre7.forest_fire_simulation.codec.GenerationDeltaEncoder;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author pauloandre7
+ *
+ * Pushes each generation to the viewers of the forest with Server-Sent Events, so they don't need to poll
+ * the whole grid. A viewer receives a "keyframe" event with the whole grid when it connects, and a "delta"
+ * event with only the changed cells after each generation. The frames are the binary layout of
+ * GenerationDeltaEncoder, in base64 because SSE is a text protocol.
+ *
+ * The frames are encoded once by the thread that calculated the generation, a thread of the simulation pool
+ * (see SimulationSessionManager), while the grid can't change, and sent by another thread, so a slow viewer
+ * doesn't delay the simulation. If the sender is still busy when the next
+ * generation arrives, that generation is skipped without being encoded: the simulation keeps its rate
+ * instead of waiting for the viewers, and the viewers that missed a delta get a keyframe of the next
+ * generation that is published.
+ */
+@Component
+public class ForestStreamPublisher {
+
+    private final SimulationService service;
+
+    private final List<Viewer> viewers = new CopyOnWriteArrayList<>();
+    private final ExecutorService sender;
+    // true while the sender is sending the frames of a generation to the viewers.
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    // Used by publishGeneration() only, the steps of the default simulation never run at the same time.
+    private Forest lastForest;
+    private long sequence;
+
+    @Autowired
+    public ForestStreamPublisher(SimulationService service){
+        this(service, Executors.newSingleThreadExecutor());
+    }
+
+    // The tests run the tasks of the sender themselves, so they know when the frames were sent.
+    ForestStreamPublisher(SimulationService service, ExecutorService sender){
+        this.service = service;
+        this.sender = sender;
+    }
+
+    public SseEmitter subscribe(){
+        // 0 means no timeout, the stream is open while the viewer is connected.
+        return subscribe(new SseEmitter(0L));
+    }
+
+    SseEmitter subscribe(SseEmitter emitter){
+        Viewer viewer = new Viewer(emitter);
+
+        emitter.onCompletion(() -> viewers.remove(viewer));
+        emitter.onTimeout(() -> viewers.remove(viewer));
+        emitter.onError(error -> viewers.remove(viewer));
+        viewers.add(viewer);
+
+        // When the simulation is stopped there is no next generation, so the grid is sent now.
+        // Otherwise, the keyframe goes with the next generation.
+        if(!service.isRunning()){
+            Forest forest = service.getCurrentForest();
+            if(forest != null && !forest.isEmpty()){
+                byte[] keyframe = GenerationDeltaEncoder.encodeKeyframe(forest.getGrid(),
+                                                    service.getCurrentGeneration(), false);
+                sender.execute(() -> send(viewer, "keyframe", keyframe, -1));
+            }
+        }
+
+        return emitter;
+    }
+
+    /**
+     * Called after each generation of the default simulation, by the thread that calculated it (the
+     * SimulationScheduler adds it to the SimulationSessionManager). It must not run at the same time as
+     * the next one.
+     * Returns false if the generation was skipped because the viewers were still receiving the last one.
+     */
+    public boolean publishGeneration(){
+        Forest forest = service.getCurrentForest();
+
+        if(forest != lastForest){
+            // the deltas of the old forest don't apply to the new one.
+            lastForest = forest;
+            for(Viewer viewer : viewers) viewer.needsKeyframe = true;
+        }
+        sequence++;
+
+        if(viewers.isEmpty()) return true;
+        // the viewers can't keep up with the generations, encoding this one would only be thrown away.
+        if(sending.get()) return false;
+
+        // only read here: a viewer that connects later, or that misses this generation, gets a keyframe.
+        long[] changedCells = service.getChangedCells();
+        int generation = service.getCurrentGeneration();
+        boolean running = service.isRunning();
+
+        byte[] delta = GenerationDeltaEncoder.encodeDelta(forest.getGrid(), changedCells, changedCells.length,
+                                                        generation, running);
+        byte[] keyframe = null;
+        for(Viewer viewer : viewers){
+            if(viewer.needsKeyframe || viewer.lastSequence != sequence - 1){
+                keyframe = GenerationDeltaEncoder.encodeKeyframe(forest.getGrid(), generation, running);
+                break;
+            }
+        }
+
+        Frames frames = new Frames(sequence, delta, keyframe);
+        sending.set(true);
+        sender.execute(() -> sendFrames(frames));
+        return true;
+    }
+
+    private void sendFrames(Frames frames){
+        try{
+            for(Viewer viewer : viewers){
+                boolean fellBehind = viewer.needsKeyframe || viewer.lastSequence != frames.sequence - 1;
+
+                if(!fellBehind){
+                    send(viewer, "delta", frames.delta, frames.sequence);
+                } else if(frames.keyframe != null){
+                    viewer.needsKeyframe = false;
+                    send(viewer, "keyframe", frames.keyframe, frames.sequence);
+                } else {
+                    // this viewer connected after the frames were encoded, it gets the keyframe of the next one.
+                    viewer.needsKeyframe = true;
+                }
+            }
+        } finally {
+            sending.set(false);
+        }
+    }
+
+    private void send(Viewer viewer, String eventName, byte[] frame, long frameSequence){
+        try{
+            viewer.emitter.send(SseEmitter.event()
+                                    .name(eventName)
+                                    .data(Base64.getEncoder().encodeToString(frame)));
+            if(frameSequence >= 0) viewer.lastSequence = frameSequence;
+        } catch(IOException | IllegalStateException e){
+            // the viewer disconnected.
+            viewers.remove(viewer);
+            viewer.emitter.completeWithError(e);
+        }
+    }
+
+    public int getViewerCount(){
+        return viewers.size();
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        sender.shutdownNow();
+        for(Viewer viewer : viewers) viewer.emitter.complete();
+    }
+
+    // Stream state of one connected viewer.
+    @RequiredArgsConstructor
+    private static class Viewer {
+        private final SseEmitter emitter;
+        // Sequence of the last frame received, a viewer that missed one needs a keyframe.
+        private volatile long lastSequence = -1;
+        private volatile boolean needsKeyframe = true;
+    }
+
+    private record Frames(long sequence, byte[] delta, byte[] keyframe){
+    }
+}
@@ -1,28 +1,61 @@
 package com.pauloandre7.forest_fire_simulation.service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.pauloandre7.forest_fire_simulation.codec.CustomForestReader;
+import com.pauloandre7.forest_fire_simulation.codec.JsonGridEncoder;
+import com.pauloandre7.forest_fire_simulation.codec.LevelOfDetailEncoder;
+import com.pauloandre7.forest_fire_simulation.codec.PackedGridEncoder;
+import com.pauloandre7.forest_fire_simulation.codec.RegionEncoder;
+import com.pauloandre7.forest_fire_simulation.config.SimulationExecutorConfig;
+import com.pauloandre7.forest_fire_simulation.config.SimulationProperties;
+import com.pauloandre7.forest_fire_simulation.dto.BatchRunResultDTO;
 import com.pauloandre7.forest_fire_simulation.dto.CellCoordinatesRequest;
-import com.pauloandre7.forest_fire_simulation.dto.CellStateDTO;
-import com.pauloandre7.forest_fire_simulation.dto.CurrentForestDTO;
 import com.pauloandre7.forest_fire_simulation.dto.CustomForestRequest;
 import com.pauloandre7.forest_fire_simulation.dto.RandomForestRequest;
+import com.pauloandre7.forest_fire_simulation.dto.ViewportRequest;
 import com.pauloandre7.forest_fire_simulation.exception.EmptyForestException;
-import com.pauloandre7.forest_fire_simulation.model.Cell;
+import com.pauloandre7.forest_fire_simulation.metrics.SimulationMetrics;
 import com.pauloandre7.forest_fire_simulation.model.CellState;
 import com.pauloandre7.forest_fire_simulation.model.Direction;
 import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+import com.pauloandre7.forest_fire_simulation.model.ForestPyramid;
+import com.pauloandre7.forest_fire_simulation.parallel.ExecutionBackend;
+import com.pauloandre7.forest_fire_simulation.parallel.ExecutionBackends;
+import com.pauloandre7.forest_fire_simulation.parallel.FireFrontier;
+import com.pauloandre7.forest_fire_simulation.parallel.FrontierTask;
+import com.pauloandre7.forest_fire_simulation.parallel.MpscQueue;
 import com.pauloandre7.forest_fire_simulation.parallel.SimulationTask;
+import com.pauloandre7.forest_fire_simulation.parallel.SweepKernel;
+import com.pauloandre7.forest_fire_simulation.parallel.TilingStrategy;
+import com.pauloandre7.forest_fire_simulation.partitioned.PartitionedSimulation;
+import com.pauloandre7.forest_fire_simulation.scheduler.GenerationPacer;
+
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * @author pauloandre7
@@ -35,43 +68,198 @@ import com.pauloandre7.forest_fire_simulation.parallel.SimulationTask;
  * managed by SpringBoot. So, to avoid infinite cycles, the service have attributes currentGeneration 
  * and maxGeneration to control the number of cycles.
 */
+@Slf4j
 @Service
 public class SimulationService {
     // one cell has 8 neighbors. each neighbor burning will increase base Prob. in 0.12
-    private final double BASE_BURNING_PROBABILITY = 0.125;
+    static final double BASE_BURNING_PROBABILITY = 0.125;
+    // When the frontier is bigger than this fraction of the grid, the full sweep is cheaper.
+    static final double DENSE_SWEEP_RATIO = 0.25;
+    // Minimum amount of candidates for each frontier task, smaller fronts don't pay the thread handoff.
+    private static final int MIN_CANDIDATES_PER_TASK = 1024;
+    // Commands applied at each generation boundary, the others wait for the next one.
+    private static final int MAX_COMMANDS_PER_GENERATION = 1 << 16;
+    // Largest level of detail view, in blocks.
+    static final int MAX_VIEW_BLOCKS = 1 << 20;
+    // Largest region read cell by cell, the whole forest has the snapshots.
+    static final int MAX_REGION_CELLS = 1 << 22;
+    // Reads of a region that crossed a generation are repeated this many times at most.
+    private static final int REGION_READ_ATTEMPTS = 3;
+
     private Forest currentForest;
-    private final ExecutorService executor;
+    // Tree of tasks of the current forest, reused at every generation.
+    private SimulationTask sweepTask;
+    private FireFrontier frontier;
+    private List<FrontierTask> frontierTasks = List.of();
+    // Used to find the cells changed at the last generation (see getChangedCells()).
+    private boolean lastStepWasFrontier = false;
+    // Commands of the controllers (the ignitions), the HTTP threads only add them to the queue and the
+    // thread that calculates the generations applies them between two generations. The lock is held by
+    // that thread during the step, so the grid is never changed in the middle of a generation.
+    private final MpscQueue<Runnable> commands = new MpscQueue<>();
+    private final ReentrantLock commandLock = new ReentrantLock();
+    // Cells ignited by the commands since the last generation, guarded by the commandLock.
+    private long[] ignitedCells = new long[16];
+    private int ignitedCount;
+    private long[] ignitedBeforeStep = new long[0];
+
+    private final TilingStrategy tilingStrategy;
+    private final SweepKernel sweepKernel;
+    private final ExecutionBackends backends;
+    // Backend of the current forest, picked by its size when the forest is loaded.
+    private ExecutionBackend backend;
+    private final SimulationMetrics metrics;
+
+    // Changes with everything that the display shows, the snapshots of an older version are rebuilt.
+    // It starts at the clock, so the ETags of a restarted application don't match the old ones.
+    private final AtomicLong displayVersion = new AtomicLong(System.currentTimeMillis() << 20);
+    private final Object displayLock = new Object();
+    private volatile DisplaySnapshot jsonSnapshot;
+    private volatile DisplaySnapshot packedSnapshot;
+    // Counts of the states by blocks for the level of detail views (see ForestPyramid). It's built by the
+    // first view and then updated with the cells changed by each generation and ignition, with the
+    // commandLock. The updates and the views synchronize on the pyramid.
+    private volatile ForestLevels levels;
+    // Bounding box of the fire, found once for each version like the snapshots.
+    private volatile DisplaySnapshot fireBoundsSnapshot;
+
+    // Tells if a forest with this amount of cells keeps its grid off the heap, see ForestGrid.
+    private final LongPredicate offHeap;
+    // Workers of the partitioned runs, see runPartitioned().
+    private final PartitionedSimulation.WorkerLauncher workerLauncher;
+    private final int maxWorkers;
+    private final Duration workerStartTimeout;
+    // The partitioned run in progress, its ignitions are sent to the workers.
+    private volatile PartitionedSimulation partitioned;
+    // The batch runs of submitBatch() run on a virtual thread of their own, so no HTTP thread waits for
+    // them. Their steps still use the backend of the forest.
+    private final ExecutorService batchExecutor = Executors.newThreadPerTaskExecutor(
+                                                    Thread.ofVirtual().name("simulation-batch-", 0).factory());
+
+    // Target rate of the scheduled generations, see GenerationPacer.
+    private final GenerationPacer pacer;
+    private final double defaultGenerationsPerSecond;
+    // Burning cells after the last generation, counted by the step itself (the frontier list or the tiles
+    // of the sweep), so there is no scan of the grid only to count them.
+    private volatile long burningCount;
+    // true when the last burning cell went out. The next generations would be equal, so the simulation stops.
+    private volatile boolean extinguished = false;
 
     // volatile tells jvm to read this variable everytime and avoid synchronization bugs
     private volatile boolean isRunning = false;
+    // true while a batch run (runToCompletion(), runPartitioned()) calculates the generations, the scheduler
+    // must not step the forest. It's always set before isRunning, see startBatch().
+    private volatile boolean isBatchRunning = false;
     private volatile int currentGeneration;
     // Basically, define the number of cycles for the simulation.
     private volatile int maxGeneration; 
 
     public SimulationService(){
-        // get the amount of available threads and creates a pool for them
-        int numberOfThreads = Runtime.getRuntime().availableProcessors();
-        executor = Executors.newFixedThreadPool(numberOfThreads);
+        this(new SimulationProperties());
+    }
+
+    // Used when the service is created outside of Spring, it has its own pool and the meters are not exported.
+    public SimulationService(SimulationProperties properties){
+        this(properties, SimulationExecutorConfig.createPool(properties), SimulationMetrics.noop());
+    }
+
+    public SimulationService(SimulationProperties properties, ForkJoinPool simulationExecutor,
+                            SimulationMetrics metrics){
+        this(properties, SimulationExecutorConfig.createBackends(properties, simulationExecutor), metrics);
     }
 
-    public synchronized  void startSimulation(int maxGeneration){
+    /**
+     * The backends are shared by the default simulation and all the sessions (see SimulationSessionManager),
+     * so the amount of threads doesn't grow with the amount of simulations.
+     */
+    @Autowired
+    public SimulationService(SimulationProperties properties, ExecutionBackends backends,
+                            SimulationMetrics metrics){
+        this.backends = backends;
+        this.metrics = metrics;
+
+        SimulationProperties.Tiling tiling = properties.getTiling();
+        tilingStrategy = new TilingStrategy(tiling.getL2CacheBytes(), tiling.getTasksPerThread(), 
+                                            tiling.getMinTileCells());
+        sweepKernel = SimulationExecutorConfig.createKernel(properties);
+        offHeap = properties.getStorage()::isOffHeap;
+
+        SimulationProperties.Partitioned partitionedProperties = properties.getPartitioned();
+        workerLauncher = PartitionedSimulation.localJvm(List.copyOf(partitionedProperties.getWorkerJvmOptions()));
+        maxWorkers = partitionedProperties.getMaxWorkers();
+        workerStartTimeout = Duration.ofMillis(partitionedProperties.getStartTimeoutMillis());
+
+        defaultGenerationsPerSecond = properties.getScheduler().getGenerationsPerSecond();
+        pacer = new GenerationPacer(defaultGenerationsPerSecond);
+    }
+
+    public synchronized void startSimulation(int maxGeneration, Long seed){
+        startSimulation(maxGeneration, seed, null);
+    }
+
+    /**
+     * Starts the simulation. When a seed is given, the ignition randomness restarts from it, so the same
+     * forest and seed always produce the same generations, whatever the amount of threads.
+     * The scheduler calculates generationsPerSecond generations each second (0 is as fast as possible),
+     * without it the rate of simulation.scheduler.generations-per-second is used.
+     *
+     * @throws IllegalArgumentException if generationsPerSecond is negative.
+     */
+    public synchronized void startSimulation(int maxGeneration, Long seed, Double generationsPerSecond){
         if(isRunning){
             throw new IllegalStateException("Simulation is already running.");
         }
+        if(this.currentForest == null){
+            throw new IllegalStateException("The forest wasn't initialized yet.");
+        }
+        pacer.setRate(generationsPerSecond != null ? generationsPerSecond : defaultGenerationsPerSecond);
+        if(seed != null){
+            this.currentForest.reseed(seed);
+        }
         isRunning = true;
+        this.extinguished = false;
+        displayVersion.incrementAndGet();
         this.currentGeneration = 0;
         this.maxGeneration = maxGeneration;
     }
 
-    public synchronized void stopSimulation(){
+    /**
+     * Continues a simulation without resetting the generations, used after the restore of a checkpoint.
+     */
+    public synchronized void resumeSimulation(){
+        if(isRunning){
+            throw new IllegalStateException("Simulation is already running.");
+        }
+        if(this.currentForest == null){
+            throw new IllegalStateException("The forest wasn't initialized yet.");
+        }
+        if(this.currentGeneration >= this.maxGeneration){
+            throw new IllegalStateException("The simulation already reached its maxGeneration.");
+        }
+        isRunning = true;
+        displayVersion.incrementAndGet();
+    }
+
+    // Only a flag, the scheduler sees it at the next generation boundary, so it never waits for a step.
+    public void stopSimulation(){
         isRunning = false;
+        displayVersion.incrementAndGet();
     }
 
     public synchronized void iterateGeneration(){
         currentGeneration++;
+
+        if(extinguished && isRunning){
+            // every next generation is equal to this one, so the counter jumps to the end instead of
+            // calculating them, and the scheduler stops spending time with this simulation.
+            log.info("The fire went out at generation {}, the simulation was stopped.", currentGeneration);
+            if(maxGeneration > currentGeneration) currentGeneration = maxGeneration;
+            stopSimulation();
+        }
         if(currentGeneration == maxGeneration){
             stopSimulation();
         }
+        displayVersion.incrementAndGet();
     }
 
     // with this method, the sheduler will know the current service status
@@ -79,29 +267,574 @@ public class SimulationService {
         return isRunning;
     }
 
-    public CurrentForestDTO getForestForDisplay(){
+    // The scheduler only steps the forest when it is not being calculated by a batch run.
+    public boolean isScheduledRunning(){
+        return isRunning && !isBatchRunning;
+    }
 
-        // To avoid errors by forest that was not initialized.
-        if(this.currentForest == null){
+    // true when the scheduler must calculate the next generation, now is a System.nanoTime().
+    public boolean isScheduledDue(long now){
+        return isScheduledRunning() && pacer.isDue(now);
+    }
+
+    /**
+     * Called by the scheduler after a generation that started at stepStart, it schedules the next one
+     * and counts the generations that took longer than the period of the target rate.
+     */
+    public void completeScheduledStep(long stepStart){
+        if(pacer.completeStep(stepStart, System.nanoTime())){
+            metrics.getGenerationOverruns().increment();
+        }
+    }
+
+    public GenerationPacer getPacer(){
+        return pacer;
+    }
+
+    /**
+     * Calculates the generations back to back, without the delay of the scheduler, until maxGeneration is
+     * reached or the fire dies out. It runs at the calling thread (the steps still use the pool) and
+     * can be cancelled by stopSimulation(). Nothing is published while it runs.
+     */
+    public BatchRunResultDTO runToCompletion(int maxGeneration, Long seed){
+        checkBatch(maxGeneration);
+        startBatch(maxGeneration, seed);
+        return completeBatch(maxGeneration);
+    }
+
+    /**
+     * Same as runToCompletion(), but only the start runs at the calling thread, so its exceptions are
+     * thrown right away. The generations are calculated by a task of the batch executor, the future
+     * completes with the result at the end.
+     */
+    public CompletableFuture<BatchRunResultDTO> submitBatch(int maxGeneration, Long seed){
+        checkBatch(maxGeneration);
+        startBatch(maxGeneration, seed);
+        return submitStarted(() -> completeBatch(maxGeneration));
+    }
+
+    private static void checkBatch(int maxGeneration){
+        if(maxGeneration <= 0){
+            throw new IllegalArgumentException("The batch run needs a positive maxGeneration.");
+        }
+    }
+
+    /**
+     * The scheduler reads isRunning and isBatchRunning without the monitor, so the batch flag is set
+     * before the simulation starts: the scheduler never sees a batch run without it. The check of
+     * isRunning comes first, the flag of a batch already running is not touched.
+     */
+    private synchronized void startBatch(int maxGeneration, Long seed){
+        if(isRunning){
+            throw new IllegalStateException("Simulation is already running.");
+        }
+
+        isBatchRunning = true;
+        try{
+            startSimulation(maxGeneration, seed);
+        } catch(RuntimeException e){
+            isBatchRunning = false;
+            throw e;
+        }
+    }
+
+    private <T> CompletableFuture<T> submitStarted(Supplier<T> batch){
+        try{
+            return CompletableFuture.supplyAsync(batch, batchExecutor);
+        } catch(RejectedExecutionException e){
+            stopSimulation();
+            isBatchRunning = false;
+            throw e;
+        }
+    }
+
+    // The generations of a started batch run, until the end or the stop.
+    private BatchRunResultDTO completeBatch(int maxGeneration){
+        long start = System.nanoTime();
+        int generations = 0;
+
+        try{
+            while(isRunning){
+                // a forest without fire doesn't need a single generation.
+                if(frontier.countBurning() == 0){
+                    extinguished = true;
+                    stopSimulation();
+                    break;
+                }
+                // the generation is counted with its step, so betweenGenerations() never sees the grid of
+                // one generation with the counter of the previous one.
+                synchronized(this){
+                    calculateNextGeneration();
+                    iterateGeneration();
+                }
+                generations++;
+            }
+        } catch(RuntimeException e){
+            // the scheduler must not continue a failed batch run.
+            stopSimulation();
+            throw e;
+        } finally {
+            isBatchRunning = false;
+        }
+
+        long wallTime = System.nanoTime() - start;
+        ForestGrid grid = this.currentForest.getGrid();
+        long burnedCells = countBurned(grid);
+
+        double seconds = Math.max(wallTime, 1) / 1e9;
+        boolean cancelled = !extinguished && generations < maxGeneration;
+
+        return new BatchRunResultDTO(generations, burnedCells, wallTime / 1_000_000,
+                                    (double) generations * grid.size() / seconds, extinguished, cancelled);
+    }
+
+    /**
+     * Runs the simulation to the end like runToCompletion(), with the grid split in bands of rows among
+     * worker JVMs (see PartitionedSimulation). The workers exchange the rows at the borders of their bands
+     * at each generation, so a seeded run has the same generations of runToCompletion().
+     * <p>
+     * The forest of the service doesn't change while the workers run: the ignitions are sent to the workers
+     * at the next generation, and the cells are gathered back into the forest at the end.
+     * </p>
+     *
+     * @throws IllegalArgumentException if maxGeneration is not positive or the amount of workers is invalid.
+     * @throws IOException if a worker couldn't start or failed, the forest stays as it was.
+     */
+    public BatchRunResultDTO runPartitioned(int workers, int maxGeneration, Long seed) throws IOException {
+        checkPartitioned(workers, maxGeneration);
+        startBatch(maxGeneration, seed);
+        return completePartitioned(workers, maxGeneration);
+    }
+
+    /**
+     * Same as runPartitioned(), with the generations calculated by a task of the batch executor like
+     * submitBatch(). The future fails with a CompletionException of the IOException of a worker.
+     */
+    public CompletableFuture<BatchRunResultDTO> submitPartitioned(int workers, int maxGeneration, Long seed){
+        checkPartitioned(workers, maxGeneration);
+        startBatch(maxGeneration, seed);
+        return submitStarted(() -> {
+            try{
+                return completePartitioned(workers, maxGeneration);
+            } catch(IOException e){
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private void checkPartitioned(int workers, int maxGeneration){
+        checkBatch(maxGeneration);
+        if(workers < 1 || workers > maxWorkers){
+            throw new IllegalArgumentException("The workers must be between 1 and " + maxWorkers + ".");
+        }
+    }
+
+    private BatchRunResultDTO completePartitioned(int workers, int maxGeneration) throws IOException {
+        long start = System.nanoTime();
+        int generations = 0;
+        Forest forest = this.currentForest;
+        PartitionedSimulation simulation = null;
+
+        try{
+            simulation = PartitionedSimulation.start(forest, workers, workerLauncher, workerStartTimeout);
+            this.partitioned = simulation;
+
+            long burning = frontier.countBurning();
+            while(isRunning){
+                commandLock.lock();
+                try{
+                    // the ignitions of the queue go to the workers with the next step.
+                    commands.drain(Runnable::run, MAX_COMMANDS_PER_GENERATION);
+                    if(burning == 0 && !simulation.hasIgnitions()){
+                        extinguished = true;
+                        stopSimulation();
+                        break;
+                    }
+                    burning = simulation.step();
+                } finally {
+                    commandLock.unlock();
+                }
+
+                this.burningCount = burning;
+                if(burning == 0) this.extinguished = true;
+                iterateGeneration();
+                generations++;
+            }
+
+            commandLock.lock();
+            try{
+                this.partitioned = null;
+                simulation.gather(forest.getGrid());
+                // the next generations continue the random stream of the workers.
+                forest.restoreRandomState(forest.getRandomSeed(), forest.getStepCount() + generations);
+                frontier.invalidate();
+                this.levels = null;
+                displayVersion.incrementAndGet();
+            } finally {
+                commandLock.unlock();
+            }
+        } catch(IOException | RuntimeException e){
+            stopSimulation();
+            throw e;
+        } finally {
+            this.partitioned = null;
+            isBatchRunning = false;
+            if(simulation != null) simulation.close();
+        }
+
+        long wallTime = System.nanoTime() - start;
+        ForestGrid grid = forest.getGrid();
+        long burnedCells = generations == 0 ? countBurned(grid)
+                                            : simulation.getCount(CellState.ASH) + simulation.getCount(CellState.BURNING);
+
+        double seconds = Math.max(wallTime, 1) / 1e9;
+        boolean cancelled = !extinguished && generations < maxGeneration;
+
+        return new BatchRunResultDTO(generations, burnedCells, wallTime / 1_000_000,
+                                    (double) generations * grid.size() / seconds, extinguished, cancelled);
+    }
+
+    private static long countBurned(ForestGrid grid){
+        long burnedCells = 0;
+        for(long index = 0; index < grid.size(); index++){
+            CellState state = grid.getState(index);
+            if(state == CellState.ASH || state == CellState.BURNING) burnedCells++;
+        }
+        return burnedCells;
+    }
+
+    /**
+     * The JSON of the forest (see JsonGridEncoder), serialized once for each version of the forest and shared by
+     * all the requests until the next change (see DisplaySnapshot). Many dashboards polling the same
+     * generation cost one serialization.
+     */
+    public DisplaySnapshot getJsonDisplaySnapshot(){
+        DisplaySnapshot snapshot = jsonSnapshot;
+        if(snapshot != null && snapshot.version() == displayVersion.get()) return snapshot;
+
+        synchronized(displayLock){
+            snapshot = jsonSnapshot;
+            long version = displayVersion.get();
+            if(snapshot == null || snapshot.version() != version){
+                // the version is read before the grid, a change during the encoding makes it stale.
+                int generation = currentGeneration;
+                boolean running = isRunning;
+                snapshot = metrics.getJsonDisplayTimer().record(() -> DisplaySnapshot.of(version, generation, "json",
+                                        JsonGridEncoder.encode(displayedGrid(), generation, running)));
+                jsonSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    // Same as getJsonDisplaySnapshot(), with 2 bits for each cell (see PackedGridEncoder).
+    public DisplaySnapshot getPackedDisplaySnapshot(){
+        DisplaySnapshot snapshot = packedSnapshot;
+        if(snapshot != null && snapshot.version() == displayVersion.get()) return snapshot;
+
+        synchronized(displayLock){
+            snapshot = packedSnapshot;
+            long version = displayVersion.get();
+            if(snapshot == null || snapshot.version() != version){
+                int generation = currentGeneration;
+                boolean running = isRunning;
+                snapshot = metrics.getPackedDisplayTimer().record(() -> DisplaySnapshot.of(version, generation, "packed",
+                                        PackedGridEncoder.encode(displayedGrid(), generation, running)));
+                packedSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    private ForestGrid displayedGrid(){
+        return displayedForest().getGrid();
+    }
+
+    private Forest displayedForest(){
+        Forest forest = this.currentForest;
+        if(forest == null){
             throw new IllegalStateException("The forest wasn't initialized yet.");
         }
 
-        if(this.currentForest.getCells().isEmpty()){
+        if(forest.isEmpty()){
             throw new EmptyForestException("The forest is empty.");
         }
-                
-        List<List<CellStateDTO>> grid = new ArrayList<>();
-        // This for-structure gets the row from the grid and then gets the cell from the row
-        for(List<Cell> row : this.currentForest.getCells()){
-            List<CellStateDTO> newRow = new ArrayList<>();
-            
-            for(Cell cell : row){
-                newRow.add(new CellStateDTO(cell.getState()));
+        return forest;
+    }
+
+    /**
+     * The cells of a region of the forest aggregated in square blocks, for the views at the resolution of
+     * a screen (see LevelOfDetailEncoder). The blocks have the smallest side, a power of two, that fits the
+     * region in maxRows x maxCols blocks. They are aligned to their side, so the first block can start
+     * before the region and the blocks at the end of the region are complete.
+     * <p>
+     * Blocks of 8 cells or more are read from the pyramid, so the cost follows the amount of blocks and
+     * not the cells of the region. The smaller ones are counted from the cells, which are at most 16
+     * (4x4) for each block.
+     * </p>
+     *
+     * @throws IllegalArgumentException if the region is outside the forest or the resolution is invalid.
+     */
+    public DisplaySnapshot getLevelOfDetail(ViewportRequest viewport, int maxRows, int maxCols, boolean withCounts){
+        return metrics.getLodDisplayTimer().record(() -> buildLevelOfDetail(viewport, maxRows, maxCols, withCounts));
+    }
+
+    private DisplaySnapshot buildLevelOfDetail(ViewportRequest viewport, int maxRows, int maxCols, boolean withCounts){
+        if(maxRows < 1 || maxCols < 1 || (long) maxRows * maxCols > MAX_VIEW_BLOCKS){
+            throw new IllegalArgumentException("The resolution must have between 1 and " + MAX_VIEW_BLOCKS + " blocks.");
+        }
+
+        // the version is read before the grid, a change during the counting makes it stale.
+        long version = displayVersion.get();
+        int generation = currentGeneration;
+        boolean running = isRunning;
+        Forest forest = displayedForest();
+        ForestGrid grid = forest.getGrid();
+        Region region = Region.of(viewport, grid);
+
+        int blockSize = 1;
+        while(blockCount(region.row(), region.height(), blockSize) > maxRows
+            || blockCount(region.col(), region.width(), blockSize) > maxCols){
+            blockSize <<= 1;
+        }
+        int firstRow = region.row() / blockSize * blockSize;
+        int firstCol = region.col() / blockSize * blockSize;
+        int rows = blockCount(region.row(), region.height(), blockSize);
+        int cols = blockCount(region.col(), region.width(), blockSize);
+        long[] counts = new long[rows * cols * ForestPyramid.STATES];
+
+        if(blockSize >= ForestPyramid.blockSize(0)){
+            ForestPyramid pyramid = pyramidOf(forest);
+            synchronized(pyramid){
+                int level = pyramid.levelOf(blockSize);
+                for(int row = 0; row < rows; row++){
+                    for(int col = 0; col < cols; col++){
+                        pyramid.addCounts(level, firstRow / blockSize + row, firstCol / blockSize + col,
+                                        counts, (row * cols + col) * ForestPyramid.STATES);
+                    }
+                }
+            }
+        } else {
+            int lastRow = Math.min(grid.getHeight(), firstRow + rows * blockSize);
+            int lastCol = Math.min(grid.getWidth(), firstCol + cols * blockSize);
+            for(int row = firstRow; row < lastRow; row++){
+                for(int col = firstCol; col < lastCol; col++){
+                    int block = (row - firstRow) / blockSize * cols + (col - firstCol) / blockSize;
+                    counts[block * ForestPyramid.STATES + grid.getStateOrdinal(grid.index(row, col))]++;
+                }
             }
-            grid.add(newRow);
         }
 
-        return new CurrentForestDTO(grid, this.currentGeneration, this.isRunning);
+        byte[] body = LevelOfDetailEncoder.encode(counts, rows, cols, blockSize, firstRow, firstCol,
+                                                generation, running, withCounts);
+        String format = "lod-" + firstRow + "-" + firstCol + "-" + rows + "x" + cols + "-" + blockSize
+                        + (withCounts ? "-counts" : "");
+        return DisplaySnapshot.of(version, generation, format, body);
+    }
+
+    /**
+     * The cells of a region of the current generation, read straight from the grid: the cost follows the
+     * size of the region and not of the forest, and nothing is copied besides the JSON.
+     * <p>
+     * There is no lock. After the swap, the grid being read becomes the buffer of the next generation, so
+     * a read that crossed a change of the version can mix two generations and is repeated.
+     * </p>
+     *
+     * @throws IllegalArgumentException if the region is outside the forest or larger than MAX_REGION_CELLS.
+     */
+    public DisplaySnapshot getRegion(ViewportRequest viewport, boolean withTerrain){
+        return metrics.getRegionDisplayTimer().record(() -> buildRegion(viewport, withTerrain));
+    }
+
+    private DisplaySnapshot buildRegion(ViewportRequest viewport, boolean withTerrain){
+        for(int attempt = 1; ; attempt++){
+            long version = displayVersion.get();
+            int generation = currentGeneration;
+            boolean running = isRunning;
+            ForestGrid grid = displayedGrid();
+
+            Region region = Region.of(viewport, grid);
+            if((long) region.height() * region.width() > MAX_REGION_CELLS){
+                throw new IllegalArgumentException("The region must have at most " + MAX_REGION_CELLS + " cells.");
+            }
+
+            byte[] body = RegionEncoder.encode(grid, region.row(), region.col(), region.height(), region.width(),
+                                            generation, running, withTerrain);
+
+            // a simulation faster than the reads keeps the last one, it's at most one generation behind.
+            if(version == displayVersion.get() || attempt == REGION_READ_ATTEMPTS){
+                String format = "region-" + region.row() + "-" + region.col() + "-" + region.height() + "x"
+                                + region.width() + (withTerrain ? "-terrain" : "");
+                return DisplaySnapshot.of(version, generation, format, body);
+            }
+        }
+    }
+
+    /**
+     * Bounding box of the burning cells, so a viewer can focus on the fire without the whole forest.
+     * It's found once for each version (see getJsonDisplaySnapshot()): the blocks of the first level of
+     * the pyramid with burning cells give the area, and only the cells of the blocks at its border are read.
+     */
+    public DisplaySnapshot getFireBounds(){
+        DisplaySnapshot snapshot = fireBoundsSnapshot;
+        if(snapshot != null && snapshot.version() == displayVersion.get()) return snapshot;
+
+        // the pyramid can take the commandLock, which comes before the displayLock.
+        Forest forest = displayedForest();
+        ForestPyramid pyramid = pyramidOf(forest);
+
+        synchronized(displayLock){
+            snapshot = fireBoundsSnapshot;
+            long version = displayVersion.get();
+            if(snapshot == null || snapshot.version() != version){
+                int generation = currentGeneration;
+                boolean running = isRunning;
+                snapshot = metrics.getFireBoundsTimer().record(() -> DisplaySnapshot.of(version, generation, "fire-bounds",
+                                        findFireBounds(forest.getGrid(), pyramid, generation, running)));
+                fireBoundsSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    private static byte[] findFireBounds(ForestGrid grid, ForestPyramid pyramid, int generation, boolean running){
+        int burning = CellState.BURNING.ordinal();
+        long burningCells = 0;
+        int firstBlockRow = Integer.MAX_VALUE, lastBlockRow = -1;
+        int firstBlockCol = Integer.MAX_VALUE, lastBlockCol = -1;
+
+        synchronized(pyramid){
+            for(int blockRow = 0; blockRow < pyramid.getBlockRows(0); blockRow++){
+                for(int blockCol = 0; blockCol < pyramid.getBlockCols(0); blockCol++){
+                    long count = pyramid.getCount(0, blockRow, blockCol, burning);
+                    if(count == 0) continue;
+
+                    burningCells += count;
+                    firstBlockRow = Math.min(firstBlockRow, blockRow);
+                    lastBlockRow = Math.max(lastBlockRow, blockRow);
+                    firstBlockCol = Math.min(firstBlockCol, blockCol);
+                    lastBlockCol = Math.max(lastBlockCol, blockCol);
+                }
+            }
+        }
+        if(burningCells == 0) return RegionEncoder.encodeFireBounds(0, 0, 0, 0, 0, generation, running);
+
+        int blockSize = ForestPyramid.blockSize(0);
+        int top = firstBlockRow * blockSize;
+        int bottom = Math.min(grid.getHeight(), (lastBlockRow + 1) * blockSize) - 1;
+        int left = firstBlockCol * blockSize;
+        int right = Math.min(grid.getWidth(), (lastBlockCol + 1) * blockSize) - 1;
+
+        // the border blocks have a burning cell, so each scan stops inside them. If a generation changed
+        // the grid after the counts, the bounds stay at the border of the blocks.
+        int row = top;
+        while(row < bottom && !burningInRow(grid, row, left, right)) row++;
+        top = row;
+        row = bottom;
+        while(row > top && !burningInRow(grid, row, left, right)) row--;
+        bottom = row;
+
+        int col = left;
+        while(col < right && !burningInCol(grid, col, top, bottom)) col++;
+        left = col;
+        col = right;
+        while(col > left && !burningInCol(grid, col, top, bottom)) col--;
+        right = col;
+
+        return RegionEncoder.encodeFireBounds(burningCells, top, left, bottom - top + 1, right - left + 1,
+                                            generation, running);
+    }
+
+    private static boolean burningInRow(ForestGrid grid, int row, int firstCol, int lastCol){
+        for(long index = grid.index(row, firstCol); index <= grid.index(row, lastCol); index++){
+            if(grid.isBurning(index)) return true;
+        }
+        return false;
+    }
+
+    private static boolean burningInCol(ForestGrid grid, int col, int firstRow, int lastRow){
+        for(int row = firstRow; row <= lastRow; row++){
+            if(grid.isBurning(grid.index(row, col))) return true;
+        }
+        return false;
+    }
+
+    // Blocks of this side that cover the cells [start, start + length).
+    private static int blockCount(int start, int length, int blockSize){
+        return (start + length - 1) / blockSize - start / blockSize + 1;
+    }
+
+    // The pyramid of the forest, built at the first view with the commandLock, so no generation changes
+    // the grid while it's counted.
+    private ForestPyramid pyramidOf(Forest forest){
+        ForestLevels current = this.levels;
+        if(current != null && current.forest() == forest) return current.pyramid();
+
+        commandLock.lock();
+        try{
+            if(forest != this.currentForest){
+                throw new IllegalStateException("The forest was replaced.");
+            }
+            if(this.levels == null){
+                this.levels = new ForestLevels(forest, new ForestPyramid(forest.getGrid()));
+            }
+            return this.levels.pyramid();
+        } finally {
+            commandLock.unlock();
+        }
+    }
+
+    /**
+     * Moves the cells changed by the last generation in the pyramid. Runs with the commandLock after the
+     * swap, the buffer grid still has the previous generation. After a frontier step only the evaluated
+     * cells can have changed.
+     */
+    private void updatePyramid(boolean frontierStep){
+        ForestLevels current = this.levels;
+        if(current == null) return;
+
+        ForestGrid grid = this.currentForest.getGrid();
+        ForestGrid previousGrid = this.currentForest.getBufferGrid();
+        ForestPyramid pyramid = current.pyramid();
+
+        synchronized(pyramid){
+            if(frontierStep){
+                for(int i = 0; i < frontier.getEvaluatedCount(); i++){
+                    long index = frontier.getEvaluatedCell(i);
+                    pyramid.update(index, previousGrid.getStateOrdinal(index), grid.getStateOrdinal(index));
+                }
+            } else {
+                for(long index = 0; index < grid.size(); index++){
+                    pyramid.update(index, previousGrid.getStateOrdinal(index), grid.getStateOrdinal(index));
+                }
+            }
+        }
+    }
+
+    // The pyramid and the forest it counts, replaced together.
+    private record ForestLevels(Forest forest, ForestPyramid pyramid) {
+    }
+
+    // Region of a view inside the grid.
+    private record Region(int row, int col, int height, int width) {
+
+        // Without the parameters, the region goes from the start or to the end of the forest.
+        static Region of(ViewportRequest viewport, ForestGrid grid){
+            int row = viewport.getRow() != null ? viewport.getRow() : 0;
+            int col = viewport.getCol() != null ? viewport.getCol() : 0;
+            if(row < 0 || col < 0 || row >= grid.getHeight() || col >= grid.getWidth()){
+                throw new IllegalArgumentException("The region starts outside the forest.");
+            }
+
+            int height = viewport.getHeight() != null ? viewport.getHeight() : grid.getHeight() - row;
+            int width = viewport.getWidth() != null ? viewport.getWidth() : grid.getWidth() - col;
+            if(height < 1 || width < 1){
+                throw new IllegalArgumentException("The height and width of the region must be positive.");
+            }
+
+            // a region that goes past the end of the forest is cut at the border.
+            return new Region(row, col, Math.min(height, grid.getHeight() - row), Math.min(width, grid.getWidth() - col));
+        }
     }
 
     public void generateRandomForest(RandomForestRequest randomForestDto){
@@ -110,9 +843,20 @@ public class SimulationService {
             throw new IllegalStateException("The simulation must be stopped to initialize a new Forest.");
         }
 
-        Random random = new Random();
+        loadForest(createRandomForest(randomForestDto, offHeap));
+    }
+
+    // Builds the forest of the request without loading it, it's also used by the ensemble (in the heap).
+    static Forest createRandomForest(RandomForestRequest randomForestDto){
+        return createRandomForest(randomForestDto, cells -> false);
+    }
 
-        List<List<Cell>> forestCells = new ArrayList<>();
+    static Forest createRandomForest(RandomForestRequest randomForestDto, LongPredicate offHeap){
+        // with a seed, the same request always generates the same forest.
+        Random random = randomForestDto.getSeed() != null ? new Random(randomForestDto.getSeed()) : new Random();
+
+        ForestGrid forestGrid = new ForestGrid(randomForestDto.getHeight(), randomForestDto.getWidth(),
+                                    offHeap.test((long) randomForestDto.getHeight() * randomForestDto.getWidth()));
         
         // get the values of Enum CellState and parse to List.
         List<CellState> cellStates = new ArrayList<>(Arrays.asList(CellState.values()));
@@ -121,31 +865,32 @@ public class SimulationService {
         cellStates.remove(CellState.BURNING);
         cellStates.remove(CellState.ASH);
 
-        for(int i = 0; i < randomForestDto.getHeight(); i++){
-            List<Cell> lineCells = new ArrayList<>();
-
-            for(int j = 0; j < randomForestDto.getWidth(); j++){
-                
-                int randomIndex = random.nextInt(cellStates.size());
-                double randomMoisture = random.nextDouble(1.0);
-                double randomRelief = random.nextDouble(1.0);
+        // the cells are written straight into the grid, without creating Cell objects.
+        for(long index = 0; index < forestGrid.size(); index++){
+            int randomIndex = random.nextInt(cellStates.size());
+            double randomMoisture = random.nextDouble(1.0);
+            double randomRelief = random.nextDouble(1.0);
 
-                lineCells.add(new Cell(i, j, cellStates.get(randomIndex), randomMoisture, randomRelief));
-            }
-            forestCells.add(lineCells);
+            forestGrid.setState(index, cellStates.get(randomIndex));
+            forestGrid.setTerrain(index, randomMoisture, randomRelief);
         }
 
         // now the fire starting point will be set using random index.
-        forestCells.get(random.nextInt(randomForestDto.getHeight()))
-                    .get(random.nextInt(randomForestDto.getWidth()))
-                    .startBurning(randomForestDto.getBurningTime());
+        forestGrid.startBurning(forestGrid.index(random.nextInt(randomForestDto.getHeight()), 
+                                                random.nextInt(randomForestDto.getWidth())),
+                                randomForestDto.getBurningTime());
 
         List<Direction> windDirections = new ArrayList<>(Arrays.asList(Direction.values()));
         Direction randomWindDirection = windDirections.get(random.nextInt(windDirections.size()));
 
-        this.currentForest = new Forest(randomForestDto.getHeight(), randomForestDto.getWidth(), 
-                                        forestCells, randomWindDirection, random.nextDouble(1.0),
-                                        randomForestDto.getBurningTime(), BASE_BURNING_PROBABILITY);
+        Forest forest = new Forest(forestGrid, randomWindDirection, random.nextDouble(1.0),
+                                    randomForestDto.getBurningTime(), BASE_BURNING_PROBABILITY);
+        // the seed is also used for the ignitions, so the whole run can be reproduced.
+        if(randomForestDto.getSeed() != null){
+            forest.reseed(randomForestDto.getSeed());
+        }
+
+        return forest;
     }
 
     public void initializeForest(CustomForestRequest initializeForestDto){
@@ -154,66 +899,397 @@ public class SimulationService {
             throw new IllegalStateException("The simulation must be stopped to initialize a new Forest.");
         }
 
-        this.currentForest = new Forest(initializeForestDto.getHeight(), 
-                                initializeForestDto.getWidth(), 
-                                initializeForestDto.getForestCells(), 
-                                initializeForestDto.getWindDirection(), 
-                                initializeForestDto.getWindSpeed(), 
-                                initializeForestDto.getBurningTime(), 
-                                this.BASE_BURNING_PROBABILITY
+        loadForest(createCustomForest(initializeForestDto));
+    }
+
+    /**
+     * Initializes the custom forest of a request body that is read as a stream, see CustomForestReader.
+     * The cells go straight into the grid, so a big forest doesn't need the memory of the Cell objects.
+     */
+    public void initializeForest(InputStream body){
+        initializeForest(body, (height, width) -> {});
+    }
+
+    // checkDimensions is called before the grid is allocated, the sessions use it to check their limits.
+    public void initializeForest(InputStream body, BiConsumer<Integer, Integer> checkDimensions){
+
+        // checked before the body is read, the reading of a big forest is not wasted.
+        if(this.isRunning){
+            throw new IllegalStateException("The simulation must be stopped to initialize a new Forest.");
+        }
+
+        loadForest(CustomForestReader.read(body, BASE_BURNING_PROBABILITY, checkDimensions, offHeap));
+    }
+
+    static Forest createCustomForest(CustomForestRequest initializeForestDto){
+        return new Forest(initializeForestDto.getHeight(), 
+                            initializeForestDto.getWidth(), 
+                            initializeForestDto.getForestCells(), 
+                            initializeForestDto.getWindDirection(), 
+                            initializeForestDto.getWindSpeed(), 
+                            initializeForestDto.getBurningTime(), 
+                            BASE_BURNING_PROBABILITY
         );
     }
 
+    /**
+     * Replaces the current forest with a forest already built, for example by the benchmarks.
+     * The tasks of the simulation are prepared for the new grid and the old forest is closed, so the
+     * memory of an off-heap grid is released right away.
+     */
+    public void loadForest(Forest forest){
+        if(this.isRunning){
+            throw new IllegalStateException("The simulation must be stopped to initialize a new Forest.");
+        }
+
+        // with the lock, no command is applied while the forest is replaced. The ignitions of the old
+        // forest are thrown away.
+        commandLock.lock();
+        try{
+            Forest previousForest = this.currentForest;
+            this.currentForest = forest;
+            this.levels = null;
+            prepareTasks();
+            ignitedCount = 0;
+            closeForest(previousForest);
+        } finally {
+            commandLock.unlock();
+        }
+        this.burningCount = frontier.countBurning();
+        this.extinguished = false;
+        displayVersion.incrementAndGet();
+    }
+
+    /**
+     * Loads the forest of a checkpoint with its generation counters. The simulation stays stopped,
+     * resumeSimulation() continues it.
+     */
+    public synchronized void restoreForest(Forest forest, int currentGeneration, int maxGeneration){
+        loadForest(forest);
+        this.currentGeneration = currentGeneration;
+        this.maxGeneration = maxGeneration;
+        displayVersion.incrementAndGet();
+    }
+
+    /**
+     * Ignites a cell at the next generation boundary. The request only adds the command to the queue,
+     * it never waits for the generation being calculated. When the simulation is stopped, there is no
+     * next generation, so the command is applied right away (or by the next tick of the scheduler).
+     */
     public void igniteCell(CellCoordinatesRequest cellCoordinates){
-        if(this.currentForest == null){
+        Forest forest = this.currentForest;
+        if(forest == null){
             throw new IllegalStateException("The forest wasn't initialized yet.");
         }
 
-        if(this.currentForest.getCells().isEmpty()){
+        if(forest.isEmpty()){
             throw new EmptyForestException("The forest is empty.");
         }
 
-        if(cellCoordinates.getX() > currentForest.getHeight() || cellCoordinates.getY() > currentForest.getWidth()){
+        // x is the column and y is the row of the cell.
+        if(cellCoordinates.getX() < 0 || cellCoordinates.getX() >= forest.getWidth() 
+            || cellCoordinates.getY() < 0 || cellCoordinates.getY() >= forest.getHeight()){
             throw new IndexOutOfBoundsException("The coordinates exceed the forest limits.");
         }
         
-        this.currentForest.getCells()
-            .get(cellCoordinates.getY())
-            .get(cellCoordinates.getX())
-            .startBurning(currentForest.getBurningTime());
+        long index = forest.getGrid().index(cellCoordinates.getY(), cellCoordinates.getX());
+        commands.offer(() -> applyIgnition(forest, index));
+
+        if(!isRunning) applyPendingCommands();
+    }
+
+    /**
+     * Runs the action with the forest between two generations: the monitor keeps the simulation from
+     * being started, restored or counted, and the commandLock keeps the grid from being calculated. The
+     * grid is the one of getCurrentGeneration(). Used by the checkpoints.
+     *
+     * @throws IllegalStateException if the forest wasn't initialized, or its cells are at the workers of
+     * a partitioned run.
+     */
+    public synchronized <T> T betweenGenerations(Function<Forest, T> action){
+        commandLock.lock();
+        try{
+            if(this.currentForest == null){
+                throw new IllegalStateException("The forest wasn't initialized yet.");
+            }
+            if(this.partitioned != null){
+                throw new IllegalStateException("The cells are at the workers of a partitioned run until its end.");
+            }
+            return action.apply(this.currentForest);
+        } finally {
+            commandLock.unlock();
+        }
     }
 
-    @SuppressWarnings("CallToPrintStackTrace")
+    /**
+     * Applies the queued commands of a simulation that is not calculating generations. It never waits:
+     * if another thread is applying them, that thread also takes the new ones. Called by the scheduler.
+     */
+    public void applyPendingCommands(){
+        while(!isRunning && !commands.isEmpty() && commandLock.tryLock()){
+            try{
+                commands.drain(Runnable::run, MAX_COMMANDS_PER_GENERATION);
+            } finally {
+                commandLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Releases the forest of the simulation, used when a session is deleted. The simulation is stopped
+     * and the forest is closed after the generation being calculated, if there is one.
+     */
+    public void close(){
+        stopSimulation();
+
+        commandLock.lock();
+        try{
+            Forest forest = this.currentForest;
+            this.currentForest = null;
+            this.levels = null;
+            closeForest(forest);
+        } finally {
+            commandLock.unlock();
+        }
+        displayVersion.incrementAndGet();
+    }
+
+    // Called with the commandLock, so no generation is using the forest. The display lock waits for the
+    // snapshot being encoded. The forest is closed only if it's not the current one anymore.
+    private void closeForest(Forest forest){
+        if(forest == null || forest == this.currentForest) return;
+
+        synchronized(displayLock){
+            forest.close();
+        }
+    }
+
+    // Runs with the commandLock, between two generations.
+    private void applyIgnition(Forest forest, long index){
+        // the forest was replaced after the request.
+        if(forest != this.currentForest) return;
+
+        PartitionedSimulation simulation = this.partitioned;
+        if(simulation != null){
+            simulation.ignite(index);
+            return;
+        }
+
+        ForestGrid grid = forest.getGrid();
+        int previousState = grid.getStateOrdinal(index);
+        grid.startBurning(index, forest.getBurningTime());
+
+        ForestLevels current = this.levels;
+        if(current != null){
+            synchronized(current.pyramid()){
+                current.pyramid().update(index, previousState, grid.getStateOrdinal(index));
+            }
+        }
+        // the new burning cell is not at the frontier yet.
+        this.frontier.invalidate();
+
+        if(ignitedCount == ignitedCells.length) ignitedCells = Arrays.copyOf(ignitedCells, ignitedCount * 2);
+        ignitedCells[ignitedCount++] = index;
+        displayVersion.incrementAndGet();
+    }
+
+    // The tasks only depend on the forest dimensions, so they are created once for each new forest.
+    private void prepareTasks(){
+        // a small forest runs at the scheduler thread, the handoff to the pool would cost more than the cells.
+        this.backend = backends.select(this.currentForest.getGrid().size());
+        log.debug("Forest of {} cells uses the {} backend.", this.currentForest.getGrid().size(), backend.getName());
+
+        // The full sweep is a tree of tiles, the amount of tiles follows the parallelism and the cache size.
+        this.sweepTask = tilingStrategy.createTasks(this.currentForest, backend.getParallelism(), sweepKernel);
+
+        // The frontier mode has one task for each thread, the candidates are divided between them.
+        this.frontier = new FireFrontier(this.currentForest);
+        List<FrontierTask> newFrontierTasks = new ArrayList<>();
+        for(int i = 0; i < backend.getParallelism(); i++){
+            newFrontierTasks.add(new FrontierTask(this.currentForest, this.frontier));
+        }
+        this.frontierTasks = newFrontierTasks;
+    }
+
+    /**
+     * Calculates the next generation and swaps the grids of the forest.
+     * <p>
+     * When the fire is small, only the frontier (burning cells and their vegetation neighbors) is
+     * evaluated, so the cost follows the fire perimeter. When the frontier becomes a big part of the
+     * grid, the full sweep of all rows is used.
+     * </p>
+     */
     public void calculateNextGeneration(){
-        // Uses deep copy constructor to create a safe copy of currentForest
-        Forest bufferForest = new Forest(this.currentForest);
+        commandLock.lock();
+        try{
+            // the session was closed while the scheduler was about to step it.
+            if(this.currentForest == null) return;
 
-        int halfOfCols = (this.currentForest.getCells().get(0).size()) / 2;
-        int finalCol = this.currentForest.getCells().get(0).size();
+            commands.drain(Runnable::run, MAX_COMMANDS_PER_GENERATION);
 
-        List<Callable<Forest>> taskList = new ArrayList<>();
-        
-        // Will organize the tasks at half of each row.
-        for(int i = 0; i < this.currentForest.getCells().size(); i++){
-            
-            // creates 2 tasks for the 2 halves of a row
-            SimulationTask taskHalfOfARow = new SimulationTask(this.currentForest, bufferForest, i, 0, halfOfCols);
-            SimulationTask taskLastOfARow = new SimulationTask(this.currentForest, bufferForest, i, halfOfCols, finalCol);
-            
-            taskList.add(taskHalfOfARow);
-            taskList.add(taskLastOfARow);
-            
+            // the ignitions before this step are part of the changes of this generation.
+            ignitedBeforeStep = Arrays.copyOf(ignitedCells, ignitedCount);
+            ignitedCount = 0;
+
+            calculateGeneration();
+        } finally {
+            commandLock.unlock();
         }
-        
+    }
+
+    private void calculateGeneration(){
+        long denseLimit = (long) (this.currentForest.getGrid().size() * DENSE_SWEEP_RATIO);
+
         try{
-            // The code will stop here until the tasks be complete
-            List<Future<Forest>> results = executor.invokeAll(taskList);
+            boolean frontierStep = false;
+            long copyStart = System.nanoTime();
+
+            if(frontier.estimateCandidates() <= denseLimit){
+                int candidates = frontier.collectCandidates();
+
+                if(candidates <= denseLimit){
+                    long computeStart = System.nanoTime();
+                    metrics.getCopyTimer().record(computeStart - copyStart, TimeUnit.NANOSECONDS);
+
+                    calculateFrontier(candidates);
+                    frontierStep = true;
+
+                    metrics.getComputeTimer().record(System.nanoTime() - computeStart, TimeUnit.NANOSECONDS);
+                    metrics.getCellsProcessed().increment(candidates);
+                }
+            }
+
+            if(!frontierStep){
+                long computeStart = System.nanoTime();
+                metrics.getCopyTimer().record(computeStart - copyStart, TimeUnit.NANOSECONDS);
 
-            for (Future<Forest> f : results) f.get();
+                // The code will stop here until the tiles be complete.
+                // Each tile writes its cells at the buffer grid of the forest.
+                backend.runSweep(sweepTask);
+
+                // the full sweep doesn't keep the frontier list, but the tiles counted the burning cells.
+                frontier.invalidate(sweepTask.countBurning());
+
+                metrics.getComputeTimer().record(System.nanoTime() - computeStart, TimeUnit.NANOSECONDS);
+                metrics.getCellsProcessed().increment(this.currentForest.getGrid().size());
+            }
             
-            this.currentForest = bufferForest;
-        } catch(InterruptedException | ExecutionException e){
-            e.printStackTrace();
+            // The buffer is complete, so it becomes the current generation without copying the forest.
+            this.currentForest.swapBuffers();
+            updatePyramid(frontierStep);
+            displayVersion.incrementAndGet();
+            this.lastStepWasFrontier = frontierStep;
+
+            // only the step where the fire goes out stops the simulation, a forest can run without fire
+            // until a cell is ignited by the controller.
+            boolean hadFire = burningCount > 0 || ignitedBeforeStep.length > 0;
+            this.burningCount = frontier.countBurning();
+            if(hadFire && burningCount == 0) this.extinguished = true;
+        } catch(InterruptedException | ExecutionException | RuntimeException e){
+            frontier.invalidate();
+            metrics.getGenerationErrors().increment();
+            if(e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.error("The generation {} failed and was not swapped.", currentGeneration, e);
+        }
+    }
+
+    /**
+     * Returns the indexes of the cells whose state changed at the last generation, sorted.
+     * <p>
+     * After the swap, the buffer grid still has the previous generation, so the grids are compared.
+     * After a frontier step, only the evaluated cells are compared. It must be called by the thread that
+     * stepped the simulation, between calculateNextGeneration() and the next generation.
+     * </p>
+     */
+    public long[] getChangedCells(){
+        ForestGrid grid = this.currentForest.getGrid();
+        ForestGrid previousGrid = this.currentForest.getBufferGrid();
+
+        long[] changedCells;
+        int changedCount = 0;
+
+        if(lastStepWasFrontier){
+            changedCells = new long[frontier.getEvaluatedCount() + ignitedBeforeStep.length];
+            for(int i = 0; i < frontier.getEvaluatedCount(); i++){
+                long index = frontier.getEvaluatedCell(i);
+                if(grid.getStateOrdinal(index) != previousGrid.getStateOrdinal(index)) changedCells[changedCount++] = index;
+            }
+        } else {
+            // the full sweep can change any cell, the list grows while the grids are compared (from a
+            // guess of twice the burning cells, capped so a huge fire doesn't start with a huge array).
+            changedCells = new long[(int) Math.min(1 << 20, Math.max(64, 2 * (burningCount + ignitedBeforeStep.length)))];
+            for(long index = 0; index < grid.size(); index++){
+                if(grid.getStateOrdinal(index) != previousGrid.getStateOrdinal(index)){
+                    if(changedCount == changedCells.length) changedCells = Arrays.copyOf(changedCells, 2 * changedCount);
+                    changedCells[changedCount++] = index;
+                }
+            }
+        }
+
+        if(ignitedBeforeStep.length == 0){
+            return Arrays.copyOf(changedCells, changedCount);
+        }
+
+        // the ignited cells can be already at the list, so they are merged without duplicates.
+        if(changedCells.length < changedCount + ignitedBeforeStep.length){
+            changedCells = Arrays.copyOf(changedCells, changedCount + ignitedBeforeStep.length);
+        }
+        for(long index : ignitedBeforeStep) changedCells[changedCount++] = index;
+        Arrays.sort(changedCells, 0, changedCount);
+
+        int uniqueCount = 0;
+        for(int i = 0; i < changedCount; i++){
+            if(uniqueCount == 0 || changedCells[uniqueCount - 1] != changedCells[i]){
+                changedCells[uniqueCount++] = changedCells[i];
+            }
         }
+        return Arrays.copyOf(changedCells, uniqueCount);
+    }
+
+    // Current generation and the grid, for the stream of the forest. Must be used by the thread that steps it.
+    Forest getCurrentForest(){
+        return this.currentForest;
+    }
+
+    public long getBurningCount(){
+        return this.burningCount;
+    }
+
+    public boolean isExtinguished(){
+        return this.extinguished;
+    }
+
+    public int getMaxGeneration(){
+        return this.maxGeneration;
+    }
+
+    public int getCurrentGeneration(){
+        return this.currentGeneration;
+    }
+
+    private void calculateFrontier(int candidates) throws InterruptedException, ExecutionException{
+        int numberOfTasks = Math.min(frontierTasks.size(), 
+                                    Math.max(1, candidates / MIN_CANDIDATES_PER_TASK));
+
+        if(numberOfTasks == 1){
+            // runs at the scheduler thread, a small front doesn't need the pool.
+            FrontierTask task = frontierTasks.get(0);
+            task.setRange(0, candidates);
+            try{
+                task.call();
+            } catch(Exception e){
+                throw new ExecutionException(e);
+            }
+        } else {
+            int candidatesPerTask = (candidates + numberOfTasks - 1) / numberOfTasks;
+            for(int i = 0; i < numberOfTasks; i++){
+                int start = Math.min(candidates, i * candidatesPerTask);
+                frontierTasks.get(i).setRange(start, Math.min(candidates, start + candidatesPerTask));
+            }
+
+            backend.runAll(frontierTasks.subList(0, numberOfTasks));
+        }
+
+        frontier.finish();
     }
 }
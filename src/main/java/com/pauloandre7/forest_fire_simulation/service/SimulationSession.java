@@ -0,0 +1,51 @@
+package com.pauloandre7.forest_fire_simulation.service;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * @author pauloandre7
+ *
+ * One independent simulation, identified by its id. It has its own SimulationService, but the
+ * service uses the pool shared by all the sessions. The default simulation is also one of these for
+ * the scheduler, so it has its share of the time like the others (see SimulationSessionManager).
+ */
+@Getter
+public class SimulationSession {
+
+    private final String id;
+    private final SimulationService service;
+    // Runs at the same thread after each scheduled generation, while the grid is not being calculated.
+    @Getter(AccessLevel.NONE)
+    private final Runnable afterGeneration;
+
+    // Time spent calculating the generations of this session, in nanoseconds. The scheduler runs
+    // first the sessions that used less time, so a big forest cannot starve the small ones.
+    private volatile long virtualRuntime;
+    // true if the simulation was running at the last tick, see SimulationSessionManager.
+    @Setter(AccessLevel.PACKAGE)
+    private boolean scheduled;
+
+    public SimulationSession(String id, SimulationService service){
+        this(id, service, () -> {});
+    }
+
+    public SimulationSession(String id, SimulationService service, Runnable afterGeneration){
+        this.id = id;
+        this.service = service;
+        this.afterGeneration = afterGeneration;
+    }
+
+    void afterGeneration(){
+        afterGeneration.run();
+    }
+
+    void addRuntime(long nanos){
+        this.virtualRuntime += nanos;
+    }
+
+    void setVirtualRuntime(long virtualRuntime){
+        this.virtualRuntime = virtualRuntime;
+    }
+}
@@ -0,0 +1,234 @@
+package com.pauloandre7.forest_fire_simulation.service;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Service;
+
+import com.pauloandre7.forest_fire_simulation.config.SimulationProperties;
+import com.pauloandre7.forest_fire_simulation.dto.RandomForestRequest;
+import com.pauloandre7.forest_fire_simulation.exception.SessionLimitException;
+import com.pauloandre7.forest_fire_simulation.exception.SessionNotFoundException;
+import com.pauloandre7.forest_fire_simulation.metrics.SimulationMetrics;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.parallel.ExecutionBackends;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author pauloandre7
+ *
+ * Keeps the simulation sessions, so many independent scenarios can run in the same application.
+ * Each session has its own SimulationService, but all of them use the shared backends, there is no
+ * thread or pool for each session.
+ *
+ * The generations are calculated by the scheduler with a fair-share rule: at each tick, the sessions
+ * whose next generation is due (each one has its own target rate) are ordered by the time they already
+ * used (virtual runtime) and each one calculates one generation until the time budget of the tick is
+ * over. The sessions that were left out are still due, and they are the first ones at the next tick.
+ * The default simulation takes part in the same order (see setDefaultSimulation()).
+ *
+ * The steps run on the shared pool: a few runners take the due sessions in that order, so the small
+ * forests (calculated by the serial backend) use all the cores, and a big step doesn't hold the
+ * sessions after it.
+ */
+@Slf4j
+@Service
+public class SimulationSessionManager {
+
+    private final SimulationProperties properties;
+    private final ExecutionBackends backends;
+    // The meters of all the sessions are summed, see SimulationMetrics.
+    private final SimulationMetrics metrics;
+
+    private final Map<String, SimulationSession> sessions = new ConcurrentHashMap<>();
+    // The default simulation of /simulation, it's not a session of the map (it can't be deleted).
+    private volatile SimulationSession defaultSimulation;
+
+    public SimulationSessionManager(SimulationProperties properties, ExecutionBackends backends,
+                                    MeterRegistry meterRegistry){
+        this.properties = properties;
+        this.backends = backends;
+        this.metrics = new SimulationMetrics(meterRegistry, "sessions");
+
+        Gauge.builder("simulation.sessions", sessions, Map::size)
+            .description("Sessions that exist at the moment")
+            .register(meterRegistry);
+    }
+
+    public synchronized String createSession(){
+        if(sessions.size() >= properties.getSessions().getMaxSessions()){
+            throw new SessionLimitException("The maximum amount of sessions was reached.");
+        }
+
+        String id = UUID.randomUUID().toString();
+        sessions.put(id, new SimulationSession(id, new SimulationService(properties, backends, metrics)));
+        return id;
+    }
+
+    public void deleteSession(String id){
+        SimulationSession session = sessions.remove(id);
+        if(session == null){
+            throw new SessionNotFoundException("The session " + id + " doesn't exist.");
+        }
+        // stops the simulation and releases the forest, an off-heap grid doesn't wait for the collector.
+        session.getService().close();
+    }
+
+    public SimulationService getService(String id){
+        return getSession(id).getService();
+    }
+
+    public int getSessionCount(){
+        return sessions.size();
+    }
+
+    public void generateRandomForest(String id, RandomForestRequest randomForestRequest){
+        SimulationService service = getService(id);
+        checkForestLimits(randomForestRequest.getHeight(), randomForestRequest.getWidth());
+        service.generateRandomForest(randomForestRequest);
+    }
+
+    // The limits are checked when the reader gets the dimensions, before the grid is allocated.
+    public void initializeForest(String id, InputStream body){
+        SimulationService service = getService(id);
+        service.initializeForest(body, this::checkForestLimits);
+    }
+
+    public void startSimulation(String id, int maxGeneration, Long seed){
+        startSimulation(id, maxGeneration, seed, null);
+    }
+
+    public void startSimulation(String id, int maxGeneration, Long seed, Double generationsPerSecond){
+        getService(id).startSimulation(maxGeneration, seed, generationsPerSecond);
+    }
+
+    /**
+     * Adds the default simulation to the fair share of the sessions. afterGeneration runs after each of
+     * its generations, at the thread of the step (the scheduler publishes the generation there).
+     */
+    public void setDefaultSimulation(SimulationService service, Runnable afterGeneration){
+        this.defaultSimulation = new SimulationSession("default", service, afterGeneration);
+    }
+
+    /**
+     * Calculates one generation of the simulations that are due, in fair-share order, while the budget of
+     * the tick lasts. The steps run on the shared pool and the call returns when all of them are done.
+     * Called by the scheduler.
+     */
+    public void runScheduledGenerations(){
+        long now = System.nanoTime();
+        long deadline = now + TimeUnit.MILLISECONDS.toNanos(properties.getSessions().getTickBudgetMillis());
+
+        List<SimulationSession> simulations = new ArrayList<>(sessions.values());
+        if(defaultSimulation != null) simulations.add(defaultSimulation);
+
+        // the stopped simulations only apply the ignitions that their requests couldn't apply.
+        for(SimulationSession session : simulations) session.getService().applyPendingCommands();
+
+        // A simulation that was stopped would have a small runtime and would take the whole budget for
+        // a while, so it starts with the runtime of the least served running simulation.
+        long minimumRuntime = simulations.stream()
+                                .filter(SimulationSession::isScheduled)
+                                .mapToLong(SimulationSession::getVirtualRuntime)
+                                .min()
+                                .orElse(0L);
+        for(SimulationSession session : simulations){
+            boolean running = session.getService().isScheduledRunning();
+            if(running && !session.isScheduled()){
+                session.setVirtualRuntime(Math.max(session.getVirtualRuntime(), minimumRuntime));
+            }
+            session.setScheduled(running);
+        }
+
+        List<SimulationSession> dueSessions = simulations.stream()
+                                    .filter(session -> session.getService().isScheduledDue(now))
+                                    .sorted(Comparator.comparingLong(SimulationSession::getVirtualRuntime))
+                                    .toList();
+        if(dueSessions.isEmpty()) return;
+
+        ForkJoinPool pool = backends.getPool();
+        AtomicInteger nextSession = new AtomicInteger();
+        List<ForkJoinTask<?>> runners = new ArrayList<>();
+        for(int runner = 0; runner < Math.min(dueSessions.size(), pool.getParallelism()); runner++){
+            runners.add(pool.submit(() -> runDueSessions(dueSessions, nextSession, deadline)));
+        }
+        // the next tick must not step a session that is still being calculated.
+        for(ForkJoinTask<?> runner : runners) runner.join();
+    }
+
+    // Takes the next due session until the list or the budget is over.
+    private void runDueSessions(List<SimulationSession> dueSessions, AtomicInteger nextSession, long deadline){
+        for(int next = nextSession.getAndIncrement(); next < dueSessions.size(); next = nextSession.getAndIncrement()){
+            // checked before the generation, the first one always runs so at least one advances at each tick.
+            if(next > 0 && System.nanoTime() - deadline >= 0) return;
+
+            SimulationSession session = dueSessions.get(next);
+            SimulationService service = session.getService();
+            // it can be stopped by a request after the list was created.
+            if(!service.isScheduledRunning()) continue;
+
+            long start = System.nanoTime();
+            try{
+                service.calculateNextGeneration();
+                service.iterateGeneration();
+                service.completeScheduledStep(start);
+                session.addRuntime(System.nanoTime() - start);
+                session.afterGeneration();
+            } catch(RuntimeException e){
+                // the other sessions of the tick still run.
+                log.error("The generation of the simulation {} failed.", session.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Time (System.nanoTime()) of the next generation of the running sessions, or latest when no
+     * session is due before it. The scheduler waits until then.
+     */
+    public long getNextStepNanos(long latest){
+        long next = latest;
+        for(SimulationSession session : sessions.values()){
+            SimulationService service = session.getService();
+            if(!service.isScheduledRunning()) continue;
+
+            long sessionNext = service.getPacer().getNextStepNanos();
+            if(sessionNext - next < 0) next = sessionNext;
+        }
+        return next;
+    }
+
+    private SimulationSession getSession(String id){
+        SimulationSession session = sessions.get(id);
+        if(session == null){
+            throw new SessionNotFoundException("The session " + id + " doesn't exist.");
+        }
+        return session;
+    }
+
+    // The forest is checked before it is created, so a session cannot allocate more than its limit.
+    private void checkForestLimits(int height, int width){
+        SimulationProperties.Sessions limits = properties.getSessions();
+        long cells = (long) height * width;
+
+        if(cells > limits.getMaxCells()){
+            throw new SessionLimitException("The forest of a session can have at most "
+                                            + limits.getMaxCells() + " cells.");
+        }
+        if(Forest.estimateMemoryBytes(cells) > limits.getMaxMemoryBytes()){
+            throw new SessionLimitException("The forest of a session can use at most "
+                                            + limits.getMaxMemoryBytes() + " bytes.");
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.pauloandre7.forest_fire_simulation.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.junit.jupiter.api.Test;
+
+import com.pauloandre7.forest_fire_simulation.model.Cell;
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+class CustomForestReaderTests {
+
+	private static final String CELLS = "[[{\"row\":0,\"col\":0,\"state\":\"VEGETATION\",\"moisture\":0.2,\"relief\":0.5},"
+			+ "{\"row\":0,\"col\":1,\"state\":\"BURNING\",\"burningTime\":2,\"moisture\":0.1,\"relief\":0.3}],"
+			+ "[{\"state\":\"EMPTY\",\"moisture\":0.0,\"relief\":0.0,\"extra\":{\"ignored\":[1,2]}},"
+			+ "{\"state\":\"ASH\",\"moisture\":0.9,\"relief\":0.7}]]";
+
+	private static Forest read(String json){
+		return CustomForestReader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 0.4,
+				(height, width) -> {});
+	}
+
+	@Test
+	void streamedGridMatchesTheBoundCells(){
+		Forest forest = read("{\"height\":2,\"width\":2,\"windDirection\":\"NE\",\"forestCells\":" + CELLS
+				+ ",\"windSpeed\":3.5,\"burningTime\":4}");
+
+		ForestGrid expected = ForestGrid.fromCells(2, 2, List.of(
+				List.of(new Cell(0, 0, CellState.VEGETATION, 0.2, 0.5), new Cell(0, 1, CellState.BURNING, 2, 0.1, 0.3)),
+				List.of(new Cell(1, 0, CellState.EMPTY, 0.0, 0.0), new Cell(1, 1, CellState.ASH, 0.9, 0.7))));
+
+		ForestGrid grid = forest.getGrid();
+		for(int index = 0; index < grid.size(); index++){
+			assertEquals(expected.getState(index), grid.getState(index));
+			assertEquals(expected.getBurningTime(index), grid.getBurningTime(index));
+			assertEquals(expected.getMoisture(index), grid.getMoisture(index));
+			assertEquals(expected.getRelief(index), grid.getRelief(index));
+		}
+		assertEquals(Direction.NE, forest.getWindDirection());
+		assertEquals(3.5, forest.getWindSpeed());
+		assertEquals(4, forest.getBurningTime());
+	}
+
+	@Test
+	void dimensionsAreValidatedWhileStreaming(){
+		assertThrows(IllegalArgumentException.class,
+				() -> read("{\"height\":3,\"width\":2,\"forestCells\":" + CELLS + "}"));
+		assertThrows(IllegalArgumentException.class,
+				() -> read("{\"height\":2,\"width\":1,\"forestCells\":" + CELLS + "}"));
+		assertThrows(IllegalArgumentException.class,
+				() -> read("{\"height\":2,\"width\":2,\"forestCells\":[[{\"state\":\"VEGETATION\""));
+	}
+
+	@Test
+	void cellsBeforeTheDimensionsAreKeptUntilTheEnd(){
+		Forest sorted = read("{\"burningTime\":4,\"forestCells\":" + CELLS
+				+ ",\"height\":2,\"width\":2,\"windDirection\":\"NE\",\"windSpeed\":3.5}");
+		Forest streamed = read("{\"height\":2,\"width\":2,\"windDirection\":\"NE\",\"forestCells\":" + CELLS
+				+ ",\"windSpeed\":3.5,\"burningTime\":4}");
+
+		assertEquals(streamed.getGrid(), sorted.getGrid());
+		assertEquals(0.9, sorted.getGrid().getMoisture(3), 1e-6);
+		assertEquals(2, sorted.getGrid().getBurningTime(1));
+		assertEquals(Direction.NE, sorted.getWindDirection());
+		assertEquals(4, sorted.getBurningTime());
+	}
+
+	@Test
+	void invalidBodiesAreRejected(){
+		// rows of different widths, and dimensions that don't match the buffered cells
+		assertThrows(IllegalArgumentException.class,
+				() -> read("{\"forestCells\":[[{\"state\":\"ASH\"}],[]],\"height\":2,\"width\":1}"));
+		assertThrows(IllegalArgumentException.class,
+				() -> read("{\"forestCells\":" + CELLS + ",\"height\":3,\"width\":2}"));
+		assertThrows(IllegalArgumentException.class,
+				() -> read("{\"forestCells\":" + CELLS + ",\"height\":2,\"width\":3}"));
+		assertThrows(IllegalArgumentException.class, () -> read("{\"forestCells\":" + CELLS + "}"));
+		// a dimension that changes after the cells
+		assertThrows(IllegalArgumentException.class,
+				() -> read("{\"height\":2,\"width\":2,\"forestCells\":" + CELLS + ",\"height\":3}"));
+
+		IllegalArgumentException negative = assertThrows(IllegalArgumentException.class,
+				() -> read("{\"height\":-2,\"width\":2,\"forestCells\":" + CELLS + "}"));
+		assertEquals("The height and width cannot be negative.", negative.getMessage());
+		IllegalArgumentException repeated = assertThrows(IllegalArgumentException.class,
+				() -> read("{\"height\":2,\"width\":2,\"forestCells\":" + CELLS + ",\"forestCells\":" + CELLS + "}"));
+		assertEquals("The body has more than one forestCells.", repeated.getMessage());
+		assertThrows(IllegalArgumentException.class,
+				() -> read("{\"forestCells\":" + CELLS + ",\"forestCells\":" + CELLS + ",\"height\":2,\"width\":2}"));
+	}
+
+	@Test
+	void limitsAreCheckedBeforeTheCellsAreBuffered(){
+		List<String> checked = new ArrayList<>();
+		BiConsumer<Integer, Integer> limit = (height, width) -> {
+			checked.add(height + "x" + width);
+			if (height * width > 2) throw new IllegalArgumentException("Too many cells.");
+		};
+
+		assertThrows(IllegalArgumentException.class, () -> CustomForestReader.read(
+				new ByteArrayInputStream(("{\"forestCells\":" + CELLS + ",\"height\":2,\"width\":2}")
+						.getBytes(StandardCharsets.UTF_8)), 0.4, limit));
+		// refused at the second row, before the end of the body
+		assertEquals(List.of("1x2", "2x2"), checked);
+	}
+}
@@ -0,0 +1,75 @@
+package com.pauloandre7.forest_fire_simulation.codec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+class GenerationDeltaEncoderTests {
+
+	private static ForestGrid grid() {
+		ForestGrid grid = new ForestGrid(4, 5);
+		CellState[] states = CellState.values();
+		for (int index = 0; index < grid.size(); index++) grid.setState(index, states[(index * 7 + 3) % states.length]);
+		return grid;
+	}
+
+	@Test
+	void deltaHasOneRunForEachGroupOfConsecutiveIndexes() {
+		ForestGrid grid = grid();
+		// the last two indexes are after the count, they are not part of the delta
+		long[] changedCells = { 0, 1, 2, 7, 9, 10, 11, 12, 13, 18, 19 };
+
+		ByteBuffer frame = ByteBuffer.wrap(GenerationDeltaEncoder.encodeDelta(grid, changedCells, 9, 42, true));
+
+		assertEquals(GenerationDeltaEncoder.DELTA, frame.get());
+		assertEquals(42, frame.getInt());
+		assertEquals(1, frame.get());
+		assertEquals(3, frame.getInt());
+
+		int[][] expectedRuns = { { 0, 3 }, { 7, 1 }, { 9, 5 } };
+		for (int[] expectedRun : expectedRuns) {
+			long firstIndex = frame.getLong();
+			int length = frame.getInt();
+			assertEquals(expectedRun[0], firstIndex);
+			assertEquals(expectedRun[1], length);
+
+			// the states of the run, 4 cells for each byte starting at the first index of the run
+			byte[] packed = new byte[PackedGridEncoder.packedStatesBytes(length)];
+			frame.get(packed);
+			for (int i = 0; i < length; i++) {
+				assertEquals(grid.getStateOrdinal(firstIndex + i), (packed[i / 4] >> ((i % 4) * 2)) & 0b11);
+			}
+		}
+		assertFalse(frame.hasRemaining());
+	}
+
+	@Test
+	void deltaWithoutChangesHasNoRuns() {
+		ByteBuffer frame = ByteBuffer.wrap(GenerationDeltaEncoder.encodeDelta(grid(), new long[0], 0, 7, false));
+
+		assertEquals(GenerationDeltaEncoder.DELTA, frame.get());
+		assertEquals(7, frame.getInt());
+		assertEquals(0, frame.get());
+		assertEquals(0, frame.getInt());
+		assertFalse(frame.hasRemaining());
+	}
+
+	@Test
+	void keyframeIsThePackedGrid() {
+		ForestGrid grid = grid();
+
+		byte[] keyframe = GenerationDeltaEncoder.encodeKeyframe(grid, 5, true);
+
+		assertEquals(GenerationDeltaEncoder.KEYFRAME, keyframe[0]);
+		byte[] packedGrid = new byte[keyframe.length - 1];
+		System.arraycopy(keyframe, 1, packedGrid, 0, packedGrid.length);
+		assertArrayEquals(PackedGridEncoder.encode(grid, 5, true), packedGrid);
+	}
+}
@@ -0,0 +1,134 @@
+package com.pauloandre7.forest_fire_simulation.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class SimulationControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	void createForest() throws Exception {
+		mockMvc.perform(post("/simulation/stop"));
+		mockMvc.perform(post("/simulation/forest/random")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"height\": 200, \"width\": 150, \"burningTime\": 3, \"seed\": 1}"))
+			.andExpect(status().isOk());
+	}
+
+	@Test
+	void jsonIsStillTheDefaultRepresentation() throws Exception {
+		mockMvc.perform(get("/simulation/forest"))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+
+		mockMvc.perform(get("/simulation/forest").accept(MediaType.ALL))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+	}
+
+	@Test
+	void unchangedForestIsNotSentAgain() throws Exception {
+		String eTag = mockMvc.perform(get("/simulation/forest").accept(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		mockMvc.perform(get("/simulation/forest").accept(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, eTag))
+			.andExpect(status().isNotModified())
+			.andExpect(content().bytes(new byte[0]));
+
+		// the packed body is another representation, it doesn't match the ETag of the JSON
+		mockMvc.perform(get("/simulation/forest").accept(MediaType.APPLICATION_OCTET_STREAM)
+				.header(HttpHeaders.IF_NONE_MATCH, eTag))
+			.andExpect(status().isOk());
+
+		mockMvc.perform(post("/simulation/forest/ignite")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"x\": 1, \"y\": 1}"));
+		mockMvc.perform(get("/simulation/forest").accept(MediaType.APPLICATION_JSON)
+				.header(HttpHeaders.IF_NONE_MATCH, eTag))
+			.andExpect(status().isOk())
+			.andExpect(header().exists(HttpHeaders.ETAG));
+	}
+
+	@Test
+	void packedRepresentationHasTheHeaderAndTwoBitsPerCell() throws Exception {
+		byte[] json = mockMvc.perform(get("/simulation/forest").accept(MediaType.APPLICATION_JSON))
+			.andReturn().getResponse().getContentAsByteArray();
+
+		byte[] packed = mockMvc.perform(get("/simulation/forest").accept(MediaType.APPLICATION_OCTET_STREAM))
+			.andExpect(status().isOk())
+			.andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM))
+			.andReturn().getResponse().getContentAsByteArray();
+
+		ByteBuffer buffer = ByteBuffer.wrap(packed);
+		assertEquals(200, buffer.getInt());
+		assertEquals(150, buffer.getInt());
+		assertEquals(0, buffer.getInt());
+		assertEquals(0, buffer.get());
+		assertEquals(13 + 200 * 150 / 4, packed.length);
+
+		assertTrue(json.length / packed.length >= 40, "json " + json.length + " packed " + packed.length);
+	}
+
+	@Test
+	void customForestIsStreamedIntoTheGrid() throws Exception {
+		String cells = "[[{\"state\":\"VEGETATION\",\"moisture\":0.2,\"relief\":0.5},"
+				+ "{\"state\":\"ASH\",\"moisture\":0.1,\"relief\":0.3}]]";
+
+		mockMvc.perform(post("/simulation/forest/custom")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"height\": 1, \"width\": 2, \"forestCells\": " + cells + ", \"burningTime\": 3}"))
+			.andExpect(status().isOk());
+
+		mockMvc.perform(post("/simulation/forest/custom")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"height\": 2, \"width\": 2, \"forestCells\": " + cells + "}"))
+			.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void viewsAreBoundFromTheQueryParameters() throws Exception {
+		mockMvc.perform(get("/simulation/forest/region")
+				.param("row", "10").param("col", "20").param("height", "3").param("width", "4")
+				.param("terrain", "true"))
+			.andExpect(status().isOk())
+			.andExpect(header().exists(HttpHeaders.ETAG))
+			.andExpect(jsonPath("$.row").value(10))
+			.andExpect(jsonPath("$.states.length()").value(12))
+			.andExpect(jsonPath("$.relief.length()").value(12));
+
+		mockMvc.perform(get("/simulation/forest/region").param("row", "200"))
+			.andExpect(status().isBadRequest());
+
+		mockMvc.perform(get("/simulation/forest/lod").param("maxRows", "10").param("maxCols", "10"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.blockSize").value(32))
+			.andExpect(jsonPath("$.dominant.length()").value(7 * 5));
+
+		mockMvc.perform(get("/simulation/forest/fire-bounds"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.burningCells").isNumber());
+	}
+}
@@ -0,0 +1,220 @@
+package com.pauloandre7.forest_fire_simulation.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ForestGridTests {
+
+	@Test
+	void fromCellsKeepsThePositionOfEachCell() {
+		List<List<Cell>> cells = List.of(
+			List.of(new Cell(0, 0, CellState.VEGETATION, 0.25, 0.5), new Cell(0, 1, CellState.EMPTY, 0.0, 0.0)),
+			List.of(new Cell(1, 0, CellState.ASH, 0.0, 0.0), new Cell(1, 1, CellState.BURNING, 0.75, 1.0))
+		);
+
+		ForestGrid grid = ForestGrid.fromCells(2, 2, cells);
+
+		assertEquals(CellState.VEGETATION, grid.getState(0, 0));
+		assertEquals(CellState.EMPTY, grid.getState(0, 1));
+		assertEquals(CellState.ASH, grid.getState(1, 0));
+		assertEquals(CellState.BURNING, grid.getState(1, 1));
+		assertEquals(0.25, grid.getMoisture(grid.index(0, 0)));
+		assertEquals(1.0, grid.getRelief(grid.index(1, 1)));
+	}
+
+	@Test
+	void fromCellsRejectsAMatrixWithWrongDimensions() {
+		List<List<Cell>> cells = List.of(List.of(new Cell(0, 0, CellState.VEGETATION, 0.0, 0.0)));
+
+		assertThrows(IllegalArgumentException.class, () -> ForestGrid.fromCells(1, 2, cells));
+	}
+
+	@Test
+	void burningCellTurnsIntoAshAfterTheTimer() {
+		ForestGrid grid = new ForestGrid(1, 1);
+		grid.setState(0, CellState.VEGETATION);
+
+		grid.startBurning(0, 1);
+		grid.updateBurningState(0);
+		assertEquals(CellState.BURNING, grid.getState(0));
+
+		grid.updateBurningState(0);
+		assertEquals(CellState.ASH, grid.getState(0));
+	}
+
+	@Test
+	void offHeapGridKeepsTheSameCellsAsTheHeapGrid() {
+		// surefire starts the JVM with --enable-preview
+		assertTrue(CellStorage.isOffHeapAvailable());
+
+		Random random = new Random(5);
+		ForestGrid heapGrid = new ForestGrid(30, 40);
+		ForestGrid offHeapGrid = new ForestGrid(30, 40, true);
+		for (int index = 0; index < heapGrid.size(); index++) {
+			CellState state = CellState.values()[random.nextInt(CellState.values().length)];
+			double moisture = random.nextDouble();
+			double relief = random.nextDouble();
+			heapGrid.setState(index, state);
+			heapGrid.setTerrain(index, moisture, relief);
+			offHeapGrid.setState(index, state);
+			offHeapGrid.setTerrain(index, moisture, relief);
+		}
+		heapGrid.setState(heapGrid.index(15, 20), CellState.VEGETATION);
+		offHeapGrid.setState(offHeapGrid.index(15, 20), CellState.VEGETATION);
+		heapGrid.startBurning(heapGrid.index(15, 20), 7);
+		offHeapGrid.startBurning(offHeapGrid.index(15, 20), 7);
+
+		assertTrue(offHeapGrid.isOffHeap());
+		assertFalse(heapGrid.isOffHeap());
+		assertNull(offHeapGrid.getStateArray());
+		assertEquals(heapGrid, offHeapGrid);
+
+		ForestGrid buffer = offHeapGrid.createBuffer();
+		buffer.updateBurningState(offHeapGrid.index(15, 20));
+		assertEquals(7, offHeapGrid.getBurningTime(offHeapGrid.index(15, 20)));
+		assertEquals(6, buffer.getBurningTime(offHeapGrid.index(15, 20)));
+
+		IgnitionCoefficients heapCoefficients = new IgnitionCoefficients(heapGrid, Direction.EAST, 50, 0.125);
+		IgnitionCoefficients offHeapCoefficients = new IgnitionCoefficients(offHeapGrid, Direction.EAST, 50, 0.125);
+		for (int index = 0; index < heapGrid.size(); index++) {
+			assertEquals(heapCoefficients.ignitionProbability(index, 0b1011_0101),
+					offHeapCoefficients.ignitionProbability(index, 0b1011_0101));
+		}
+
+		// the buffer only releases its own states, the terrain is released with the grid that created it.
+		buffer.close();
+		assertEquals(heapGrid.getMoisture(0), offHeapGrid.getMoisture(0));
+		offHeapGrid.close();
+		assertThrows(IllegalStateException.class, () -> offHeapGrid.getState(0));
+	}
+
+	@Test
+	void gridOfMoreThanIntegerMaxValueCellsIndexesItsLastCell() {
+		// 50000x50000 needs 27 GB, the storage only keeps the cells that were written.
+		ForestGrid grid = new ForestGrid(50_000, 50_000, new SparseCellStorage(50_000L * 50_000));
+		long lastIndex = grid.index(49_999, 49_999);
+
+		assertTrue(grid.size() > Integer.MAX_VALUE);
+		assertEquals(grid.size() - 1, lastIndex);
+		assertEquals(49_999, grid.rowOf(lastIndex));
+		assertEquals(49_999, grid.colOf(lastIndex));
+
+		grid.setState(lastIndex, CellState.VEGETATION);
+		grid.startBurning(lastIndex, 5);
+		grid.setState(grid.index(49_998, 49_999), CellState.BURNING);
+		assertEquals(CellState.BURNING, grid.getState(49_999, 49_999));
+		assertEquals(5, grid.getBurningTime(lastIndex));
+		assertEquals(1 << Direction.NORTH.ordinal(), grid.burningNeighborMask(49_999, 49_999));
+		assertEquals(CellState.EMPTY, grid.getState(lastIndex - 1));
+
+		// the arrays of the heap can't have these cells
+		assertThrows(IllegalArgumentException.class, () -> CellStorage.allocate(50_000L * 50_000, false));
+	}
+
+	// Only the dimensions of a huge grid, the cells not written are empty.
+	private static class SparseCellStorage implements CellStorage {
+
+		private final long size;
+		private final Map<Long, Integer> states = new HashMap<>();
+		private final Map<Long, Integer> burningTimes = new HashMap<>();
+
+		SparseCellStorage(long size) {
+			this.size = size;
+		}
+
+		@Override
+		public long size() {
+			return size;
+		}
+
+		@Override
+		public int getState(long index) {
+			return states.getOrDefault(checked(index), CellState.EMPTY.ordinal());
+		}
+
+		@Override
+		public void setState(long index, int state) {
+			states.put(checked(index), state);
+		}
+
+		@Override
+		public int getBurningTime(long index) {
+			return burningTimes.getOrDefault(checked(index), 0);
+		}
+
+		@Override
+		public void setBurningTime(long index, int burningTime) {
+			burningTimes.put(checked(index), burningTime);
+		}
+
+		@Override
+		public float getMoisture(long index) {
+			return 0;
+		}
+
+		@Override
+		public float getRelief(long index) {
+			return 0;
+		}
+
+		@Override
+		public void setTerrain(long index, float moisture, float relief) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int getReliefMask(long index) {
+			return 0;
+		}
+
+		@Override
+		public void setReliefMask(long index, int mask) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void copyStates(CellStorage source, long startIndex, long length) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CellStorage createBuffer() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void writeTo(FileChannel channel, long position) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public byte[] getStateArray() {
+			return null;
+		}
+
+		@Override
+		public boolean isOffHeap() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		private long checked(long index) {
+			if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+			return index;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.pauloandre7.forest_fire_simulation.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ForestPyramidTests {
+
+	private static long[] levelCounts(ForestPyramid pyramid, int level, int height, int width) {
+		int blockSize = ForestPyramid.blockSize(level);
+		int rows = (height + blockSize - 1) / blockSize;
+		int cols = (width + blockSize - 1) / blockSize;
+		long[] counts = new long[rows * cols * ForestPyramid.STATES];
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				pyramid.addCounts(level, row, col, counts, (row * cols + col) * ForestPyramid.STATES);
+			}
+		}
+		return counts;
+	}
+
+	@Test
+	void updatedPyramidHasTheCountsOfARebuiltOne() {
+		Random random = new Random(5);
+		ForestGrid grid = new ForestGrid(70, 45);
+		for (int index = 0; index < grid.size(); index++) {
+			grid.setState(index, CellState.values()[random.nextInt(ForestPyramid.STATES)]);
+		}
+		ForestPyramid pyramid = new ForestPyramid(grid);
+		// 70 rows need blocks of 128 to fit in one
+		assertEquals(5, pyramid.getLevels());
+
+		for (int change = 0; change < 2_000; change++) {
+			int index = random.nextInt((int) grid.size());
+			int previousState = grid.getStateOrdinal(index);
+			grid.setState(index, CellState.values()[random.nextInt(ForestPyramid.STATES)]);
+			pyramid.update(index, previousState, grid.getStateOrdinal(index));
+		}
+
+		ForestPyramid rebuilt = new ForestPyramid(grid);
+		for (int level = 0; level < pyramid.getLevels(); level++) {
+			assertArrayEquals(levelCounts(rebuilt, level, 70, 45), levelCounts(pyramid, level, 70, 45));
+		}
+
+		long[] top = levelCounts(pyramid, pyramid.getLevels() - 1, 70, 45);
+		assertEquals(grid.size(), top[0] + top[1] + top[2] + top[3]);
+		assertEquals(-1, pyramid.levelOf(4));
+		assertEquals(2, pyramid.levelOf(32));
+		assertThrows(IllegalArgumentException.class, () -> pyramid.levelOf(256));
+	}
+}
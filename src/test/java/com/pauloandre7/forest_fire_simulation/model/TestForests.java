@@ -0,0 +1,100 @@
+package com.pauloandre7.forest_fire_simulation.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random forests for the tests. The same seed, size and options always build the same forest, with the
+ * generations seeded by the same seed.
+ *
+ * <pre>
+ * Forest forest = TestForests.random(11, 120, 90).emptyRatio(0.1).burningAt(60, 45).build();
+ * </pre>
+ */
+public final class TestForests {
+
+	private final long seed;
+	private final int height;
+	private final int width;
+	private double emptyRatio = 0.1;
+	private double ashRatio;
+	private double burningRatio;
+	private double maxMoisture = 1.0;
+	private final List<int[]> burningCells = new ArrayList<>();
+	private Direction windDirection = Direction.EAST;
+	private double windSpeed = 50.0;
+	private int burningTime = 4;
+	private double baseBurningProbability = 0.125;
+
+	private TestForests(long seed, int height, int width) {
+		this.seed = seed;
+		this.height = height;
+		this.width = width;
+	}
+
+	public static TestForests random(long seed, int height, int width) {
+		return new TestForests(seed, height, width);
+	}
+
+	public TestForests emptyRatio(double emptyRatio) {
+		this.emptyRatio = emptyRatio;
+		return this;
+	}
+
+	public TestForests ashRatio(double ashRatio) {
+		this.ashRatio = ashRatio;
+		return this;
+	}
+
+	// Fraction of the cells that start burning, with random timers up to the burning time.
+	public TestForests burningRatio(double burningRatio) {
+		this.burningRatio = burningRatio;
+		return this;
+	}
+
+	public TestForests maxMoisture(double maxMoisture) {
+		this.maxMoisture = maxMoisture;
+		return this;
+	}
+
+	public TestForests burningAt(int row, int col) {
+		burningCells.add(new int[] {row, col});
+		return this;
+	}
+
+	public TestForests wind(Direction windDirection, double windSpeed) {
+		this.windDirection = windDirection;
+		this.windSpeed = windSpeed;
+		return this;
+	}
+
+	public TestForests burningTime(int burningTime) {
+		this.burningTime = burningTime;
+		return this;
+	}
+
+	public TestForests baseBurningProbability(double baseBurningProbability) {
+		this.baseBurningProbability = baseBurningProbability;
+		return this;
+	}
+
+	public Forest build() {
+		Random random = new Random(seed);
+		ForestGrid grid = new ForestGrid(height, width);
+		for (int index = 0; index < grid.size(); index++) {
+			double draw = random.nextDouble();
+			grid.setState(index, draw < emptyRatio ? CellState.EMPTY
+					: draw < emptyRatio + ashRatio ? CellState.ASH : CellState.VEGETATION);
+			grid.setTerrain(index, random.nextDouble() * maxMoisture, random.nextDouble());
+			if (burningRatio > 0 && random.nextDouble() < burningRatio) {
+				grid.startBurning(index, random.nextInt(burningTime + 1));
+			}
+		}
+		for (int[] cell : burningCells) grid.startBurning(grid.index(cell[0], cell[1]), burningTime);
+
+		Forest forest = new Forest(grid, windDirection, windSpeed, burningTime, baseBurningProbability);
+		forest.reseed(seed);
+		return forest;
+	}
+}
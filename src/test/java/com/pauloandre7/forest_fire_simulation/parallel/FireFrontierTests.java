@@ -0,0 +1,50 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.TestForests;
+
+class FireFrontierTests {
+
+	@Test
+	void frontierModeMatchesTheFullSweepWithTheSameSeed() throws Exception {
+		int height = 60;
+		int width = 50;
+		TestForests randomForest = TestForests.random(42, height, width).emptyRatio(0.2)
+				.burningAt(height / 2, width / 2).wind(Direction.NORTH, 60.0).burningTime(3);
+		Forest denseForest = randomForest.build();
+		Forest frontierForest = randomForest.build();
+
+		denseForest.reseed(7);
+		frontierForest.reseed(7);
+
+		SimulationTask sweepTask = new SimulationTask(denseForest, 0, height, 0, width, 64);
+
+		FireFrontier frontier = new FireFrontier(frontierForest);
+		FrontierTask frontierTask = new FrontierTask(frontierForest, frontier);
+
+		long maxBurning = 0;
+		for (int generation = 0; generation < 80; generation++) {
+			sweepTask.reinitialize();
+			sweepTask.invoke();
+			denseForest.swapBuffers();
+
+			int candidates = frontier.collectCandidates();
+			frontierTask.setRange(0, candidates);
+			frontierTask.call();
+			frontier.finish();
+			frontierForest.swapBuffers();
+
+			maxBurning = Math.max(maxBurning, frontier.getBurningCount());
+			assertEquals(denseForest.getGrid(), frontierForest.getGrid(), "generation " + generation);
+		}
+
+		// makes sure the fire really spread during the test
+		assertTrue(maxBurning > 10);
+	}
+}
@@ -0,0 +1,189 @@
+package com.pauloandre7.forest_fire_simulation.parallel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+import com.pauloandre7.forest_fire_simulation.model.TestForests;
+
+class SimulationTaskTests {
+
+	private static Forest rowForest(int width) {
+		ForestGrid grid = new ForestGrid(1, width);
+		for (int index = 0; index < width; index++) {
+			// one burning cell every ten cells, the others are vegetation
+			grid.setState(index, CellState.VEGETATION);
+			if (index % 10 == 0) grid.startBurning(index, 1000);
+			grid.setTerrain(index, 0.5, 0.5);
+		}
+		return new Forest(grid, Direction.WEST, 0.0, 1000, 0.0);
+	}
+
+	@Test
+	void everyCellOfTheBufferIsWritten() throws Exception {
+		Forest forest = rowForest(20);
+		// buffer with a state that doesn't exist in the current grid
+		for (int index = 0; index < 20; index++) forest.getBufferGrid().setState(index, CellState.ASH);
+
+		new SimulationTask(forest, 0, 1, 0, 20, 8).invoke();
+		forest.swapBuffers();
+
+		// base probability 0 and no wind, so nothing ignites and the burning cells only tick down
+		for (int index = 0; index < 20; index++) {
+			CellState expected = index % 10 == 0 ? CellState.BURNING : CellState.VEGETATION;
+			assertEquals(expected, forest.getGrid().getState(index));
+		}
+		assertEquals(999, forest.getGrid().getBurningTime(0));
+	}
+
+	// The formula used before the IgnitionCoefficients, the precomputed one must give the same bits.
+	private static double referenceIgnitionProbability(Forest forest, int row, int col) {
+		ForestGrid grid = forest.getGrid();
+		long index = grid.index(row, col);
+		int burningNeighbors = 0;
+		double windProb = 0.0;
+		double reliefProb = 0.0;
+
+		for (Direction direction : Direction.values()) {
+			int neighborRow = row + direction.getRowOffset();
+			int neighborCol = col + direction.getColOffset();
+			if (!grid.isInside(neighborRow, neighborCol)) continue;
+
+			long neighborIndex = grid.index(neighborRow, neighborCol);
+			if (!grid.isBurning(neighborIndex)) continue;
+
+			burningNeighbors++;
+			if (direction == forest.getWindDirection()) windProb = forest.getWindSpeed() / 300;
+			if (grid.getRelief(neighborIndex) < grid.getRelief(index)) reliefProb += 0.05;
+		}
+
+		double baseProb = burningNeighbors * forest.getBaseBurningProbability();
+		baseProb *= (1 - grid.getMoisture(index));
+
+		double ignitionProbability = baseProb + windProb + reliefProb;
+		if (ignitionProbability > 1.0) ignitionProbability = 1.0;
+		if (ignitionProbability < 0.0) ignitionProbability = 0.0;
+		return ignitionProbability;
+	}
+
+	@Test
+	void precomputedIgnitionProbabilityIsBitIdenticalToTheFormula() {
+		Random random = new Random(3);
+		int height = 40;
+		int width = 30;
+		ForestGrid grid = new ForestGrid(height, width);
+		for (int index = 0; index < grid.size(); index++) {
+			grid.setState(index, random.nextBoolean() ? CellState.BURNING : CellState.VEGETATION);
+			grid.setTerrain(index, random.nextDouble(), random.nextInt(4) / 4.0);
+		}
+
+		for (Direction windDirection : Direction.values()) {
+			Forest forest = new Forest(grid, windDirection, random.nextDouble(100), 3, 0.125);
+			SimulationTask task = new SimulationTask(forest, 0, height, 0, width, Integer.MAX_VALUE);
+
+			for (int row = 0; row < height; row++) {
+				for (int col = 0; col < width; col++) {
+					double expected = referenceIgnitionProbability(forest, row, col);
+					double actual = task.calculateIgnitionProbability(row, col);
+					assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual),
+						"cell " + row + "," + col);
+				}
+			}
+		}
+	}
+
+	@Test
+	void tilesCoverTheGridWithTheConfiguredSize() {
+		Forest forest = rowForest(10);
+		TilingStrategy tiling = new TilingStrategy(11 * 4096, 4, 64);
+
+		// cache bound: 4096 cells per tile
+		assertEquals(4096, tiling.maxTileCells(1_000_000, 8));
+		// balance bound: 8 threads with 4 tasks each
+		assertEquals(3125, tiling.maxTileCells(100_000, 8));
+		// minimum size for small grids
+		assertEquals(64, tiling.maxTileCells(400, 8));
+
+		assertEquals(1, tiling.createTasks(forest, 8).countTiles());
+		assertEquals(6, new SimulationTask(forest, 0, 1, 0, 10, 2).countTiles());
+	}
+
+	@Test
+	void steadyStateGenerationDoesNotAllocatePerCell() throws Exception {
+		int width = 200_000;
+		Forest forest = rowForest(width);
+		// the tree of tiles is created once, like the service does for each forest
+		SimulationTask task = new SimulationTask(forest, 0, 1, 0, width, 4096);
+
+		// warm up so the measure doesn't count class loading and JIT
+		for (int i = 0; i < 20; i++) {
+			task.reinitialize();
+			task.invoke();
+			forest.swapBuffers();
+		}
+
+		com.sun.management.ThreadMXBean threadBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long before = threadBean.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < 10; i++) {
+			task.reinitialize();
+			task.invoke();
+			forest.swapBuffers();
+		}
+		long allocated = threadBean.getCurrentThreadAllocatedBytes() - before;
+
+		// 2 million cells were processed, a single allocation per cell would be far above this limit
+		assertTrue(allocated < 64 * 1024, "allocated " + allocated + " bytes");
+	}
+
+	@Test
+	void vectorKernelCalculatesTheSameGenerationsAsTheScalarKernel() {
+		SweepKernel vectorKernel = SweepKernel.select(true);
+		assumeTrue(vectorKernel != ScalarSweepKernel.INSTANCE, "jdk.incubator.vector is not enabled");
+
+		int[][] shapes = {{1, 1}, {1, 90}, {3, 2}, {40, 3}, {50, 70}, {67, 131}};
+		for (int[] shape : shapes) {
+			int height = shape[0];
+			int width = shape[1];
+			TestForests mixedForest = TestForests.random(11, height, width).emptyRatio(0.1).ashRatio(0.05)
+					.burningRatio(0.05).wind(Direction.SE, 40.0).burningTime(2).baseBurningProbability(0.3);
+			Forest scalarForest = mixedForest.build();
+			Forest vectorForest = mixedForest.build();
+			// small tiles, so the rows are also split at the columns
+			SimulationTask scalarTask = new SimulationTask(scalarForest, 0, height, 0, width, 37);
+			SimulationTask vectorTask = new SimulationTask(vectorForest, 0, height, 0, width, 37, vectorKernel);
+
+			for (int generation = 0; generation < 6; generation++) {
+				scalarTask.reinitialize();
+				scalarTask.invoke();
+				scalarForest.swapBuffers();
+				vectorTask.reinitialize();
+				vectorTask.invoke();
+				vectorForest.swapBuffers();
+
+				int burning = 0;
+				for (int index = 0; index < height * width; index++) {
+					if (vectorForest.getGrid().isBurning(index)) burning++;
+				}
+				assertEquals(burning, scalarTask.countBurning());
+				assertEquals(burning, vectorTask.countBurning());
+
+				for (int index = 0; index < height * width; index++) {
+					String cell = height + "x" + width + " generation " + generation + " cell " + index;
+					assertEquals(scalarForest.getGrid().getState(index), vectorForest.getGrid().getState(index), cell);
+					assertEquals(scalarForest.getGrid().getBurningTime(index),
+						vectorForest.getGrid().getBurningTime(index), cell);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.pauloandre7.forest_fire_simulation.partitioned;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+import com.pauloandre7.forest_fire_simulation.model.TestForests;
+import com.pauloandre7.forest_fire_simulation.parallel.SimulationTask;
+
+class PartitionedSimulationTests {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+	// the fire starts at the border of the first and second bands
+	private static Forest denseForest() {
+		return TestForests.random(17, 61, 47).emptyRatio(0.125).maxMoisture(0.5).burningAt(20, 23)
+				.wind(Direction.SOUTH, 40.0).baseBurningProbability(0.2).build();
+	}
+
+	@Test
+	void workerJvmsCalculateTheGenerationsOfTheSingleProcess() throws Exception {
+		Forest forest = denseForest();
+		Forest reference = forest.replicate();
+		SimulationTask sweep = new SimulationTask(reference, 0, 61, 0, 47, Integer.MAX_VALUE);
+		long ignited = reference.getGrid().index(40, 5);
+
+		try (PartitionedSimulation simulation = PartitionedSimulation.start(forest, 3,
+				PartitionedSimulation.localJvm(List.of("-Xmx64m")), TIMEOUT)) {
+			assertEquals(3, simulation.getWorkerCount());
+
+			long burning = 0;
+			for (int generation = 0; generation < 30; generation++) {
+				// an ignition at the first row of the last band, its neighbor band sees it in the halo
+				if (generation == 10) {
+					simulation.ignite(ignited);
+					reference.getGrid().startBurning(ignited, reference.getBurningTime());
+				}
+				burning = simulation.step();
+				sweep.computeSerially();
+				reference.swapBuffers();
+			}
+
+			ForestGrid gathered = new ForestGrid(61, 47);
+			simulation.gather(gathered);
+			ForestGrid expected = reference.getGrid();
+			long expectedBurning = 0;
+			for (int index = 0; index < expected.size(); index++) {
+				assertEquals(expected.getState(index), gathered.getState(index), "cell " + index);
+				assertEquals(expected.getBurningTime(index), gathered.getBurningTime(index), "cell " + index);
+				if (expected.isBurning(index)) expectedBurning++;
+			}
+			assertEquals(expectedBurning, burning);
+			assertEquals(30, simulation.getGenerations());
+			// makes sure the fire crossed the bands, otherwise the halos prove nothing
+			assertTrue(simulation.getCount(CellState.ASH) > 200);
+		}
+		// the forest given to the workers is not changed
+		assertEquals(CellState.BURNING, forest.getGrid().getState(forest.getGrid().index(20, 23)));
+	}
+
+	@Test
+	void workersMustHaveRowsToCalculate() {
+		assertThrows(IllegalArgumentException.class,
+				() -> PartitionedSimulation.start(denseForest(), 62, (coordinator, band) -> null, TIMEOUT));
+	}
+}
@@ -0,0 +1,53 @@
+package com.pauloandre7.forest_fire_simulation.scheduler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class GenerationPacerTests {
+
+	private static final long MILLIS = 1_000_000;
+
+	@Test
+	void stepTimeIsTakenFromTheDelay() {
+		// 10 generations per second, a step every 100 ms
+		GenerationPacer pacer = new GenerationPacer(10);
+		long start = pacer.getNextStepNanos();
+
+		assertFalse(pacer.completeStep(start, start + 30 * MILLIS));
+		assertEquals(start + 100 * MILLIS, pacer.getNextStepNanos());
+		assertFalse(pacer.isDue(start + 99 * MILLIS));
+		assertTrue(pacer.isDue(start + 100 * MILLIS));
+
+		// a step that woke up a bit late keeps the cadence
+		assertFalse(pacer.completeStep(start + 102 * MILLIS, start + 150 * MILLIS));
+		assertEquals(start + 200 * MILLIS, pacer.getNextStepNanos());
+	}
+
+	@Test
+	void longStepIsAnOverrunWithoutCatchingUp() {
+		GenerationPacer pacer = new GenerationPacer(10);
+		long start = pacer.getNextStepNanos();
+
+		assertTrue(pacer.completeStep(start, start + 350 * MILLIS));
+		// the next step is due when the long one ended, not three periods earlier
+		assertEquals(start + 350 * MILLIS, pacer.getNextStepNanos());
+
+		assertFalse(pacer.completeStep(start + 350 * MILLIS, start + 360 * MILLIS));
+		assertEquals(start + 450 * MILLIS, pacer.getNextStepNanos());
+	}
+
+	@Test
+	void zeroRateIsAlwaysDue() {
+		GenerationPacer pacer = new GenerationPacer(0);
+		long start = pacer.getNextStepNanos();
+
+		assertFalse(pacer.completeStep(start, start + 1000 * MILLIS));
+		assertTrue(pacer.isDue(start));
+		assertTrue(pacer.isUnbounded());
+		assertThrows(IllegalArgumentException.class, () -> pacer.setRate(-1));
+	}
+}
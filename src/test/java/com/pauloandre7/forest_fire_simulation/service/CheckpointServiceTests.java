@@ -0,0 +1,231 @@
+package com.pauloandre7.forest_fire_simulation.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.pauloandre7.forest_fire_simulation.codec.ForestCheckpoint;
+import com.pauloandre7.forest_fire_simulation.dto.BatchRunResultDTO;
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+import com.pauloandre7.forest_fire_simulation.model.TestForests;
+
+class CheckpointServiceTests {
+
+	private static Forest forest() {
+		Random random = new Random(3);
+		ForestGrid grid = new ForestGrid(90, 70);
+		for (int index = 0; index < grid.size(); index++) {
+			grid.setState(index, random.nextInt(10) == 0 ? CellState.EMPTY : CellState.VEGETATION);
+			grid.setTerrain(index, random.nextDouble(0.5), random.nextDouble());
+		}
+		grid.startBurning(grid.index(45, 35), 4);
+		return new Forest(grid, Direction.SOUTH, 40.0, 4, 0.125);
+	}
+
+	// big enough for the copy of a checkpoint to take longer than a generation
+	private static Forest bigForest() {
+		return TestForests.random(6, 300, 300).maxMoisture(0.5).burningAt(150, 150).wind(Direction.SOUTH, 40.0).build();
+	}
+
+	private static void step(SimulationService service, int generations) {
+		for (int generation = 0; generation < generations; generation++) {
+			service.calculateNextGeneration();
+			service.iterateGeneration();
+		}
+	}
+
+	@Test
+	void restoredSimulationContinuesLikeTheOriginal(@TempDir Path directory) throws Exception {
+		Path file = directory.resolve("forest.ckpt");
+
+		SimulationService original = new SimulationService();
+		CheckpointService originalCheckpoints = new CheckpointService(original, file, 0);
+		original.loadForest(forest());
+		original.startSimulation(60, 8L);
+		step(original, 20);
+
+		// the checkpoint of a running simulation is taken at the next tick
+		Thread scheduler = new Thread(() -> {
+			while (originalCheckpoints.getPath().toFile().length() == 0) {
+				originalCheckpoints.afterTick(false);
+				Thread.onSpinWait();
+			}
+		});
+		scheduler.start();
+		ForestCheckpoint checkpoint = originalCheckpoints.checkpoint();
+		scheduler.join();
+
+		assertEquals(20, checkpoint.currentGeneration());
+		assertEquals(ForestCheckpoint.HEADER_BYTES + ForestGrid.serializedBytes(90, 70), Files.size(file));
+		step(original, 40);
+
+		SimulationService restored = new SimulationService();
+		new CheckpointService(restored, file, 0).restore(true);
+		assertTrue(restored.isRunning());
+		assertEquals(20, restored.getCurrentGeneration());
+		step(restored, 40);
+
+		assertEquals(original.getCurrentForest().getGrid(), restored.getCurrentForest().getGrid());
+		assertEquals(60, restored.getCurrentGeneration());
+	}
+
+	@Test
+	void checkpointOfABatchRunHasTheGridOfItsGeneration(@TempDir Path directory) throws Exception {
+		Path file = directory.resolve("forest.ckpt");
+		SimulationService service = new SimulationService();
+		CheckpointService checkpoints = new CheckpointService(service, file, 0);
+		service.loadForest(bigForest());
+
+		CompletableFuture<BatchRunResultDTO> batch = service.submitBatch(100_000, 6L);
+		Thread scheduler = new Thread(() -> {
+			while (!batch.isDone()) {
+				checkpoints.afterTick(false);
+				Thread.onSpinWait();
+			}
+		});
+		scheduler.start();
+
+		List<ForestCheckpoint> taken = new ArrayList<>();
+		while (!batch.isDone() && taken.size() < 20) {
+			try {
+				checkpoints.checkpoint();
+				taken.add(ForestCheckpoint.read(file));
+			} catch (IOException e) {
+				// the batch ended before the request was taken
+				assertTrue(batch.isDone());
+			}
+		}
+		BatchRunResultDTO result = batch.get(60, TimeUnit.SECONDS);
+		scheduler.join();
+		assertTrue(result.isExtinguished());
+		assertFalse(taken.isEmpty());
+
+		// the same run, one generation at a time, has the grid of each checkpoint at its generation
+		SimulationService reference = new SimulationService();
+		reference.loadForest(bigForest());
+		reference.startSimulation(100_000, 6L);
+		for (ForestCheckpoint checkpoint : taken) {
+			if (checkpoint.currentGeneration() == 100_000) continue;
+			assertEquals(checkpoint.currentGeneration(), checkpoint.stepCount());
+			step(reference, checkpoint.currentGeneration() - reference.getCurrentGeneration());
+			assertEquals(reference.getCurrentForest().getGrid(), checkpoint.grid(),
+					"generation " + checkpoint.currentGeneration());
+		}
+	}
+
+	@Test
+	void automaticCheckpointsFollowTheInterval(@TempDir Path directory) throws Exception {
+		Path file = directory.resolve("forest.ckpt");
+		SimulationService service = new SimulationService();
+		CheckpointService checkpoints = new CheckpointService(service, file, 5);
+		service.loadForest(forest());
+		service.startSimulation(100, 1L);
+
+		for (int generation = 1; generation <= 12; generation++) {
+			step(service, 1);
+			checkpoints.afterTick(true);
+			while (checkpoints.isWriting()) Thread.onSpinWait();
+		}
+
+		assertEquals(10, ForestCheckpoint.read(file).currentGeneration());
+	}
+
+	@Test
+	void offHeapForestIsReplacedWhileItsCheckpointIsWritten(@TempDir Path directory) throws Exception {
+		Path file = directory.resolve("forest.ckpt");
+		SimulationService service = new SimulationService();
+		CheckpointService checkpoints = new CheckpointService(service, file, 0);
+
+		// big enough for the file to be written after the forest is replaced
+		ForestGrid grid = new ForestGrid(2500, 2500, true);
+		assertTrue(grid.isOffHeap());
+		Random random = new Random(5);
+		for (int index = 0; index < grid.size(); index += 97) grid.setTerrain(index, random.nextFloat(), random.nextFloat());
+		grid.startBurning(grid.index(1250, 1250), 4);
+		service.loadForest(new Forest(grid, Direction.SOUTH, 40.0, 4, 0.125));
+		service.startSimulation(50, 4L);
+		ForestGrid expected = new ForestGrid(grid);
+
+		// a running simulation, the copy is taken by the next tick and written at the writer thread
+		CompletableFuture<ForestCheckpoint> request = CompletableFuture.supplyAsync(() -> {
+			try {
+				return checkpoints.checkpoint();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		while (!checkpoints.isWriting() && !request.isDone()) checkpoints.afterTick(false);
+
+		// the old forest is closed, the copy keeps its terrain until the file is written
+		service.stopSimulation();
+		service.loadForest(forest());
+		assertThrows(IllegalStateException.class, () -> grid.getState(0));
+
+		assertEquals(0, request.get(60, TimeUnit.SECONDS).currentGeneration());
+		ForestCheckpoint written = ForestCheckpoint.read(file);
+		assertEquals(expected, written.grid());
+		written.grid().close();
+	}
+
+	@Test
+	void checkpointWithAnUnknownWindIsRejected(@TempDir Path directory) throws Exception {
+		Path file = directory.resolve("forest.ckpt");
+		SimulationService service = new SimulationService();
+		service.loadForest(forest());
+		new CheckpointService(service, file, 0).checkpoint();
+
+		// the wind byte is after the magic, the version, the height and the width
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[16] = (byte) Direction.values().length;
+		Files.write(file, bytes);
+
+		assertThrows(IllegalArgumentException.class, () -> ForestCheckpoint.read(file));
+	}
+
+	@Test
+	void checkpointIsMappedOffTheHeapAndReleasedWhenReplaced(@TempDir Path directory) throws Exception {
+		Path file = directory.resolve("forest.ckpt");
+		SimulationService original = new SimulationService();
+		original.loadForest(forest());
+		original.startSimulation(50, 4L);
+		step(original, 10);
+		original.stopSimulation();
+		new CheckpointService(original, file, 0).checkpoint();
+
+		// every forest is big enough to be mapped off the heap.
+		SimulationService restored = new SimulationService();
+		new CheckpointService(restored, file, 0, cells -> true).restore(false);
+		Forest mapped = restored.getCurrentForest();
+		assertTrue(mapped.getGrid().isOffHeap());
+		assertEquals(original.getCurrentForest().getGrid(), mapped.getGrid());
+
+		original.resumeSimulation();
+		restored.resumeSimulation();
+		step(original, 30);
+		step(restored, 30);
+		assertEquals(original.getCurrentForest().getGrid(), mapped.getGrid());
+		// the generations of the mapped grid stay in the memory, the file keeps the checkpoint.
+		assertEquals(10, ForestCheckpoint.read(file).currentGeneration());
+		assertEquals(Files.size(file), ForestCheckpoint.HEADER_BYTES + ForestGrid.serializedBytes(90, 70));
+
+		restored.stopSimulation();
+		restored.loadForest(forest());
+		assertThrows(IllegalStateException.class, () -> mapped.getGrid().getState(0));
+	}
+}
@@ -0,0 +1,52 @@
+package com.pauloandre7.forest_fire_simulation.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import com.pauloandre7.forest_fire_simulation.dto.EnsembleRequest;
+import com.pauloandre7.forest_fire_simulation.dto.EnsembleResultDTO;
+import com.pauloandre7.forest_fire_simulation.dto.RandomForestRequest;
+
+class EnsembleServiceTests {
+
+	private static EnsembleResultDTO run(int threads) {
+		EnsembleService service = new EnsembleService(new ForkJoinPool(threads));
+		return service.runEnsemble(new EnsembleRequest(null, new RandomForestRequest(60, 60, 3, 1L), 40, 9L, 0));
+	}
+
+	@Test
+	void probabilitiesDoNotDependOnTheThreads() {
+		EnsembleResultDTO single = run(1);
+		EnsembleResultDTO parallel = run(4);
+
+		assertEquals(single.getReplicaGenerations(), parallel.getReplicaGenerations());
+		for (int row = 0; row < single.getHeight(); row++) {
+			assertArrayEquals(single.getBurnProbability()[row], parallel.getBurnProbability()[row]);
+		}
+
+		// the ignition point burns in every replica, and the replicas are not all the same
+		float max = 0;
+		boolean partial = false;
+		for (float[] row : single.getBurnProbability()) {
+			for (float probability : row) {
+				max = Math.max(max, probability);
+				partial |= probability > 0 && probability < 1;
+			}
+		}
+		assertEquals(1.0f, max);
+		assertTrue(partial);
+	}
+
+	@Test
+	void ensembleNeedsExactlyOneForest() {
+		EnsembleService service = new EnsembleService(new ForkJoinPool(1));
+		assertThrows(IllegalArgumentException.class,
+				() -> service.runEnsemble(new EnsembleRequest(null, null, 10, 1L, 0)));
+	}
+}
@@ -0,0 +1,262 @@
+package com.pauloandre7.forest_fire_simulation.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.pauloandre7.forest_fire_simulation.codec.GenerationDeltaEncoder;
+import com.pauloandre7.forest_fire_simulation.codec.PackedGridEncoder;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+import com.pauloandre7.forest_fire_simulation.model.TestForests;
+
+class ForestStreamPublisherTests {
+
+	private final ManualExecutor sender = new ManualExecutor();
+
+	private static SimulationService runningService(long seed, int height, int width) {
+		SimulationService service = new SimulationService();
+		service.loadForest(TestForests.random(seed, height, width).burningAt(height / 2, width / 2).burningTime(50)
+				.build());
+		service.startSimulation(1000, seed);
+		return service;
+	}
+
+	private static void step(SimulationService service) {
+		service.calculateNextGeneration();
+		service.iterateGeneration();
+	}
+
+	private static int[] states(ForestGrid grid) {
+		int[] states = new int[(int) grid.size()];
+		for (int index = 0; index < states.length; index++) states[index] = grid.getStateOrdinal(index);
+		return states;
+	}
+
+	// The states of a keyframe, after checking its header.
+	private static int[] decodeKeyframe(byte[] frame, ForestGrid grid, int generation, boolean running) {
+		ByteBuffer buffer = ByteBuffer.wrap(frame);
+		assertEquals(GenerationDeltaEncoder.KEYFRAME, buffer.get());
+		assertEquals(grid.getHeight(), buffer.getInt());
+		assertEquals(grid.getWidth(), buffer.getInt());
+		assertEquals(generation, buffer.getInt());
+		assertEquals(running ? 1 : 0, buffer.get());
+
+		byte[] packed = new byte[(int) PackedGridEncoder.packedStatesBytes(grid.size())];
+		buffer.get(packed);
+		assertFalse(buffer.hasRemaining());
+		return unpack(packed, (int) grid.size());
+	}
+
+	// Writes the runs of a delta over the states of the previous frame.
+	private static void applyDelta(byte[] frame, int[] states, int generation) {
+		ByteBuffer buffer = ByteBuffer.wrap(frame);
+		assertEquals(GenerationDeltaEncoder.DELTA, buffer.get());
+		assertEquals(generation, buffer.getInt());
+		buffer.get();
+
+		int runs = buffer.getInt();
+		for (int run = 0; run < runs; run++) {
+			int firstIndex = (int) buffer.getLong();
+			int length = buffer.getInt();
+			byte[] packed = new byte[PackedGridEncoder.packedStatesBytes(length)];
+			buffer.get(packed);
+			int[] runStates = unpack(packed, length);
+			System.arraycopy(runStates, 0, states, firstIndex, length);
+		}
+		assertFalse(buffer.hasRemaining());
+	}
+
+	private static int[] unpack(byte[] packed, int cells) {
+		int[] states = new int[cells];
+		for (int i = 0; i < cells; i++) states[i] = (packed[i / 4] >> ((i % 4) * 2)) & 0b11;
+		return states;
+	}
+
+	@Test
+	void viewerOfAStoppedSimulationGetsTheGridWhenItConnects() {
+		SimulationService service = new SimulationService();
+		service.loadForest(TestForests.random(3, 9, 14).build());
+		ForestStreamPublisher publisher = new ForestStreamPublisher(service, sender);
+
+		RecordingEmitter emitter = new RecordingEmitter();
+		publisher.subscribe(emitter);
+		sender.runPending();
+
+		assertEquals(List.of("keyframe"), emitter.names());
+		ForestGrid grid = service.getCurrentForest().getGrid();
+		assertArrayEquals(states(grid), decodeKeyframe(emitter.frame(0), grid, 0, false));
+	}
+
+	@Test
+	void viewerGetsAKeyframeAndThenTheDeltas() {
+		SimulationService service = runningService(5, 16, 12);
+		ForestStreamPublisher publisher = new ForestStreamPublisher(service, sender);
+		ForestGrid grid = service.getCurrentForest().getGrid();
+
+		RecordingEmitter emitter = new RecordingEmitter();
+		publisher.subscribe(emitter);
+		sender.runPending();
+		// the simulation is running, the keyframe goes with the next generation
+		assertTrue(emitter.names().isEmpty());
+
+		step(service);
+		assertTrue(publisher.publishGeneration());
+		sender.runPending();
+		int[] states = decodeKeyframe(emitter.frame(0), grid, 1, true);
+		assertArrayEquals(states(service.getCurrentForest().getGrid()), states);
+
+		for (int generation = 2; generation <= 4; generation++) {
+			step(service);
+			assertTrue(publisher.publishGeneration());
+			sender.runPending();
+			applyDelta(emitter.frame(generation - 1), states, generation);
+			assertArrayEquals(states(service.getCurrentForest().getGrid()), states);
+		}
+		assertEquals(List.of("keyframe", "delta", "delta", "delta"), emitter.names());
+	}
+
+	@Test
+	void generationIsSkippedWhileTheViewersAreReceiving() {
+		SimulationService service = runningService(7, 16, 12);
+		ForestStreamPublisher publisher = new ForestStreamPublisher(service, sender);
+		RecordingEmitter emitter = new RecordingEmitter();
+		publisher.subscribe(emitter);
+
+		step(service);
+		assertTrue(publisher.publishGeneration());
+		sender.runPending();
+		step(service);
+		assertTrue(publisher.publishGeneration());
+
+		// the frames of generation 2 were not sent yet, so generation 3 is not even encoded
+		step(service);
+		assertFalse(publisher.publishGeneration());
+		assertEquals(1, sender.pending());
+		sender.runPending();
+
+		// the viewer missed generation 3, the next frame is a keyframe
+		step(service);
+		assertTrue(publisher.publishGeneration());
+		sender.runPending();
+		step(service);
+		assertTrue(publisher.publishGeneration());
+		sender.runPending();
+
+		assertEquals(List.of("keyframe", "delta", "keyframe", "delta"), emitter.names());
+		ForestGrid grid = service.getCurrentForest().getGrid();
+		int[] states = decodeKeyframe(emitter.frame(2), grid, 4, true);
+		applyDelta(emitter.frame(3), states, 5);
+		assertArrayEquals(states(grid), states);
+	}
+
+	@Test
+	void viewerGetsAKeyframeOfTheNewForest() {
+		SimulationService service = runningService(9, 16, 12);
+		ForestStreamPublisher publisher = new ForestStreamPublisher(service, sender);
+		RecordingEmitter emitter = new RecordingEmitter();
+		publisher.subscribe(emitter);
+
+		for (int generation = 1; generation <= 2; generation++) {
+			step(service);
+			publisher.publishGeneration();
+			sender.runPending();
+		}
+
+		// the deltas of the old forest would be applied to a grid of another size
+		service.stopSimulation();
+		service.loadForest(TestForests.random(10, 20, 8).burningAt(10, 4).burningTime(50).build());
+		service.startSimulation(1000, 10L);
+		step(service);
+		assertTrue(publisher.publishGeneration());
+		sender.runPending();
+
+		assertEquals(List.of("keyframe", "delta", "keyframe"), emitter.names());
+		ForestGrid grid = service.getCurrentForest().getGrid();
+		assertArrayEquals(states(grid), decodeKeyframe(emitter.frame(2), grid, 1, true));
+	}
+
+	// Keeps the events instead of writing them to a response.
+	private static class RecordingEmitter extends SseEmitter {
+
+		private final List<String> names = new ArrayList<>();
+		private final List<byte[]> frames = new ArrayList<>();
+
+		@Override
+		public void send(SseEventBuilder builder) {
+			StringBuilder text = new StringBuilder();
+			for (DataWithMediaType data : builder.build()) text.append(data.getData());
+
+			for (String line : text.toString().split("\n")) {
+				if (line.startsWith("event:")) names.add(line.substring("event:".length()));
+				if (line.startsWith("data:")) frames.add(Base64.getDecoder().decode(line.substring("data:".length())));
+			}
+		}
+
+		List<String> names() {
+			return names;
+		}
+
+		byte[] frame(int index) {
+			return frames.get(index);
+		}
+	}
+
+	// The sender of the publisher, its tasks run at the test thread when the test calls runPending().
+	private static class ManualExecutor extends AbstractExecutorService {
+
+		private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+		void runPending() {
+			for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) task.run();
+		}
+
+		int pending() {
+			return tasks.size();
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		@Override
+		public void shutdown() {
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			List<Runnable> pendingTasks = new ArrayList<>(tasks);
+			tasks.clear();
+			return pendingTasks;
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return false;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return false;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,464 @@
+package com.pauloandre7.forest_fire_simulation.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.pauloandre7.forest_fire_simulation.config.SimulationProperties;
+import com.pauloandre7.forest_fire_simulation.dto.BatchRunResultDTO;
+import com.pauloandre7.forest_fire_simulation.dto.CellCoordinatesRequest;
+import com.pauloandre7.forest_fire_simulation.dto.CellStateDTO;
+import com.pauloandre7.forest_fire_simulation.dto.CurrentForestDTO;
+import com.pauloandre7.forest_fire_simulation.dto.ViewportRequest;
+import com.pauloandre7.forest_fire_simulation.metrics.SimulationMetrics;
+import com.pauloandre7.forest_fire_simulation.model.CellState;
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+import com.pauloandre7.forest_fire_simulation.model.TestForests;
+import com.pauloandre7.forest_fire_simulation.parallel.ExecutionBackends;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+class SimulationServiceTests {
+
+	private static Forest denseForest() {
+		return TestForests.random(11, 120, 90).maxMoisture(0.5).burningAt(60, 45).build();
+	}
+
+	private static List<CellState> runSeeded(int parallelism, int minTileCells) {
+		return runSeeded(parallelism, minTileCells, ExecutionBackends.Mode.FORK_JOIN);
+	}
+
+	private static List<CellState> runSeeded(int parallelism, int minTileCells, ExecutionBackends.Mode mode) {
+		SimulationProperties properties = new SimulationProperties();
+		properties.setParallelism(parallelism);
+		properties.getTiling().setMinTileCells(minTileCells);
+		properties.getBackend().setMode(mode);
+		SimulationService service = new SimulationService(properties);
+
+		service.loadForest(denseForest());
+		service.startSimulation(60, 5L);
+		for (int generation = 0; generation < 60; generation++) {
+			service.calculateNextGeneration();
+			service.iterateGeneration();
+		}
+
+		return states(service.getCurrentForest().getGrid());
+	}
+
+	private static List<CellState> states(ForestGrid grid) {
+		List<CellState> states = new ArrayList<>((int) grid.size());
+		for (int index = 0; index < grid.size(); index++) states.add(grid.getState(index));
+		return states;
+	}
+
+	@Test
+	void seededRunIsTheSameForAnyAmountOfThreadsAndTiles() {
+		List<CellState> singleThread = runSeeded(1, 1_000_000);
+
+		// makes sure the fire spread, otherwise the comparison proves nothing
+		assertTrue(singleThread.stream().filter(state -> state == CellState.ASH).count() > 20);
+		assertEquals(singleThread, runSeeded(4, 64));
+		assertEquals(singleThread, runSeeded(3, 500));
+	}
+
+	@Test
+	void everyBackendCalculatesTheSameGenerations() {
+		List<CellState> serial = runSeeded(4, 64, ExecutionBackends.Mode.SERIAL);
+
+		assertEquals(serial, runSeeded(4, 64, ExecutionBackends.Mode.FORK_JOIN));
+		assertEquals(serial, runSeeded(4, 64, ExecutionBackends.Mode.FIXED));
+		assertEquals(serial, runSeeded(4, 64, ExecutionBackends.Mode.VIRTUAL));
+	}
+
+	@Test
+	void autoBackendKeepsSmallForestsAtTheCallingThread() {
+		ExecutionBackends backends = new ExecutionBackends(ExecutionBackends.Mode.AUTO, 400, new ForkJoinPool(2));
+
+		assertEquals("serial", backends.select(20 * 20).getName());
+		assertEquals("fork-join", backends.select(21 * 20).getName());
+	}
+
+	@Test
+	void changedCellsRebuildEveryGenerationFromThePreviousOne() {
+		SimulationService service = new SimulationService();
+		Forest forest = denseForest();
+		service.loadForest(forest);
+		service.startSimulation(60, 3L);
+
+		byte[] viewerStates = new byte[(int) forest.getGrid().size()];
+		for (int index = 0; index < viewerStates.length; index++) {
+			viewerStates[index] = (byte) forest.getGrid().getStateOrdinal(index);
+		}
+
+		for (int generation = 0; generation < 60; generation++) {
+			if (generation == 10) {
+				// an ignition between generations must be part of the next changes
+				service.igniteCell(new CellCoordinatesRequest(5, 5));
+			}
+			service.calculateNextGeneration();
+			service.iterateGeneration();
+
+			ForestGrid grid = forest.getGrid();
+			for (long index : service.getChangedCells()) {
+				viewerStates[(int) index] = (byte) grid.getStateOrdinal(index);
+			}
+			for (int index = 0; index < viewerStates.length; index++) {
+				assertEquals(grid.getStateOrdinal(index), viewerStates[index], "generation " + generation);
+			}
+		}
+	}
+
+	@Test
+	void batchRunStopsWhenTheFireDiesOut() {
+		SimulationService service = new SimulationService();
+		service.loadForest(denseForest());
+
+		BatchRunResultDTO result = service.runToCompletion(100_000, 9L);
+
+		assertTrue(result.isExtinguished());
+		assertFalse(result.isCancelled());
+		assertFalse(service.isRunning());
+		assertTrue(result.getGenerations() < 100_000);
+		// the generations after the extinction are skipped, the counter jumps to the end
+		assertEquals(100_000, service.getCurrentGeneration());
+		assertTrue(result.getBurnedCells() > 20);
+		assertTrue(result.getCellsPerSecond() > 0);
+	}
+
+	@Test
+	void scheduledSimulationStopsItselfWhenTheFireGoesOut() {
+		SimulationService service = new SimulationService();
+		Forest forest = denseForest();
+		service.loadForest(forest);
+		service.startSimulation(100_000, 9L);
+
+		int steps = 0;
+		while (service.isScheduledRunning()) {
+			service.calculateNextGeneration();
+			service.iterateGeneration();
+			steps++;
+
+			int burning = 0;
+			for (int index = 0; index < forest.getGrid().size(); index++) {
+				if (forest.getGrid().isBurning(index)) burning++;
+			}
+			// the count of the step must match the grid, with the frontier and with the full sweep
+			assertEquals(burning, service.getBurningCount(), "step " + steps);
+		}
+
+		assertTrue(service.isExtinguished());
+		assertTrue(steps < 100_000);
+		assertEquals(100_000, service.getCurrentGeneration());
+	}
+
+	@Test
+	void forestWithoutFireKeepsRunningUntilAnIgnition() {
+		SimulationService service = new SimulationService();
+		Forest forest = denseForest();
+		forest.getGrid().setState(forest.getGrid().index(60, 45), CellState.ASH);
+		service.loadForest(forest);
+		service.startSimulation(0, 9L);
+
+		for (int generation = 0; generation < 5; generation++) {
+			service.calculateNextGeneration();
+			service.iterateGeneration();
+		}
+		assertTrue(service.isRunning());
+
+		service.igniteCell(new CellCoordinatesRequest(10, 10));
+		service.calculateNextGeneration();
+		service.iterateGeneration();
+		assertTrue(service.getBurningCount() > 0);
+		assertFalse(service.isExtinguished());
+	}
+
+	@Test
+	void batchRunIsCancelledByStop() throws Exception {
+		SimulationService service = new SimulationService();
+		ForestGrid grid = new ForestGrid(50, 50);
+		// a cell that burns for a long time and cannot spread, so the run only ends by the stop
+		for (int index = 1; index < grid.size(); index++) grid.setState(index, CellState.EMPTY);
+		grid.startBurning(0, Short.MAX_VALUE);
+		service.loadForest(new Forest(grid, Direction.EAST, 0.0, 10, 0.125));
+
+		Thread stopper = new Thread(() -> {
+			while (!service.isRunning()) Thread.onSpinWait();
+			service.stopSimulation();
+		});
+		stopper.start();
+
+		BatchRunResultDTO result = service.runToCompletion(Integer.MAX_VALUE, 1L);
+		stopper.join();
+
+		assertTrue(result.isCancelled());
+		assertFalse(result.isExtinguished());
+	}
+
+	@Test
+	void submittedBatchRunIsNeverSteppedByTheScheduler() throws Exception {
+		SimulationService service = new SimulationService();
+		ForestGrid grid = new ForestGrid(50, 50);
+		for (int index = 1; index < grid.size(); index++) grid.setState(index, CellState.EMPTY);
+		grid.startBurning(0, Short.MAX_VALUE);
+		service.loadForest(new Forest(grid, Direction.EAST, 0.0, 10, 0.125));
+
+		CompletableFuture<BatchRunResultDTO> batch = service.submitBatch(Integer.MAX_VALUE, 1L);
+		// the run is started when the call returns, and the scheduler already sees the batch
+		assertTrue(service.isRunning());
+		assertFalse(service.isScheduledRunning());
+
+		// a second run is refused without releasing the first one
+		assertThrows(IllegalStateException.class, () -> service.submitBatch(10, 1L));
+		assertThrows(IllegalStateException.class, () -> service.runToCompletion(10, 1L));
+		assertFalse(service.isScheduledRunning());
+
+		service.stopSimulation();
+		BatchRunResultDTO result = batch.get(30, TimeUnit.SECONDS);
+		assertTrue(result.isCancelled());
+		assertFalse(service.isScheduledRunning());
+
+		// a start that fails leaves no batch flag behind
+		SimulationService empty = new SimulationService();
+		assertThrows(IllegalStateException.class, () -> empty.submitBatch(10, 1L));
+		empty.loadForest(new Forest(new ForestGrid(5, 5), Direction.EAST, 0.0, 10, 0.125));
+		empty.startSimulation(10, 1L);
+		assertTrue(empty.isScheduledRunning());
+	}
+
+	@Test
+	void generationsAreMeasured() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		SimulationMetrics metrics = new SimulationMetrics(registry, "default");
+		SimulationService service = new SimulationService(new SimulationProperties(), new ForkJoinPool(2), metrics);
+		service.loadForest(denseForest());
+		service.startSimulation(30, 5L);
+
+		for (int generation = 0; generation < 30; generation++) {
+			service.calculateNextGeneration();
+			service.iterateGeneration();
+		}
+		service.getJsonDisplaySnapshot();
+
+		assertEquals(30, metrics.getComputeTimer().count());
+		assertEquals(30, metrics.getCopyTimer().count());
+		assertTrue(metrics.getCellsProcessed().count() > 30);
+		assertEquals(1, metrics.getJsonDisplayTimer().count());
+		assertEquals(0, metrics.getGenerationErrors().count());
+		assertTrue(service.getBurningCount() > 0);
+	}
+
+	@Test
+	void displaySnapshotIsSerializedOnceForEachVersion() {
+		SimulationService service = new SimulationService();
+		service.loadForest(denseForest());
+		service.startSimulation(10, 3L);
+		service.calculateNextGeneration();
+		service.iterateGeneration();
+
+		DisplaySnapshot snapshot = service.getJsonDisplaySnapshot();
+		// the same JSON that the mapper writes for the DTO
+		ForestGrid grid = service.getCurrentForest().getGrid();
+		List<List<CellStateDTO>> rows = new ArrayList<>();
+		for (int row = 0; row < grid.getHeight(); row++) {
+			List<CellStateDTO> cells = new ArrayList<>();
+			for (int col = 0; col < grid.getWidth(); col++) cells.add(new CellStateDTO(grid.getState(row, col)));
+			rows.add(cells);
+		}
+		CurrentForestDTO dto = new CurrentForestDTO(rows, 1, true);
+		assertArrayEquals(JsonMapper.builder().build().writeValueAsBytes(dto), snapshot.body());
+		assertSame(snapshot, service.getJsonDisplaySnapshot());
+		assertNotEquals(snapshot.eTag(), service.getPackedDisplaySnapshot().eTag());
+
+		// a running simulation applies the ignition at the next generation boundary
+		service.igniteCell(new CellCoordinatesRequest(0, 0));
+		assertSame(snapshot, service.getJsonDisplaySnapshot());
+
+		service.calculateNextGeneration();
+		service.iterateGeneration();
+		DisplaySnapshot next = service.getJsonDisplaySnapshot();
+		assertEquals(2, next.generation());
+		assertNotEquals(snapshot.eTag(), next.eTag());
+	}
+
+	@Test
+	void concurrentIgnitionsAreAppliedBetweenGenerations() throws Exception {
+		ForestGrid grid = new ForestGrid(80, 50);
+		// no spread, so the burning cells are only the ignited ones
+		SimulationService service = new SimulationService();
+		service.loadForest(new Forest(grid, Direction.EAST, 0.0, 10_000, 0.0));
+		service.startSimulation(0, 1L);
+
+		List<Thread> producers = new ArrayList<>();
+		for (int producer = 0; producer < 4; producer++) {
+			int firstRow = producer * 20;
+			producers.add(Thread.ofPlatform().start(() -> {
+				for (int row = firstRow; row < firstRow + 20; row++) {
+					for (int col = 0; col < 50; col++) service.igniteCell(new CellCoordinatesRequest(col, row));
+				}
+			}));
+		}
+		while (producers.stream().anyMatch(Thread::isAlive)) {
+			service.calculateNextGeneration();
+			service.iterateGeneration();
+		}
+		for (Thread producer : producers) producer.join();
+		service.calculateNextGeneration();
+
+		assertEquals(grid.size(), service.getBurningCount());
+	}
+
+	// Counts of each state by blocks, from the cells of the displayed forest.
+	private static int[] countBlocks(SimulationService service, int blockSize, int rows, int cols) {
+		int[] counts = new int[rows * cols * CellState.values().length];
+		ForestGrid grid = service.getCurrentForest().getGrid();
+		for (int row = 0; row < grid.getHeight(); row++) {
+			for (int col = 0; col < grid.getWidth(); col++) {
+				int block = row / blockSize * cols + col / blockSize;
+				counts[block * CellState.values().length + grid.getStateOrdinal(grid.index(row, col))]++;
+			}
+		}
+		return counts;
+	}
+
+	private static int[] toArray(JsonNode node) {
+		int[] values = new int[node.size()];
+		for (int i = 0; i < values.length; i++) values[i] = node.get(i).asInt();
+		return values;
+	}
+
+	@Test
+	void levelOfDetailFollowsTheGenerationsAndIgnitions() {
+		JsonMapper mapper = JsonMapper.builder().build();
+		SimulationService service = new SimulationService();
+		service.loadForest(denseForest());
+
+		// the first view builds the pyramid, the next ones read the counts updated by the generations
+		ViewportRequest wholeForest = new ViewportRequest();
+		JsonNode view = mapper.readTree(service.getLevelOfDetail(wholeForest, 8, 8, true).body());
+		assertEquals(16, view.get("blockSize").asInt());
+		assertEquals(8, view.get("rows").asInt());
+		assertEquals(6, view.get("cols").asInt());
+
+		service.startSimulation(30, 7L);
+		for (int generation = 0; generation < 30; generation++) {
+			service.calculateNextGeneration();
+			service.iterateGeneration();
+		}
+		service.stopSimulation();
+		service.igniteCell(new CellCoordinatesRequest(3, 100));
+
+		view = mapper.readTree(service.getLevelOfDetail(wholeForest, 8, 8, true).body());
+		assertArrayEquals(countBlocks(service, 16, 8, 6), toArray(view.get("counts")));
+
+		// blocks smaller than the pyramid are counted from the cells, aligned to the block size
+		ViewportRequest region = new ViewportRequest();
+		region.setRow(61);
+		region.setCol(40);
+		region.setHeight(10);
+		region.setWidth(10);
+		view = mapper.readTree(service.getLevelOfDetail(region, 4, 4, false).body());
+		assertEquals(4, view.get("blockSize").asInt());
+		assertEquals(60, view.get("row").asInt());
+		assertEquals(3, view.get("rows").asInt());
+		assertEquals(3, view.get("cols").asInt());
+
+		region.setRow(120);
+		assertThrows(IllegalArgumentException.class, () -> service.getLevelOfDetail(region, 4, 4, false));
+	}
+
+	@Test
+	void regionAndFireBoundsAreReadFromTheCurrentGeneration() {
+		JsonMapper mapper = JsonMapper.builder().build();
+		SimulationService service = new SimulationService();
+		service.loadForest(denseForest());
+		service.startSimulation(25, 9L);
+		for (int generation = 0; generation < 25; generation++) {
+			service.calculateNextGeneration();
+			service.iterateGeneration();
+		}
+		service.stopSimulation();
+
+		ForestGrid grid = service.getCurrentForest().getGrid();
+		int top = Integer.MAX_VALUE, bottom = -1, left = Integer.MAX_VALUE, right = -1, burning = 0;
+		for (int row = 0; row < grid.getHeight(); row++) {
+			for (int col = 0; col < grid.getWidth(); col++) {
+				if (grid.getState(row, col) != CellState.BURNING) continue;
+				burning++;
+				top = Math.min(top, row);
+				bottom = Math.max(bottom, row);
+				left = Math.min(left, col);
+				right = Math.max(right, col);
+			}
+		}
+		assertTrue(burning > 1);
+
+		JsonNode bounds = mapper.readTree(service.getFireBounds().body());
+		assertEquals(burning, bounds.get("burningCells").asInt());
+		assertEquals(top, bounds.get("row").asInt());
+		assertEquals(left, bounds.get("col").asInt());
+		assertEquals(bottom - top + 1, bounds.get("height").asInt());
+		assertEquals(right - left + 1, bounds.get("width").asInt());
+		assertSame(service.getFireBounds(), service.getFireBounds());
+
+		// the region of the fire has the same cells of the whole forest, cut at the border
+		ViewportRequest fire = new ViewportRequest();
+		fire.setRow(top);
+		fire.setCol(left);
+		fire.setHeight(bottom - top + 1);
+		fire.setWidth(1_000);
+		JsonNode region = mapper.readTree(service.getRegion(fire, false).body());
+		int width = region.get("width").asInt();
+		assertEquals(90 - left, width);
+		int[] states = toArray(region.get("states"));
+		for (int row = top; row <= bottom; row++) {
+			for (int col = left; col < 90; col++) {
+				assertEquals(grid.getStateOrdinal(grid.index(row, col)), states[(row - top) * width + col - left]);
+			}
+		}
+
+		fire.setHeight(1 << 12);
+		fire.setRow(0);
+		fire.setCol(0);
+		fire.setWidth(1 << 12);
+		assertEquals(120 * 90, toArray(mapper.readTree(service.getRegion(fire, true).body()).get("moisture")).length);
+	}
+
+	@Test
+	void partitionedRunHasTheResultOfTheSingleProcess() throws Exception {
+		SimulationService single = new SimulationService();
+		single.loadForest(denseForest());
+		BatchRunResultDTO expected = single.runToCompletion(40, 13L);
+
+		SimulationService partitioned = new SimulationService();
+		partitioned.loadForest(denseForest());
+		BatchRunResultDTO result = partitioned.runPartitioned(2, 40, 13L);
+
+		assertEquals(expected.getGenerations(), result.getGenerations());
+		assertEquals(expected.getBurnedCells(), result.getBurnedCells());
+		ForestGrid expectedGrid = single.getCurrentForest().getGrid();
+		ForestGrid grid = partitioned.getCurrentForest().getGrid();
+		for (int index = 0; index < expectedGrid.size(); index++) {
+			assertEquals(expectedGrid.getState(index), grid.getState(index), "cell " + index);
+			assertEquals(expectedGrid.getBurningTime(index), grid.getBurningTime(index), "cell " + index);
+		}
+		assertEquals(40, partitioned.getCurrentGeneration());
+		assertFalse(partitioned.isRunning());
+		assertThrows(IllegalArgumentException.class, () -> partitioned.runPartitioned(0, 40, 13L));
+	}
+}
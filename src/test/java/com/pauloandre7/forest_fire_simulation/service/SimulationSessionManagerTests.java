@@ -0,0 +1,141 @@
+package com.pauloandre7.forest_fire_simulation.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.pauloandre7.forest_fire_simulation.config.SimulationExecutorConfig;
+import com.pauloandre7.forest_fire_simulation.config.SimulationProperties;
+import com.pauloandre7.forest_fire_simulation.dto.RandomForestRequest;
+import com.pauloandre7.forest_fire_simulation.exception.SessionLimitException;
+import com.pauloandre7.forest_fire_simulation.model.Direction;
+import com.pauloandre7.forest_fire_simulation.model.Forest;
+import com.pauloandre7.forest_fire_simulation.model.ForestGrid;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SimulationSessionManagerTests {
+
+	private static SimulationSessionManager manager(SimulationProperties properties) {
+		return new SimulationSessionManager(properties,
+				SimulationExecutorConfig.createBackends(properties, new ForkJoinPool(2)), new SimpleMeterRegistry());
+	}
+
+	@Test
+	void bigForestDoesNotStarveTheSmallOnes() {
+		SimulationProperties properties = new SimulationProperties();
+		// one session for each tick, so the order of the scheduler decides everything
+		properties.getSessions().setTickBudgetMillis(0);
+		// every session is due at every tick
+		properties.getScheduler().setGenerationsPerSecond(0);
+		SimulationSessionManager manager = manager(properties);
+
+		// the first generation of the JVM loads the classes, it would count as the runtime of one session
+		String warmUp = manager.createSession();
+		manager.generateRandomForest(warmUp, new RandomForestRequest(10, 10, 50, 2L));
+		manager.startSimulation(warmUp, 10, 2L);
+		for (int tick = 0; tick < 10; tick++) manager.runScheduledGenerations();
+		manager.deleteSession(warmUp);
+
+		String big = manager.createSession();
+		// a burning forest, so each generation of it is a full sweep
+		ForestGrid grid = new ForestGrid(400, 400);
+		for (int index = 0; index < grid.size(); index += 10) grid.startBurning(index, 10_000);
+		manager.getService(big).loadForest(new Forest(grid, Direction.NORTH, 10.0, 10_000, 0.125));
+		manager.startSimulation(big, 1000, 1L);
+
+		String[] small = new String[3];
+		for (int i = 0; i < small.length; i++) {
+			small[i] = manager.createSession();
+			manager.generateRandomForest(small[i], new RandomForestRequest(10, 10, 50, 2L));
+			manager.startSimulation(small[i], 1000, 2L);
+		}
+
+		for (int tick = 0; tick < 60; tick++) manager.runScheduledGenerations();
+
+		int bigGenerations = manager.getService(big).getCurrentGeneration();
+		for (String id : small) {
+			assertTrue(manager.getService(id).getCurrentGeneration() > bigGenerations);
+		}
+	}
+
+	@Test
+	void defaultSimulationIsChargedLikeTheSessions() {
+		SimulationProperties properties = new SimulationProperties();
+		properties.getSessions().setTickBudgetMillis(0);
+		SimulationSessionManager manager = manager(properties);
+
+		// the default simulation has the big forest, it must not step before the small sessions
+		SimulationService defaultService = new SimulationService();
+		ForestGrid grid = new ForestGrid(400, 400);
+		for (int index = 0; index < grid.size(); index += 10) grid.startBurning(index, 10_000);
+		defaultService.loadForest(new Forest(grid, Direction.NORTH, 10.0, 10_000, 0.125));
+		AtomicInteger published = new AtomicInteger();
+		manager.setDefaultSimulation(defaultService, published::incrementAndGet);
+		defaultService.startSimulation(1000, 1L, 0.0);
+
+		String[] small = new String[3];
+		for (int i = 0; i < small.length; i++) {
+			small[i] = manager.createSession();
+			manager.generateRandomForest(small[i], new RandomForestRequest(10, 10, 50, 2L));
+			manager.startSimulation(small[i], 1000, 2L, 0.0);
+		}
+
+		for (int tick = 0; tick < 60; tick++) manager.runScheduledGenerations();
+
+		int defaultGenerations = defaultService.getCurrentGeneration();
+		assertTrue(defaultGenerations > 0);
+		assertEquals(defaultGenerations, published.get());
+		for (String id : small) {
+			assertTrue(manager.getService(id).getCurrentGeneration() > defaultGenerations);
+		}
+	}
+
+	@Test
+	void eachSessionRunsAtItsOwnRate() {
+		SimulationSessionManager manager = manager(new SimulationProperties());
+
+		String fast = manager.createSession();
+		String slow = manager.createSession();
+		for (String id : new String[] { fast, slow }) {
+			ForestGrid grid = new ForestGrid(20, 20);
+			grid.startBurning(0, 10_000);
+			manager.getService(id).loadForest(new Forest(grid, Direction.NORTH, 0.0, 10_000, 0.125));
+		}
+		manager.startSimulation(fast, 1000, 1L, 0.0);
+		// one generation each 100 s, only the first one is due during the test
+		manager.startSimulation(slow, 1000, 1L, 0.01);
+
+		for (int tick = 0; tick < 20; tick++) manager.runScheduledGenerations();
+
+		assertEquals(20, manager.getService(fast).getCurrentGeneration());
+		assertEquals(1, manager.getService(slow).getCurrentGeneration());
+		assertTrue(manager.getNextStepNanos(Long.MAX_VALUE) - System.nanoTime() <= 0);
+
+		manager.getService(fast).stopSimulation();
+		assertThrows(IllegalArgumentException.class, () -> manager.startSimulation(fast, 10, null, -1.0));
+	}
+
+	@Test
+	void sessionsAndForestsAreLimited() {
+		SimulationProperties properties = new SimulationProperties();
+		properties.getSessions().setMaxSessions(2);
+		properties.getSessions().setMaxCells(10_000);
+		SimulationSessionManager manager = manager(properties);
+
+		String id = manager.createSession();
+		manager.createSession();
+		assertThrows(SessionLimitException.class, manager::createSession);
+		assertThrows(SessionLimitException.class,
+				() -> manager.generateRandomForest(id, new RandomForestRequest(101, 100, 5, null)));
+
+		manager.deleteSession(id);
+		assertEquals(1, manager.getSessionCount());
+		manager.createSession();
+	}
+}